@@ -0,0 +1,281 @@
+package com.googlecode.mrsqg.bench;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+import com.googlecode.mrsqg.MrsTransformer2;
+import com.googlecode.mrsqg.Preprocessor;
+import com.googlecode.mrsqg.analysis.Term;
+import com.googlecode.mrsqg.mrs.EP;
+import com.googlecode.mrsqg.mrs.MRS;
+import com.googlecode.mrsqg.mrs.MrsBinaryReader;
+import com.googlecode.mrsqg.mrs.MrsBinaryWriter;
+import com.googlecode.mrsqg.mrs.decomposition.ApposDecomposer;
+import com.googlecode.mrsqg.mrs.decomposition.CoordDecomposer;
+import com.googlecode.mrsqg.mrs.decomposition.MrsDecomposer;
+import com.googlecode.mrsqg.mrs.decomposition.SubclauseDecomposer;
+import com.googlecode.mrsqg.mrs.decomposition.SubordinateDecomposer;
+import com.googlecode.mrsqg.mrs.decomposition.WhyDecomposer;
+import com.googlecode.mrsqg.util.FileUtils;
+
+/**
+ * Benchmarks of the MRS core over every MRX file in a directory: parsing,
+ * MRX output, reading and writing the binary MRS format (to compare with
+ * parsing and MRX output), copying, postprocessing, building dependencies,
+ * every decomposer and {@link MrsTransformer2#transform(boolean)}.
+ * <p>
+ * Every benchmark is run on every file: first warmed up, then measured in
+ * a number of timed batches. The average time per operation and its error
+ * (99.9% confidence) are printed and written as JSON, in the same layout as
+ * JMH's JSON output, so results can be compared across releases.
+ * <p>
+ * The transformer is given no terms (and so no named entities), since
+ * preprocessing needs the NLP resources loaded by MrsQG.
+ * <p>
+ * Usage: MrsBench [mrx directory] [json output] [benchmark name filter]
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class MrsBench {
+
+	/** warm-up time per benchmark and file */
+	private static long warmupMillis = Long.getLong("bench.warmup", 500);
+	/** number of measured batches */
+	private static int batches = Integer.getInteger("bench.batches", 10);
+	/** time per measured batch */
+	private static long batchMillis = Long.getLong("bench.batch", 200);
+
+	/** consumes results so the JIT can't drop the work */
+	private static long sink = 0;
+
+	/**
+	 * One benchmark on one MRX file.
+	 */
+	static abstract class Benchmark {
+		String name;
+		Benchmark(String name) {this.name = name;}
+		/** called once per file before warming up */
+		void setUp(String mrx, MRS mrs) {}
+		/** one operation, returning something to consume */
+		abstract int run();
+	}
+
+	/**
+	 * A preprocessor which gives the transformer an empty term list.
+	 */
+	static class NoTermsPreprocessor extends Preprocessor {
+		private Term[][] terms = new Term[][]{new Term[0]};
+		@Override
+		public Term[][] getTerms() {return terms;}
+	}
+
+	public static void main(String[] args) throws IOException {
+		String dir = args.length > 0 ? args[0] : "bench/mrx";
+		String json = args.length > 1 ? args[1] : "bench-results.json";
+		String filter = args.length > 2 ? args[2] : null;
+
+		File[] files = new File(dir).listFiles(new FileFilter() {
+			public boolean accept(File f) {
+				return f.getName().endsWith(".mrx");
+			}
+		});
+		if (files == null || files.length == 0) {
+			System.err.println("No .mrx files found in "+dir);
+			return;
+		}
+		Arrays.sort(files);
+
+		for (File f:files) {
+			String mrx = FileUtils.readString(new FileInputStream(f), "UTF-8");
+			System.out.println(String.format("%-24s %8d bytes MRX %8d bytes binary",
+					f.getName(), mrx.getBytes("UTF-8").length, MrsBinaryWriter.toBytes(new MRS(mrx)).length));
+		}
+
+		ArrayList<Benchmark> benchmarks = createBenchmarks();
+		StringBuilder out = new StringBuilder("[\n");
+		boolean first = true;
+		for (Benchmark b:benchmarks) {
+			if (filter != null && !b.name.contains(filter)) continue;
+			for (File f:files) {
+				String mrx = FileUtils.readString(new FileInputStream(f), "UTF-8");
+				b.setUp(mrx, new MRS(mrx));
+				double[] nsPerOp = measure(b);
+				double mean = mean(nsPerOp);
+				double error = error(nsPerOp, mean);
+				System.out.println(String.format("%-40s %-24s %12.1f +- %9.1f ns/op",
+						b.name, f.getName(), mean, error));
+				if (!first) out.append(",\n");
+				first = false;
+				appendJson(out, b.name, f.getName(), mean, error, nsPerOp);
+			}
+		}
+		out.append("\n]\n");
+
+		Writer w = new OutputStreamWriter(new FileOutputStream(json), "UTF-8");
+		w.write(out.toString());
+		w.close();
+		System.out.println("Results written to "+json);
+		if (sink == 42) System.out.println();
+	}
+
+	private static ArrayList<Benchmark> createBenchmarks() {
+		ArrayList<Benchmark> list = new ArrayList<Benchmark>();
+
+		list.add(new Benchmark("MRS.parseString") {
+			String mrx;
+			void setUp(String mrx, MRS mrs) {this.mrx = mrx;}
+			int run() {
+				MRS m = new MRS();
+				m.parseString(mrx);
+				return m.getEps().size();
+			}
+		});
+		list.add(new Benchmark("MRS.toMRXstring") {
+			MRS mrs;
+			void setUp(String mrx, MRS mrs) {this.mrs = mrs;}
+			int run() {return mrs.toMRXstring().length();}
+		});
+		list.add(new Benchmark("MrsBinaryReader.read") {
+			byte[] bytes;
+			void setUp(String mrx, MRS mrs) {bytes = MrsBinaryWriter.toBytes(mrs);}
+			int run() {return MrsBinaryReader.fromBytes(bytes).getEps().size();}
+		});
+		list.add(new Benchmark("MrsBinaryWriter.write") {
+			MRS mrs;
+			void setUp(String mrx, MRS mrs) {this.mrs = mrs;}
+			int run() {return MrsBinaryWriter.toBytes(mrs).length;}
+		});
+		list.add(new Benchmark("MRS.copy") {
+			MRS mrs;
+			void setUp(String mrx, MRS mrs) {this.mrs = mrs;}
+			int run() {return new MRS(mrs).getEps().size();}
+		});
+		list.add(new Benchmark("MRS.postprocessing") {
+			MRS mrs;
+			void setUp(String mrx, MRS mrs) {this.mrs = mrs;}
+			int run() {
+				mrs.postprocessing();
+				return mrs.getCharVariableMap().size();
+			}
+		});
+		list.add(new Benchmark("MRS.buildDependencies") {
+			MRS mrs;
+			void setUp(String mrx, MRS mrs) {this.mrs = mrs;}
+			int run() {
+				// dependencies are cleared first, as postprocessing() does
+				for (EP ep:mrs.getEps()) ep.clearDependencies();
+				mrs.buildDependencies();
+				return mrs.getEps().get(0).getDmrsSet().size();
+			}
+		});
+
+		MrsDecomposer[] decomposers = {new CoordDecomposer(), new WhyDecomposer(),
+				new SubordinateDecomposer(), new SubclauseDecomposer(), new ApposDecomposer()};
+		for (final MrsDecomposer d:decomposers) {
+			list.add(new Benchmark(d.getClass().getSimpleName()+".decompose") {
+				ArrayList<MRS> in;
+				void setUp(String mrx, MRS mrs) {
+					in = new ArrayList<MRS>(1);
+					in.add(mrs);
+				}
+				int run() {
+					ArrayList<MRS> out = d.decompose(in);
+					return out == null ? 0 : out.size();
+				}
+			});
+		}
+
+		list.add(new Benchmark("MrsTransformer2.transform") {
+			MRS mrs;
+			Preprocessor pre = new NoTermsPreprocessor();
+			void setUp(String mrx, MRS mrs) {this.mrs = mrs;}
+			int run() {
+				ArrayList<MRS> out = new MrsTransformer2(mrs, pre).transform(false);
+				return out == null ? 0 : out.size();
+			}
+		});
+
+		return list;
+	}
+
+	/**
+	 * Warm up <code>b</code>, then time it in batches.
+	 * @return nanoseconds per operation of every batch
+	 */
+	private static double[] measure(Benchmark b) {
+		long end = System.nanoTime() + warmupMillis*1000000L;
+		while (System.nanoTime() < end) sink += b.run();
+
+		double[] nsPerOp = new double[batches];
+		for (int i=0; i<batches; i++) {
+			long ops = 0;
+			long start = System.nanoTime();
+			end = start + batchMillis*1000000L;
+			long now;
+			do {
+				sink += b.run();
+				ops++;
+				now = System.nanoTime();
+			} while (now < end);
+			nsPerOp[i] = (double)(now-start)/ops;
+		}
+		return nsPerOp;
+	}
+
+	private static double mean(double[] a) {
+		double sum = 0;
+		for (double d:a) sum += d;
+		return sum/a.length;
+	}
+
+	/**
+	 * @return the half width of the 99.9% confidence interval, with the
+	 * normal approximation JMH uses for many samples
+	 */
+	private static double error(double[] a, double mean) {
+		if (a.length < 2) return Double.NaN;
+		double sum = 0;
+		for (double d:a) sum += (d-mean)*(d-mean);
+		double stddev = Math.sqrt(sum/(a.length-1));
+		return 3.291*stddev/Math.sqrt(a.length);
+	}
+
+	private static void appendJson(StringBuilder sb, String benchmark, String file,
+			double mean, double error, double[] raw) {
+		sb.append("  {\n");
+		sb.append("    \"benchmark\" : \"").append(benchmark).append("\",\n");
+		sb.append("    \"mode\" : \"avgt\",\n");
+		sb.append("    \"warmupTime\" : \"").append(warmupMillis).append(" ms\",\n");
+		sb.append("    \"measurementIterations\" : ").append(batches).append(",\n");
+		sb.append("    \"measurementTime\" : \"").append(batchMillis).append(" ms\",\n");
+		sb.append("    \"params\" : {\n");
+		sb.append("      \"file\" : \"").append(file.replace("\\", "\\\\").replace("\"", "\\\"")).append("\"\n");
+		sb.append("    },\n");
+		sb.append("    \"primaryMetric\" : {\n");
+		sb.append("      \"score\" : ").append(number(mean)).append(",\n");
+		sb.append("      \"scoreError\" : ").append(number(error)).append(",\n");
+		sb.append("      \"scoreUnit\" : \"ns/op\",\n");
+		sb.append("      \"rawData\" : [\n        [");
+		for (int i=0; i<raw.length; i++) {
+			if (i > 0) sb.append(", ");
+			sb.append(number(raw[i]));
+		}
+		sb.append("]\n      ]\n");
+		sb.append("    }\n");
+		sb.append("  }");
+	}
+
+	private static String number(double d) {
+		if (Double.isNaN(d) || Double.isInfinite(d)) return "\"NaN\"";
+		return String.format(Locale.US, "%.3f", d);
+	}
+}
@@ -0,0 +1,88 @@
+package com.googlecode.mrsqg.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.googlecode.mrsqg.mrs.MRS;
+
+/**
+ * Compares the MRX output of {@link com.googlecode.mrsqg.mrs.MrxWriter}
+ * with the old Xerces XMLSerializer: first checks they are byte-for-byte
+ * the same on every MRX file in a directory, then times both.
+ * <p>
+ * Usage: MrxWriterBench [mrx directory] [iterations]
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class MrxWriterBench {
+
+	@SuppressWarnings("deprecation")
+	public static void main(String[] args) throws Exception {
+		String dir = args.length > 0 ? args[0] : "bench/mrx";
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+		File[] files = new File(dir).listFiles(new FileFilter() {
+			public boolean accept(File f) {
+				return f.getName().endsWith(".mrx");
+			}
+		});
+		if (files == null || files.length == 0) {
+			System.err.println("No .mrx files found in "+dir);
+			return;
+		}
+		Arrays.sort(files);
+
+		ArrayList<MRS> list = new ArrayList<MRS>();
+		for (File f:files) {
+			MRS mrs = new MRS(f);
+			ByteArrayOutputStream o1 = new ByteArrayOutputStream();
+			ByteArrayOutputStream o2 = new ByteArrayOutputStream();
+			mrs.toXML(o1);
+			mrs.toXMLwithSerializer(o2);
+			if (!Arrays.equals(o1.toByteArray(), o2.toByteArray())) {
+				System.err.println("Output differs on "+f+":\n"+o1+"\n"+o2);
+				System.exit(1);
+			}
+			list.add(mrs);
+		}
+		System.out.println(list.size()+" MRX files, output identical.");
+
+		// warm up
+		run(list, iterations/10, true);
+		run(list, iterations/10, false);
+
+		long serializer = run(list, iterations, false);
+		long writer = run(list, iterations, true);
+		long ops = (long)iterations * list.size();
+		System.out.println(String.format("XMLSerializer: %8.1f ns/op", (double)serializer/ops));
+		System.out.println(String.format("MrxWriter:     %8.1f ns/op", (double)writer/ops));
+		System.out.println(String.format("speedup:       %8.2fx", (double)serializer/writer));
+	}
+
+	/**
+	 * @return elapsed nanoseconds
+	 */
+	@SuppressWarnings("deprecation")
+	private static long run(ArrayList<MRS> list, int iterations, boolean useWriter) {
+		long sink = 0;
+		long start = System.nanoTime();
+		for (int i=0; i<iterations; i++) {
+			for (MRS mrs:list) {
+				if (useWriter) {
+					sink += mrs.toMRXstring().length();
+				} else {
+					ByteArrayOutputStream os = new ByteArrayOutputStream();
+					mrs.toXMLwithSerializer(os);
+					sink += os.toString().length();
+				}
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		if (sink == 42) System.out.println();
+		return elapsed;
+	}
+}
@@ -1,11 +1,14 @@
 package com.googlecode.mrsqg;
 
 import com.googlecode.mrsqg.analysis.Pair;
+import com.googlecode.mrsqg.evaluation.CorpusReplay;
 import com.googlecode.mrsqg.evaluation.Instance;
 import com.googlecode.mrsqg.evaluation.QGSTEC2010;
 import com.googlecode.mrsqg.languagemodel.Reranker;
+import com.googlecode.mrsqg.mrs.GenerationResult;
 import com.googlecode.mrsqg.mrs.MRS;
 import com.googlecode.mrsqg.mrs.decomposition.*;
+import com.googlecode.mrsqg.mrs.selection.GenerationPredictor;
 import com.googlecode.mrsqg.mrs.selection.PreSelector;
 import com.googlecode.mrsqg.nlp.indices.FunctionWords;
 import com.googlecode.mrsqg.nlp.indices.IrregularVerbs;
@@ -26,6 +29,11 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.log4j.PropertyConfigurator;
 
@@ -69,6 +77,16 @@ public class MrsQG {
 	 */
 	protected LKB lkb = null;
 
+	/**
+	 * LKB generators used by the PreSelector in parallel, <code>lkb</code> included
+	 */
+	protected ArrayList<LKB> generators = null;
+
+	/**
+	 * whether to select PET parses which LKB generates from
+	 */
+	private boolean usePreSelector = false;
+
 	/**
 	 * a question re-ranker based on language models
 	 */
@@ -105,6 +123,19 @@ public class MrsQG {
 
 	private QGSTEC2010 QGSTEC2010processor;
 
+	/**
+	 * a thread pool to decompose and transform the MRS of all parses and to
+	 * run the fallback replacers, or null to do it in the main thread
+	 * (<code>threads=1</code>)
+	 */
+	private ExecutorService pool = null;
+
+	/**
+	 * a generability predictor to skip question MRS which are unlikely
+	 * to generate, and/or to log generation outcomes for training it
+	 */
+	protected GenerationPredictor predictor = null;
+
 	/**
 	 * @return	a timestamp String for logging
 	 */
@@ -153,6 +184,12 @@ public class MrsQG {
 	public void exitAll() {
 		if (parser!=null) parser.exit();
 		if (lkb != null) lkb.exit();
+		if (generators != null) {
+			for (LKB g:generators) {
+				if (g != lkb) g.exit();
+			}
+		}
+		if (pool != null) pool.shutdownNow();
 		log.info("MrsQG ended at "+getTimestamp());
 		System.exit(0);
 	}
@@ -186,8 +223,8 @@ public class MrsQG {
 				input = input.substring(4).trim();
 				input = Preprocessor.cleanInput(input);
 				// pre-processing, get the output FSC XML in a string fsc
-				p = new Preprocessor();
-				String fsc = p.getFSCbyTerms(input, true, false);
+				p = PreprocessorCache.get(input, false);
+				String fsc = PreprocessorCache.getFSC(input, false);
 				log.info("\nFSC XML from preprocessing:\n");
 				log.info(fsc);
 
@@ -210,8 +247,8 @@ public class MrsQG {
 				input = input.substring(3).trim();
 				input = Preprocessor.cleanInput(input);
 				// pre-processing, get the output FSC XML in a string fsc
-				p = new Preprocessor();
-				String fsc = p.getFSCbyTerms(input, true, false);
+				p = PreprocessorCache.get(input, false);
+				String fsc = PreprocessorCache.getFSC(input, false);
 				//log.info("\nFSC XML from preprocessing:\n");
 				//log.info(fsc);
 
@@ -272,6 +309,19 @@ public class MrsQG {
                 }
                 producePList(files[0], files[1], true);
 
+			} else if (input.toLowerCase().startsWith("replay:")) {
+				// replay a directory or zip of MRX or binary MRS files through
+				// decomposition and transformation, e.g.:
+				// replay: bench/mrx
+				String corpus = input.substring(7).trim();
+				CorpusReplay replay = new CorpusReplay(pool);
+				try {
+					replay.run(new File(corpus));
+					replay.logStats();
+				} catch (IOException e) {
+					log.error("Error:", e);
+				}
+
 			} else if (input.toLowerCase().equals("help")||input.toLowerCase().equals("h")) {
 				printUsage();
 			} else {
@@ -421,6 +471,48 @@ public class MrsQG {
 		return succList;
 	}
 
+	/**
+	 * Create a transformation task for every MRS in <code>list</code>. If there's
+	 * a thread pool, the tasks are started there, otherwise they are run by
+	 * {@link #getTransformed(FutureTask)} when their results are needed.
+	 * Tasks whose results turn out not to be needed should be cancelled, so
+	 * that they don't take pool threads from generation.
+	 * @param list a list of MRS
+	 * @param pre the preprocessor of the sentence
+	 * @return a list of tasks in the same order as <code>list</code>
+	 */
+	private ArrayList<FutureTask<ArrayList<MRS>>> transformAll(ArrayList<MRS> list, final Preprocessor pre) {
+		ArrayList<FutureTask<ArrayList<MRS>>> tasks = new ArrayList<FutureTask<ArrayList<MRS>>>(list.size());
+		for (MRS m:list) {
+			// the transformer copies the MRS here, so that the task doesn't
+			// read it while this thread works on it (its caches aren't thread safe)
+			final MrsTransformer2 transformer = new MrsTransformer2(m, pre);
+			FutureTask<ArrayList<MRS>> t = new FutureTask<ArrayList<MRS>>(new Callable<ArrayList<MRS>>() {
+				public ArrayList<MRS> call() {
+					return transformer.transform(false);
+				}
+			});
+			if (pool != null) pool.execute(t);
+			tasks.add(t);
+		}
+		return tasks;
+	}
+
+	/**
+	 * Wait for a task from {@link #transformAll(ArrayList, Preprocessor)},
+	 * or run it in this thread if it hasn't been started.
+	 * @return the transformed MRS list, or null on error
+	 */
+	private ArrayList<MRS> getTransformed(FutureTask<ArrayList<MRS>> t) {
+		t.run();
+		try {
+			return t.get();
+		} catch (Exception e) {
+			log.error("Error:", e);
+			return null;
+		}
+	}
+
 	/**
 	 * Run the pipeline of parsing-transformation-generation-ranking.
 	 *
@@ -435,7 +527,6 @@ public class MrsQG {
 	 */
 	private HashMap<String, Pair> runPipe(String input, boolean singleSentence, boolean dryrun) {
 		input = input.trim();
-		boolean usePreSelector = false;
 		double[] scores;
 		long t0, tf;
 
@@ -448,11 +539,12 @@ public class MrsQG {
 		//	input = input.replaceAll("'", "");
 		input = Preprocessor.cleanInput(input);
 
-		SubordinateDecomposer subordDecomposer = new SubordinateDecomposer();
-		CoordDecomposer coordDecomposer = new CoordDecomposer();
-		ApposDecomposer apposDecomposer = new ApposDecomposer();
-		SubclauseDecomposer subDecomposer = new SubclauseDecomposer();
-		WhyDecomposer whyDecomposer = new WhyDecomposer();
+		DecompositionEngine decomposer = new DecompositionEngine();
+		decomposer.register(new CoordDecomposer());
+		decomposer.register(new WhyDecomposer());
+		decomposer.register(new SubordinateDecomposer());
+		decomposer.register(new SubclauseDecomposer());
+		decomposer.register(new ApposDecomposer());
 
 		// pairs for declarative sentences, could be original, or decomposed.
 		declSuccPairs = new ArrayList<Pair>();
@@ -463,8 +555,8 @@ public class MrsQG {
 		quesFailPairs = new ArrayList<Pair>();
 
 		// pre-processing, get the output FSC XML in a string fsc
-		Preprocessor pre = new Preprocessor();
-		String fsc = pre.getFSCbyTerms(input, true, singleSentence);
+		Preprocessor pre = PreprocessorCache.get(input, singleSentence);
+		String fsc = PreprocessorCache.getFSC(input, singleSentence);
 		input = pre.getOriginalSentence();
 		//log.info("\nFSC XML from preprocessing:\n");
 		//log.info(fsc);
@@ -476,7 +568,14 @@ public class MrsQG {
 		// the option "-results=" in cheap.
 		ArrayList<MRS> origMrsList = parser.getParsedMRSlist();
 		ArrayList<MRS> mrxList;
-		if (usePreSelector) mrxList = PreSelector.doIt(lkb, origMrsList);
+		if (usePreSelector && !dryrun) {
+			mrxList = PreSelector.doIt(generators, origMrsList, pool);
+			if (predictor != null && mrxList != null) {
+				// those which generate are logged below, so are all if none does
+				for (MRS m:origMrsList)
+					if (!mrxList.contains(m)) predictor.logOutcome(m, false);
+			}
+		}
 		else mrxList = origMrsList;
 		boolean success = parser.isSuccess();
 		if (pre.getNumTokens() > 15) {
@@ -489,19 +588,14 @@ public class MrsQG {
 			mrxList = origMrsList;
 		}
 
-		mrxList = coordDecomposer.doIt(mrxList);
-		mrxList = whyDecomposer.doIt(mrxList);
-		mrxList = subordDecomposer.doIt(mrxList);
-		mrxList = subDecomposer.doIt(mrxList);
-		mrxList = apposDecomposer.doIt(mrxList);
+		mrxList = decomposer.doIt(mrxList, pool);
+		decomposer.logStats();
 
 		if (lkb==null || dryrun) {
 			// debug in MrsTransformer2
-			MrsTransformer2 t3;
 			if (mrxList != null) {
-				for (MRS m:mrxList) {
-					t3 = new MrsTransformer2(m, pre);
-					t3.transform(false);
+				for (FutureTask<ArrayList<MRS>> t:transformAll(mrxList, pre)) {
+					getTransformed(t);
 				}
 			}
 		}
@@ -510,13 +604,16 @@ public class MrsQG {
 		if (mrxList != null && lkb != null && !dryrun) {
 			String mrx;
 			//MrsTransformer t;
-			MrsTransformer2 t2;
+			for (MRS m:mrxList) {
+				m.changeFromUnkToNamed();
+			}
+			// transformation runs in the pool while LKB generates
+			ArrayList<FutureTask<ArrayList<MRS>>> transformed = transformAll(mrxList, pre);
 			int i=0;
 			for (MRS m:mrxList) {
 				int countType = 0;
 				int countNum = 0;
 				i++;
-				m.changeFromUnkToNamed();
 				mrx = m.toMRXstring();
 
 				// generate from original sentence
@@ -525,14 +622,26 @@ public class MrsQG {
 				log.info(mrx);
 				log.info(m);
 				log.info("\nGenerate from the original/decomposed sentence:\n");
-				ArrayList<String> genOriSentList = lkb.doGeneration(mrx);
-				log.info(genOriSentList);
-				lkb.printMaxEntScores();
-
+				ArrayList<String> genOriSentList;
 				ArrayList<String> genOriSentFailedList = null;
-				if (genOriSentList == null) {
-					genOriSentFailedList = lkb.getFailedGenSentences();
+				if (m.getGeneration() != null && m.getGeneration().isFor(mrx)) {
+					// already generated by the PreSelector
+					GenerationResult gen = m.getGeneration();
+					genOriSentList = gen.getSentences();
+					genOriSentFailedList = gen.getFailedSentences();
+					log.info(genOriSentList);
+					if (gen.getScores() != null)
+						log.info(StringUtils.arrayDoubleToArrayList(gen.getScores()));
+				} else {
+					genOriSentList = lkb.doGeneration(mrx);
+					log.info(genOriSentList);
+					lkb.printMaxEntScores();
+
+					if (genOriSentList == null) {
+						genOriSentFailedList = lkb.getFailedGenSentences();
+					}
 				}
+				if (predictor != null) predictor.logOutcome(m, genOriSentList != null);
 
 				if (!(genOriSentList == null && genOriSentFailedList == null)) {
 					Pair pair = new Pair(input, m, genOriSentList, genOriSentFailedList);
@@ -544,8 +653,8 @@ public class MrsQG {
 							 * any more. So we have to send it to PET and
 							 * re-generate the MRS
 							 */
-							Preprocessor pp = new Preprocessor();
-							fsc = pp.getFSCbyTerms(pair.getGenOriCand(), true, singleSentence);
+							Preprocessor pp = PreprocessorCache.get(pair.getGenOriCand(), singleSentence);
+							fsc = PreprocessorCache.getFSC(pair.getGenOriCand(), singleSentence);
 
 							parser.parse(fsc);
 
@@ -554,7 +663,11 @@ public class MrsQG {
 							if (pp.getNumTokens() > 15) {
 								parser.releaseMemory();
 							}
-							if (!success) continue;
+							if (!success) {
+								// its transformation isn't needed any more
+								transformed.get(i-1).cancel(false);
+								continue;
+							}
 							if (regenMrsList!=null && regenMrsList.size()>0)
 								pair.setOriMrs(regenMrsList.get(0));
 						}
@@ -563,18 +676,19 @@ public class MrsQG {
 					else declFailPairs.add(pair);
 
 				} else {
+					transformed.get(i-1).cancel(false);
 					continue;
 				}
 
 				// transform
 //				t = new MrsTransformer(m, p);
 //				ArrayList<MRS> trMrsList = t.transform(false);
-				t2 = new MrsTransformer2(m, pre);
-				ArrayList<MRS> trMrsList = t2.transform(false);
+				ArrayList<MRS> trMrsList = getTransformed(transformed.get(i-1));
 
 				if (trMrsList == null) continue;
 				// generate question
 				for (MRS qmrs:trMrsList) {
+					if (predictor != null && predictor.isDoomed(qmrs)) continue;
 					mrx = qmrs.toMRXstring();
 
 					// generate from transformed sentence
@@ -583,6 +697,7 @@ public class MrsQG {
 					log.info(qmrs);
 					log.info("\nGenerated Questions:");
 					ArrayList<String> genQuesList = lkb.doGeneration(mrx);
+					if (predictor != null) predictor.logOutcome(qmrs, genQuesList != null);
 					scores = lkb.getMaxEntScores();
 					ArrayList<String> genQuesFailedList = null;
 					if (genQuesList != null) {
@@ -611,6 +726,7 @@ public class MrsQG {
 				log.info(String.format("Cheap MRS %d generates " +
 						"%d questions of %d types.", i, countNum, countType));
 			}
+			if (predictor != null) predictor.logStats();
 		}
 
 		if (fallback && !dryrun) {
@@ -625,72 +741,38 @@ public class MrsQG {
 			// fallback
 			if (declSuccPairs.size() != 0) {
 
-				Fallback planB = new Fallback (parser, lkb, declSuccPairs);
-				planB.doIt();
-				ArrayList<Pair> pairs = planB.getGenSuccPairs();
-				if (pairs!=null) quesSuccPairs.addAll(pairs);
-				pairs = planB.getGenFailPairs();
-				if (pairs!=null) quesFailPairs.addAll(pairs);
-
-				CoordReplacer andR = new CoordReplacer (parser, lkb, declSuccPairs);
-				andR.doIt();
-				pairs = andR.getGenSuccPairs();
-				if (pairs!=null) quesSuccPairs.addAll(pairs);
-				pairs = andR.getGenFailPairs();
-				if (pairs!=null) quesFailPairs.addAll(pairs);
-
-				WhereReplacer whereR = new WhereReplacer (parser, lkb, declSuccPairs);
-				whereR.doIt();
-				pairs = whereR.getGenSuccPairs();
-				if (pairs!=null) quesSuccPairs.addAll(pairs);
-				pairs = whereR.getGenFailPairs();
-				if (pairs!=null) quesFailPairs.addAll(pairs);
-
-				ApposReplacer apposR = new ApposReplacer (parser, lkb, declSuccPairs);
-				apposR.doIt();
-				pairs = apposR.getGenSuccPairs();
-				if (pairs!=null) quesSuccPairs.addAll(pairs);
-				pairs = apposR.getGenFailPairs();
-				if (pairs!=null) quesFailPairs.addAll(pairs);
-
-				WhatReplacer whatR = new WhatReplacer (parser, lkb, declSuccPairs);
-				whatR.doIt();
-				pairs = whatR.getGenSuccPairs();
-				if (pairs!=null) quesSuccPairs.addAll(pairs);
-				pairs = whatR.getGenFailPairs();
-				if (pairs!=null) quesFailPairs.addAll(pairs);
-
-				NPChunkReplacer npChunkR = new NPChunkReplacer (parser, lkb, declSuccPairs);
-				npChunkR.doIt();
-				pairs = npChunkR.getGenSuccPairs();
-				if (pairs!=null) quesSuccPairs.addAll(pairs);
-				pairs = npChunkR.getGenFailPairs();
-				if (pairs!=null) quesFailPairs.addAll(pairs);
-
-//				PPChunkReplacer ppChunkR = new PPChunkReplacer (parser, lkb, declSuccPairs);
-//				ppChunkR.doIt();
-//				pairs = ppChunkR.getGenSuccPairs();
-//				if (pairs!=null) quesSuccPairs.addAll(pairs);
-//				pairs = ppChunkR.getGenFailPairs();
-//				if (pairs!=null) quesFailPairs.addAll(pairs);
-
-				NumReplacer numR = new NumReplacer (parser, lkb, declSuccPairs);
-				numR.doIt();
-				pairs = numR.getGenSuccPairs();
-				if (pairs!=null) quesSuccPairs.addAll(pairs);
-				pairs = numR.getGenFailPairs();
-				if (pairs!=null) quesFailPairs.addAll(pairs);
-//
-//				WhyAppender whyR = new WhyAppender (parser, lkb, declSuccPairs);
-//				whyR.doIt();
-//				pairs = whyR.getGenSuccPairs();
-//				if (pairs!=null) quesSuccPairs.addAll(pairs);
-//				pairs = whyR.getGenFailPairs();
-//				if (pairs!=null) quesFailPairs.addAll(pairs);
+				// every replacer preprocesses the same sentences, so share the results
+				AnnotationCache annotations = new AnnotationCache();
+				// the replacers run concurrently, each fallback sentence is parsed only once
+				FallbackRunner runner = new FallbackRunner(pool);
+				runner.add(new Fallback (parser, lkb, declSuccPairs));
+				runner.add(new CoordReplacer (parser, lkb, declSuccPairs));
+				runner.add(new WhereReplacer (parser, lkb, declSuccPairs));
+				runner.add(new ApposReplacer (parser, lkb, declSuccPairs));
+				runner.add(new WhatReplacer (parser, lkb, declSuccPairs));
+				runner.add(new NPChunkReplacer (parser, lkb, declSuccPairs));
+//				runner.add(new PPChunkReplacer (parser, lkb, declSuccPairs));
+				runner.add(new NumReplacer (parser, lkb, declSuccPairs));
+//				runner.add(new WhyAppender (parser, lkb, declSuccPairs));
+				for (Fallback f:runner.getReplacers()) {
+					f.setAnnotationCache(annotations);
+				}
+				runner.doIt();
+
+				ArrayList<Pair> pairs;
+				for (Fallback f:runner.getReplacers()) {
+					pairs = f.getGenSuccPairs();
+					if (pairs!=null) quesSuccPairs.addAll(pairs);
+					pairs = f.getGenFailPairs();
+					if (pairs!=null) quesFailPairs.addAll(pairs);
+				}
+
+				annotations.logStats();
 
 
 			}
 		}
+		PreprocessorCache.logStats();
 		// summary
 		log.info("===========Details of Generated Questions============");
 		log.info("oriSent: "+input);
@@ -940,6 +1022,40 @@ public class MrsQG {
 			QGSTEC2010processor = new QGSTEC2010(testFileInput);
 		}
 
+		// number of threads to decompose and transform the MRS of all parses
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (prop.getProperty("threads") != null) {
+			int n = Integer.parseInt(prop.getProperty("threads").trim());
+			if (n > 0) threads = n;
+		}
+		if (threads > 1) {
+			pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "MrsQG-worker");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+
+		// generability predictor
+		String genModel = prop.getProperty("genModel", "").trim();
+		String genOutcomeLog = prop.getProperty("genOutcomeLog", "").trim();
+		if (genModel.length() != 0 || genOutcomeLog.length() != 0) {
+			predictor = new GenerationPredictor();
+			if (genModel.length() != 0) {
+				try {
+					predictor.load(genModel);
+				} catch (IOException e) {
+					log.error("Error:", e);
+				}
+			}
+			if (prop.getProperty("genThreshold") != null)
+				predictor.setThreshold(Double.parseDouble(prop.getProperty("genThreshold").trim()));
+			if (genOutcomeLog.length() != 0)
+				predictor.setOutcomeLog(genOutcomeLog);
+		}
+
 		// whether do fallback generation
 		if (prop.getProperty("fallback").equalsIgnoreCase("yes")) {
 			fallback = true;
@@ -954,6 +1070,20 @@ public class MrsQG {
 			if (! lkb.isSuccess()) {
 				exitAll();
 			}
+
+			// whether to select PET parses by generating from them, and with how many LKBs
+			if (prop.getProperty("preSelect", "no").equalsIgnoreCase("yes")) {
+				usePreSelector = true;
+				generators = new ArrayList<LKB>();
+				generators.add(lkb);
+				int n = Integer.parseInt(prop.getProperty("generators", "1").trim());
+				for (int i=1; i<n; i++) {
+					log.info("Creating LKB generator "+(i+1)+" of "+n+"...");
+					LKB g = new LKB(false);
+					if (g.isSuccess()) generators.add(g);
+					else log.error("LKB generator "+(i+1)+" is not started properly.");
+				}
+			}
 		}
 
 		// init the cheap parser
@@ -1027,6 +1157,13 @@ public class MrsQG {
 		log.info("Creating stemmer...");
 		SnowballStemmer.create();
 
+		// cache of preprocessed sentences
+		int cacheSize = Integer.parseInt(prop.getProperty("cacheSize", "2000").trim());
+		long cacheMB = Long.parseLong(prop.getProperty("cacheMB", "64").trim());
+		String cacheDir = prop.getProperty("cacheDir", "").trim();
+		PreprocessorCache.configure(cacheSize, cacheMB, cacheDir.length() == 0 ? null : new File(cacheDir),
+				new File(dir + "res"));
+
 		// create part of speech tagger
 		log.info("Creating POS tagger...");
 		if (!OpenNLP.createPosTagger(
@@ -1047,6 +1184,10 @@ public class MrsQG {
 		log.info("  ...loading Standford NETagger");
 		//		if (!NETagger.loadNameFinders(dir + "res/nlp/netagger/opennlp/"))
 		//			log.error("Could not create OpenNLP NE tagger.");
+		if (prop.getProperty("nerThreads") != null) {
+			int n = Integer.parseInt(prop.getProperty("nerThreads").trim());
+			StanfordNeTagger.setPoolSize(n > 0 ? n : Runtime.getRuntime().availableProcessors());
+		}
 		if (!StanfordNeTagger.isInitialized() && !StanfordNeTagger.init())
 			log.error("Could not create Stanford NE tagger.");
 
@@ -1086,7 +1227,10 @@ public class MrsQG {
 		System.out.println("\t\tThen MrsQG g enerate questions from the text of input.txt and output to output.xml (used by plist of NPCEditor)");
 		System.out.println("\t8. dryrun: input.txt output.xml");
 		System.out.println("\t\tsimilar to 7, but only do parsing and transformation to give a quick pass of all sentences. Used to check errors.");
-		System.out.println("\t9. help (or h)");
+		System.out.println("\t9. replay: a directory or zip file of MRX (.mrx) or binary MRS (.mrsb) files");
+		System.out.println("\t\tMrsQG decomposes and transforms every MRX (with the sentence in foo.txt for foo.mrx)");
+		System.out.println("\t\twithout PET or LKB, then reports the throughput and allocation of every stage.");
+		System.out.println("\t10. help (or h)");
 		System.out.println("\t\tPrint this message.");
 		System.out.println();
 	}
@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import org.apache.log4j.Logger;
 
 import com.googlecode.mrsqg.analysis.Term;
+import com.googlecode.mrsqg.analysis.TermAlignment;
 import com.googlecode.mrsqg.mrs.EP;
 import com.googlecode.mrsqg.mrs.MRS;
 
@@ -35,6 +36,11 @@ public class MrsTransformer {
 	 */
 	protected ArrayList<MRS> gen_mrs;
 
+	/**
+	 * the alignment between the terms and the EPs of <code>ori_mrs</code>
+	 */
+	protected TermAlignment alignment;
+
 	public MrsTransformer (File file, Preprocessor p) {
 		this.ori_mrs = new MRS(file);
 		this.pre = p;
@@ -92,6 +98,18 @@ public class MrsTransformer {
 		return this.gen_mrs;
 	}
 
+	/**
+	 * Return the alignment between <code>terms</code> and the EPs of
+	 * <code>ori_mrs</code>, which is built once.
+	 * @param terms all the terms in this MRS.
+	 * @return a TermAlignment
+	 */
+	protected TermAlignment getAlignment(Term[] terms) {
+		if (alignment == null || alignment.getTerms() != terms)
+			alignment = new TermAlignment(this.ori_mrs, terms);
+		return alignment;
+	}
+
 	/**
 	 * Transform from a declarative to Y/N interrogative.
 	 *
@@ -131,6 +149,7 @@ public class MrsTransformer {
 		ArrayList<MRS> outList = new ArrayList<MRS>();
 		MRS q_mrs;
 		ArrayList<EP> eps;
+		TermAlignment align = getAlignment(terms);
 
 		for (Term term:terms) {
 			for (String neType:term.getNeTypes()) {
@@ -142,7 +161,7 @@ public class MrsTransformer {
 
 				//if (neType.contains("NEperson")||neType.contains("NElocation")||neType.contains("NEdate"))
 				q_mrs = new MRS(this.ori_mrs);
-				eps = q_mrs.getEPS(term.getCfrom(), term.getCto());
+				eps = align.getEPS(term, q_mrs);
 				String hi, lo;
 				EP hiEP, loEP;
 				if (eps == null || eps.size() == 0) {
@@ -212,7 +231,7 @@ public class MrsTransformer {
 
 				if (neType.equals("NElocation") || neType.equals("NEdate"))
 				{
-					EP ppEP = q_mrs.getEPbefore(term.getCfrom(), term.getCto());
+					EP ppEP = align.getEPbefore(term, q_mrs);
 					String pp = this.pre.getPrepositionBeforeTerm(term, 0);
 					// change the preposition (if any) before the term
 					if (pp!=null && ppEP != null && ppEP.getPred()!=null &&
@@ -256,6 +275,7 @@ public class MrsTransformer {
 		ArrayList<MRS> outList = new ArrayList<MRS>();
 		MRS q_mrs;
 		ArrayList<EP> eps, hiloEPS;
+		TermAlignment align = getAlignment(terms);
 
 		for (Term term:terms) {
 			for (String neType:term.getNeTypes()) {
@@ -266,7 +286,7 @@ public class MrsTransformer {
 
 				if (neType.contains("NEnumber")||neType.contains("NEhour")||neType.contains("NEpercentage")) {
 					q_mrs = new MRS(this.ori_mrs);
-					eps = q_mrs.getEPS(term.getCfrom(), term.getCto());
+					eps = align.getEPS(term, q_mrs);
 
 					// there should be two: one is UDEF_Q_REL, the other is card_rel
 					if (eps.size() != 2) {
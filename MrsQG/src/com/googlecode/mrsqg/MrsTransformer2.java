@@ -8,6 +8,7 @@ import java.util.HashSet;
 import org.apache.log4j.Logger;
 
 import com.googlecode.mrsqg.analysis.Term;
+import com.googlecode.mrsqg.analysis.TermAlignment;
 import com.googlecode.mrsqg.mrs.DMRS;
 import com.googlecode.mrsqg.mrs.EP;
 import com.googlecode.mrsqg.mrs.MRS;
@@ -120,6 +121,7 @@ public class MrsTransformer2 extends MrsTransformer {
 		EP hiEP, loEP;
 		HashSet<String> neTypes;
 		Var var;
+		TermAlignment align = getAlignment(terms);
 
 		/*
 [ WHICH_Q_REL<14:20>
@@ -196,7 +198,7 @@ HCONS: < ...h17 qeq h14 >
 				q_mrs.addEPtoEPS(hiEP);
 				q_mrs.addEPtoEPS(loEP);
 
-				neTypes = neTypeInEPS(dEPS, terms);
+				neTypes = neTypeInEPS(dEPS, align);
 
 				if (neTypes.size() > 1) {
 					// generate a "what" question for multiple neTypes
@@ -314,6 +316,17 @@ HCONS: < ...h17 qeq h14 >
 		return neTypes;
 	}
 
+	/**
+	 * Find out all named entity types in <code>eps</code> given the
+	 * alignment of terms <code>align</code>
+	 * @param eps
+	 * @param align
+	 * @return a set of neType
+	 */
+	public static HashSet<String> neTypeInEPS (HashSet<EP> eps, TermAlignment align) {
+		return align.getNeTypes(eps);
+	}
+
 	/**
 	 * Transform from a declarative to a HOW MANY/MUCH interrogative.
 	 * @param terms all the terms in this MRS.
@@ -1,8 +1,8 @@
 package com.googlecode.mrsqg;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 
 import org.apache.log4j.Logger;
@@ -12,10 +12,12 @@ import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
 
+import com.googlecode.mrsqg.analysis.AnnotatedSentence;
 import com.googlecode.mrsqg.analysis.Term;
 import com.googlecode.mrsqg.analysis.TermExtractor;
 import com.googlecode.mrsqg.nlp.NETagger;
 import com.googlecode.mrsqg.nlp.OpenNLP;
+import com.googlecode.mrsqg.nlp.StanfordNeTagger;
 import com.googlecode.mrsqg.util.Dictionary;
 import com.googlecode.mrsqg.util.StringUtils;
 
@@ -27,10 +29,13 @@ import com.googlecode.mrsqg.util.StringUtils;
  * @author Xuchen Yao
  * @version 2010-02-26
  */
-public class Preprocessor {
+public class Preprocessor implements Serializable {
 
 	private static Logger log = Logger.getLogger(Preprocessor.class);
 
+	/** Version number used during deserialization. */
+	private static final long serialVersionUID = 20101020L;
+
 	private int countOfSents = 0;
 	private String[][] tokens;
 	private String[][] pos;
@@ -55,6 +60,7 @@ public class Preprocessor {
 	public String[][] getPpChunks() {return this.ppChunks;}
 	public String[][] getChunks() {return this.chunks;}
 	public String[][] getPos() {return this.pos;}
+	public String[][][] getNes() {return this.nes;}
 
 	public boolean preprocess (String sents, boolean singleSentence) {
 		log.info("Preprocessing");
@@ -80,6 +86,10 @@ public class Preprocessor {
 			log.info("Sentence "+i+": "+original);
 			//tokens[i] = NETagger.tokenize(original);
 			tokens[i] = OpenNLP.tokenize(original);
+		}
+		// the Stanford NE tagger runs in the background while tagging and chunking
+		StanfordNeTagger.Batch stanfordNes = NETagger.startStanfordNes(this.tokens);
+		for (int i = 0; i < countOfSents; i++) {
 			pos[i] = OpenNLP.tagPos(tokens[i]);
 			chunks[i] = OpenNLP.tagChunks(tokens[i], pos[i]);
 			npChunks[i] = OpenNLP.joinNounPhrases(tokens[i], chunks[i]);
@@ -98,11 +108,14 @@ public class Preprocessor {
 
 		this.terms = new Term[this.countOfSents][];
 		// extract named entities
-		this.nes = NETagger.extractNes(this.tokens);
+		this.nes = NETagger.extractNes(this.tokens, stanfordNes);
 		if (this.nes != null) {
 			for (int i=0; i<this.countOfSents; i++){
 				original = originalSentences[i];
-				this.terms[i] = TermExtractor.getTerms(original, "", this.nes[i],
+				// the sentence is tagged already
+				AnnotatedSentence annotated = new AnnotatedSentence(original,
+						tokens[i], pos[i], chunks[i]);
+				this.terms[i] = TermExtractor.getTerms(annotated, this.nes[i],
 						Preprocessor.getDictionaries());
 				log.info("Sentence "+i+" terms:");
 				for (int j=0; j<this.terms[i].length; j++) {
@@ -294,10 +307,56 @@ public class Preprocessor {
 	 * @param tokenPos a boolean value.
 	 */
 	public void outputFSCbyTerms (OutputStream os, boolean tokenPos) {
+		String fsc = getFSCbyTerms(tokenPos);
+		if (fsc.length() == 0) return;
+		try {
+			os.write(fsc.getBytes("UTF-8"));
+			os.flush();
+		} catch (IOException e) {
+			log.error("Error:", e);
+		}
+	}
 
+	/**
+	 * Get the preprocessed sentence in FSC format by terms, as
+	 * {@link #outputFSCbyTerms(OutputStream, boolean)} outputs it.
+	 *
+	 * @param tokenPos whether to also output the POS tags of tokens
+	 * @return a string representing FSC in XML, empty if there's no sentence
+	 */
+	public String getFSCbyTerms(boolean tokenPos) {
 		if (countOfSents == 0) {
 			log.error("No input sentence.");
-			return;
+			return "";
+		}
+		// about 300 characters per edge
+		StringBuilder sb = new StringBuilder(200+sentences[0].length()+300*tokens[0].length);
+		appendFSCbyTerms(sb, tokenPos);
+		return sb.toString();
+	}
+
+	/**
+	 * Append the preprocessed sentence in FSC format by terms to <code>sb</code>,
+	 * so that a buffer can be reused for many sentences.
+	 * <p>
+	 * The XML is written directly without indentation, which PET doesn't need:
+	 * <pre>
+	 * &lt;?xml version="1.0" encoding="UTF-8"?&gt;
+	 * &lt;fsc version="1.0"&gt;&lt;chart id="fsc"&gt;&lt;text&gt;Al Gore was born in Washington DC .&lt;/text&gt;
+	 * &lt;lattice init="v0" final="v8"&gt;&lt;edge source="v0" target="v2"&gt;&lt;fs type="token"&gt;
+	 * &lt;f name="+FORM"&gt;&lt;str&gt;&lt;![CDATA[Al Gore]]&gt;&lt;/str&gt;&lt;/f&gt;...
+	 * </pre>
+	 * (without the line breaks). See {@link #outputFSC()} for the DTD.
+	 *
+	 * @param sb a buffer
+	 * @param tokenPos whether to also output the POS tags of tokens
+	 * @return false if there's no sentence
+	 */
+	public boolean appendFSCbyTerms(StringBuilder sb, boolean tokenPos) {
+
+		if (countOfSents == 0) {
+			log.error("No input sentence.");
+			return false;
 		}
 		String sent = sentences[0];
 		int nTokens = tokens[0].length;
@@ -315,181 +374,93 @@ public class Preprocessor {
 //			else if (pos[i].equals("``")) pos[i]="“";
 //		}
 
-		OutputFormat of = new OutputFormat("XML","UTF-8",true);
-		// a bug in PET requires CDATA
-		// http://lists.delph-in.net/archive/pet/2010-June/000102.html
-		of.setCDataElements(new String[]{"str"});
-		of.setIndent(1);
-		of.setIndenting(true);
-		XMLSerializer serializer = new XMLSerializer(os,of);
-		// SAX2.0 ContentHandler.
-		ContentHandler hd;
-		try {
-			hd = serializer.asContentHandler();
-			hd.startDocument();
-			AttributesImpl atts = new AttributesImpl();
-			// <fsc version="1.0">
-			atts.addAttribute("", "", "version", "CDATA", "1.0");
-			hd.startElement("", "", "fsc", atts);
-
-			// <chart id="fsc-test">
-			atts.clear();
-			atts.addAttribute("", "", "id", "CDATA", "fsc");
-			hd.startElement("", "", "chart", atts);
-
-			// <text>Al Gore was born in Washington DC .</text>
-			atts.clear();
-			hd.startElement("", "", "text", atts);
-			hd.characters(sent.toCharArray(), 0, sent.length());
-			hd.endElement("", "", "text");
-
-			// <lattice init="v0" final="v8">
-			atts.clear();
-			atts.addAttribute("", "", "init", "CDATA", "v0");
-			atts.addAttribute("", "", "final", "CDATA", "v"+Integer.toString(nTokens));
-			hd.startElement("", "", "lattice", atts);
-
-			int tokenStart = 0;
-			int tokenLen = 0;
-			int step = 1;
-			for (int i=0; i<nTokens; i+=step) {
-				tokenLen = tokens[i].length();
-				step = 1;
-				Term term = null;
-
-				for (Term t:terms) {
-					if (t.getFrom() == i) {
-						// tokens starting from i is a term
-						step = t.getTo() - t.getFrom();
-						term = t;
-						break;
-					} else if (t.getFrom() > i) {
-						break;
-					}
-				}
-				// <edge source="v0" target="v2">
-				atts.clear();
-				if (term == null) {
-					atts.addAttribute("", "", "source", "CDATA", "v"+Integer.toString(i));
-					atts.addAttribute("", "", "target", "CDATA", "v"+Integer.toString(i+1));
-				} else {
-					atts.addAttribute("", "", "source", "CDATA", "v"+term.getFrom());
-					atts.addAttribute("", "", "target", "CDATA", "v"+term.getTo());
-				}
-				hd.startElement("", "", "edge", atts);
-
-				// <fs type="token">
-				atts.clear();
-				atts.addAttribute("", "", "type", "CDATA", "token");
-				hd.startElement("", "", "fs", atts);
-
-				// <f name="+FORM"><str>Al Gore</str></f>
-				atts.clear();
-				atts.addAttribute("", "", "name", "CDATA", "+FORM");
-				hd.startElement("", "", "f", atts);
-				atts.clear();
-				hd.startElement("", "", "str", atts);
-				if (term == null) {
-					hd.characters(tokens[i].toCharArray(), 0, tokenLen);
-				} else {
-					hd.characters(term.getText().toCharArray(), 0, term.getText().length());
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		sb.append("<fsc version=\"1.0\"><chart id=\"fsc\"><text>");
+		appendEscaped(sb, sent);
+		sb.append("</text><lattice init=\"v0\" final=\"v").append(nTokens).append("\">");
+
+		int tokenStart = 0;
+		int step = 1;
+		for (int i=0; i<nTokens; i+=step) {
+			step = 1;
+			Term term = null;
+
+			for (Term t:terms) {
+				if (t.getFrom() == i) {
+					// tokens starting from i is a term
+					step = t.getTo() - t.getFrom();
+					term = t;
+					break;
+				} else if (t.getFrom() > i) {
+					break;
 				}
-				hd.endElement("", "", "str");
-				hd.endElement("", "", "f");
-
-				// <f name="+FROM"><str>0</str></f>
-				String num;
-				atts.clear();
-				atts.addAttribute("", "", "name", "CDATA", "+FROM");
-				hd.startElement("", "", "f", atts);
-				atts.clear();
-				hd.startElement("", "", "str", atts);
-				// the same start from token and term
-				num = Integer.toString(tokenStart);
-				hd.characters(num.toCharArray(), 0, num.length());
-				hd.endElement("", "", "str");
-				hd.endElement("", "", "f");
-
-				// <f name="+TO"><str>7</str></f>
-				atts.clear();
-				atts.addAttribute("", "", "name", "CDATA", "+TO");
-				hd.startElement("", "", "f", atts);
-				atts.clear();
-				hd.startElement("", "", "str", atts);
-				if (term == null) {
-					num = Integer.toString(tokenStart+tokenLen);
-					hd.characters(num.toCharArray(), 0, num.length());
-				} else {
-					num = Integer.toString(tokenStart+term.getText().length());
-					hd.characters(num.toCharArray(), 0, num.length());
-				}
-				hd.endElement("", "", "str");
-				hd.endElement("", "", "f");
-
-				if (tokenPos) {
-	//				<f name="+TNT">
+			}
+			String form = term == null ? tokens[i] : term.getText();
+
+			// <edge source="v0" target="v2"><fs type="token">
+			sb.append("<edge source=\"v").append(i).append("\" target=\"v").append(i+step).append("\">");
+			sb.append("<fs type=\"token\">");
+
+			// <f name="+FORM"><str>Al Gore</str></f>
+			sb.append("<f name=\"+FORM\"><str>");
+			appendCData(sb, form);
+			// <f name="+FROM"><str>0</str></f>, the same start from token and term
+			sb.append("</str></f><f name=\"+FROM\"><str><![CDATA[").append(tokenStart);
+			// <f name="+TO"><str>7</str></f>
+			sb.append("]]></str></f><f name=\"+TO\"><str><![CDATA[").append(tokenStart+form.length());
+			sb.append("]]></str></f>");
+
+			if (tokenPos) {
+	//			<f name="+TNT">
 	//	              <fs type="tnt">
 	//	                <f name="+TAGS" org="list"><str>DT</str></f>
 	//	                <f name="+PRBS" org="list"><str>1.000000e+00</str></f>
 	//	              </fs>
 	//	            </f>
-					atts.clear();
-					atts.addAttribute("", "", "name", "CDATA", "+TNT");
-					hd.startElement("", "", "f", atts);
-					atts.clear();
-					atts.addAttribute("", "", "type", "CDATA", "tnt");
-					hd.startElement("", "", "fs", atts);
-
-					// <f name="+TAGS" org="list"><str>DT</str></f>
-					atts.clear();
-					atts.addAttribute("", "", "name", "CDATA", "+TAGS");
-					atts.addAttribute("", "", "org", "CDATA", "list");
-					hd.startElement("", "", "f", atts);
-					atts.clear();
-					hd.startElement("", "", "str", atts);
-					if (term != null)
-						hd.characters(term.getPosFSC().toCharArray(), 0, term.getPosFSC().length());
-					else
-						hd.characters(pos[i].toCharArray(), 0, pos[i].length());
-					hd.endElement("", "", "str");
-					hd.endElement("", "", "f");
-
-					//<f name="+PRBS" org="list"><str>1.000000e+00</str></f>
-					atts.clear();
-					atts.addAttribute("", "", "name", "CDATA", "+PRBS");
-					atts.addAttribute("", "", "org", "CDATA", "list");
-					hd.startElement("", "", "f", atts);
-					atts.clear();
-					hd.startElement("", "", "str", atts);
-					hd.characters("1.000000e+00".toCharArray(), 0, "1.000000e+00".length());
-					hd.endElement("", "", "str");
-					hd.endElement("", "", "f");
-
-
-					hd.endElement("", "", "fs");
-					hd.endElement("", "", "f");
+				sb.append("<f name=\"+TNT\"><fs type=\"tnt\"><f name=\"+TAGS\" org=\"list\"><str>");
+				appendCData(sb, term == null ? pos[i] : term.getPosFSC());
+				sb.append("</str></f><f name=\"+PRBS\" org=\"list\"><str><![CDATA[1.000000e+00]]></str></f></fs></f>");
+			}
 
-				}
+			sb.append("</fs></edge>");
 
-				hd.endElement("", "", "fs");
-				hd.endElement("", "", "edge");
+			// 1 for a space
+			tokenStart += (form.length()+1);
+		}
 
-				if (term == null) {
-					// 1 for a space
-					tokenStart += (tokenLen+1);
-				} else {
-					tokenStart += (term.getText().length()+1);
-				}
+		sb.append("</lattice></chart></fsc>\n");
+		return true;
+	}
+
+	/**
+	 * Append <code>text</code> as XML character data.
+	 */
+	private static void appendEscaped(StringBuilder sb, String text) {
+		for (int i=0; i<text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '<': sb.append("&lt;"); break;
+			case '>': sb.append("&gt;"); break;
+			case '&': sb.append("&amp;"); break;
+			default: sb.append(c);
 			}
+		}
+	}
 
-			hd.endElement("", "", "lattice");
-			hd.endElement("", "", "chart");
-			hd.endElement("", "", "fsc");
-		} catch (IOException e) {
-			log.error("Error:", e);
-		} catch (SAXException e) {
-			log.error("Error:", e);
+	/**
+	 * Append <code>text</code> as a CDATA section, which a bug in PET requires for &lt;str&gt;:
+	 * http://lists.delph-in.net/archive/pet/2010-June/000102.html
+	 */
+	private static void appendCData(StringBuilder sb, String text) {
+		sb.append("<![CDATA[");
+		int from = 0;
+		int end;
+		// "]]>" can't be in a CDATA section, so it's split into two
+		while ((end = text.indexOf("]]>", from)) != -1) {
+			sb.append(text, from, end+2).append("]]><![CDATA[");
+			from = end+2;
 		}
+		sb.append(text, from, text.length()).append("]]>");
 	}
 
 	/**
@@ -504,12 +475,8 @@ public class Preprocessor {
 	 */
 	public String getFSCbyTerms(String input, boolean tokenPos, boolean singleSentence) {
 
-		ByteArrayOutputStream os = new ByteArrayOutputStream();
 		preprocess(input, singleSentence);
-		outputFSCbyTerms(os, tokenPos);
-		String fsc = os.toString();
-
-		return fsc;
+		return getFSCbyTerms(tokenPos);
 	}
 
 	public static void addDictionary(Dictionary dict) {
@@ -0,0 +1,360 @@
+package com.googlecode.mrsqg;
+
+import java.io.File;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.googlecode.mrsqg.analysis.Term;
+import com.googlecode.mrsqg.util.FileUtils;
+
+/**
+ * A process-wide cache of preprocessed sentences and their FSC, so that a
+ * sentence is tagged only once however often it is parsed: in the pipeline,
+ * after decomposition, by the fallback replacers and in later runs.
+ * <p>
+ * Sentences are keyed by their text with whitespace collapsed. The least
+ * recently used ones are evicted when there are more than
+ * {@link #getMaxEntries()} of them or their estimated size exceeds
+ * {@link #getMaxBytes()}. If a directory is set, every sentence is also
+ * written there and read back after it was evicted, or in another run.
+ * Sentences in the directory are stamped with a fingerprint of the NLP
+ * resources and of the serialized classes, and are discarded when it doesn't
+ * match any more, e.g. after a gazetteer list or a model was updated.
+ * <p>
+ * The cached <code>Preprocessor</code>s are shared, so they must be read only.
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class PreprocessorCache {
+
+	private static Logger log = Logger.getLogger(PreprocessorCache.class);
+
+	/** A preprocessed sentence and its FSC by terms with token POS. */
+	private static class Entry implements Serializable {
+		private static final long serialVersionUID = 20101020L;
+		String key;
+		/** the fingerprint of the resources and classes when it was written */
+		String fingerprint;
+		Preprocessor pre;
+		String fsc;
+		/** estimated size in bytes */
+		transient long bytes;
+		Entry(String key, Preprocessor pre) {
+			this.key = key;
+			this.pre = pre;
+		}
+	}
+
+	private static int maxEntries = 2000;
+	private static long maxBytes = 64L*1024*1024;
+	/** where entries are written, or null */
+	private static File dir = null;
+	/** see {@link #fingerprint(File)} */
+	private static String fingerprint = fingerprint(null);
+
+	/** the entries, least recently used first */
+	private static LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(256, 0.75f, true);
+	private static long bytes = 0;
+
+	private static int hits = 0;
+	private static int diskHits = 0;
+	private static int misses = 0;
+	private static int evictions = 0;
+	private static int stale = 0;
+
+	public static synchronized int getHits() {return hits;}
+	public static synchronized int getDiskHits() {return diskHits;}
+	public static synchronized int getMisses() {return misses;}
+	public static synchronized int getEvictions() {return evictions;}
+	/** @return the number of sentences discarded from the directory since the resources changed */
+	public static synchronized int getStale() {return stale;}
+	public static synchronized int getSize() {return entries.size();}
+	/** @return the estimated size in bytes of all entries in memory */
+	public static synchronized long getBytes() {return bytes;}
+	public static synchronized int getMaxEntries() {return maxEntries;}
+	public static synchronized long getMaxBytes() {return maxBytes;}
+	public static synchronized File getDirectory() {return dir;}
+
+	/**
+	 * Sets the bounds of the cache and evicts entries to meet them.
+	 * @param entries the maximum number of sentences kept in memory, 0 disables the cache
+	 * @param megabytes the maximum estimated size of the sentences kept in memory
+	 * @param directory a directory to keep all sentences in as well, or null
+	 */
+	public static void configure(int entries, long megabytes, File directory) {
+		configure(entries, megabytes, directory, null);
+	}
+
+	/**
+	 * Sets the bounds of the cache and evicts entries to meet them.
+	 * @param entries the maximum number of sentences kept in memory, 0 disables the cache
+	 * @param megabytes the maximum estimated size of the sentences kept in memory
+	 * @param directory a directory to keep all sentences in as well, or null
+	 * @param resources the directory of the NLP resources (lists, patterns, models),
+	 * sentences in <code>directory</code> preprocessed with other resources are discarded
+	 */
+	public static synchronized void configure(int entries, long megabytes, File directory, File resources) {
+		fingerprint = fingerprint(resources);
+		maxEntries = entries;
+		maxBytes = megabytes*1024*1024;
+		dir = directory;
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			log.error("Could not create the preprocessor cache directory "+dir);
+			dir = null;
+		}
+		evict();
+	}
+
+	/**
+	 * Removes all sentences from memory (not from the directory) and resets the statistics.
+	 */
+	public static synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+		hits = diskHits = misses = evictions = stale = 0;
+	}
+
+	/**
+	 * Get <code>sents</code> preprocessed, as {@link Preprocessor#preprocess(String, boolean)} does.
+	 * @param sents a raw sentence or text
+	 * @param singleSentence whether the input is a single sentence or not
+	 * @return a preprocessor which must not be changed
+	 */
+	public static Preprocessor get(String sents, boolean singleSentence) {
+		return getEntry(sents, singleSentence).pre;
+	}
+
+	/**
+	 * Get the FSC of <code>sents</code>, as
+	 * {@link Preprocessor#getFSCbyTerms(String, boolean, boolean)} does with
+	 * token POS. The preprocessor it comes from is {@link #get(String, boolean)}.
+	 * @param sents a raw sentence or text
+	 * @param singleSentence whether the input is a single sentence or not
+	 * @return a string representing FSC in XML
+	 */
+	public static String getFSC(String sents, boolean singleSentence) {
+		Entry e = getEntry(sents, singleSentence);
+		synchronized (e) {
+			if (e.fsc == null) {
+				e.fsc = e.pre.getFSCbyTerms(true);
+				synchronized (PreprocessorCache.class) {
+					if (entries.get(e.key) == e) {
+						bytes += 2L*e.fsc.length();
+						e.bytes += 2L*e.fsc.length();
+						evict();
+					}
+				}
+				write(e);
+			}
+			return e.fsc;
+		}
+	}
+
+	private static Entry getEntry(String sents, boolean singleSentence) {
+		String key = (singleSentence ? "1 " : "0 ") + sents.trim().replaceAll("\\s+", " ");
+		synchronized (PreprocessorCache.class) {
+			Entry e = entries.get(key);
+			if (e != null) {
+				hits++;
+				return e;
+			}
+		}
+
+		// preprocessing isn't thread safe
+		synchronized (Preprocessor.class) {
+			synchronized (PreprocessorCache.class) {
+				// preprocessed by another thread meanwhile?
+				Entry e = entries.get(key);
+				if (e != null) {
+					hits++;
+					return e;
+				}
+			}
+			Entry e = read(key);
+			if (e == null) {
+				Preprocessor pre = new Preprocessor();
+				pre.preprocess(sents, singleSentence);
+				e = new Entry(key, pre);
+				synchronized (PreprocessorCache.class) {
+					misses++;
+				}
+				write(e);
+			}
+			e.bytes = estimate(e);
+			synchronized (PreprocessorCache.class) {
+				put(e);
+			}
+			return e;
+		}
+	}
+
+	private static void put(Entry e) {
+		if (maxEntries <= 0) return;
+		entries.put(e.key, e);
+		bytes += e.bytes;
+		evict();
+	}
+
+	/** Evicts the least recently used entries until the bounds are met. */
+	private static void evict() {
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext() && (entries.size() > maxEntries || bytes > maxBytes)) {
+			Entry e = it.next().getValue();
+			it.remove();
+			bytes -= e.bytes;
+			evictions++;
+		}
+	}
+
+	/** @return the estimated size in bytes of an entry */
+	private static long estimate(Entry e) {
+		long size = 64 + 2L*e.key.length();
+		Preprocessor pre = e.pre;
+		size += estimate(pre.getTokens()) + estimate(pre.getPos()) + estimate(pre.getChunks()) +
+			estimate(pre.getNpChunks()) + estimate(pre.getPpChunks());
+		if (pre.getNes() != null)
+			for (String[][] nes:pre.getNes()) size += estimate(nes);
+		if (pre.getSentences() != null)
+			for (String s:pre.getSentences()) size += 40 + 2L*s.length();
+		if (pre.getTerms() != null)
+			for (Term[] terms:pre.getTerms())
+				if (terms != null)
+					for (Term t:terms) {
+						size += 160 + 4L*t.getText().length();
+						if (t.getNeTypes() != null)
+							for (String type:t.getNeTypes()) size += 8 + (type == null ? 0 : 40 + 2L*type.length());
+					}
+		if (e.fsc != null) size += 2L*e.fsc.length();
+		return size;
+	}
+
+	private static long estimate(String[][] a) {
+		if (a == null) return 0;
+		long size = 16;
+		for (String[] b:a) {
+			if (b == null) continue;
+			size += 16;
+			for (String s:b) if (s != null) size += 40 + 2L*s.length();
+		}
+		return size;
+	}
+
+	private static File file(File dir, String key) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("MD5");
+			byte[] digest = md.digest(key.getBytes("UTF-8"));
+			StringBuilder sb = new StringBuilder();
+			for (byte b:digest) sb.append(String.format("%02x", b));
+			return new File(dir, sb.toString()+".ser");
+		} catch (Exception e) {
+			log.error("Error:", e);
+			return null;
+		}
+	}
+
+	/** @return the entry of <code>key</code> from the directory, or null */
+	private static Entry read(String key) {
+		File d = getDirectory();
+		if (d == null) return null;
+		File f = file(d, key);
+		if (f == null || !f.exists()) return null;
+		try {
+			Entry e = (Entry) FileUtils.readSerialized(f);
+			// a different sentence with the same hash?
+			if (!key.equals(e.key)) return null;
+			if (!getFingerprint().equals(e.fingerprint)) {
+				// preprocessed with other resources or classes
+				synchronized (PreprocessorCache.class) {
+					stale++;
+				}
+				if (!f.delete()) log.warn("Could not delete "+f);
+				return null;
+			}
+			synchronized (PreprocessorCache.class) {
+				diskHits++;
+			}
+			return e;
+		} catch (Exception e) {
+			log.error("Error:", e);
+			return null;
+		}
+	}
+
+	private static void write(Entry e) {
+		File d = getDirectory();
+		if (d == null) return;
+		File f = file(d, e.key);
+		if (f == null) return;
+		try {
+			synchronized (e) {
+				e.fingerprint = getFingerprint();
+				FileUtils.writeSerialized(e, f);
+			}
+		} catch (Exception ex) {
+			log.error("Error:", ex);
+		}
+	}
+
+	private static synchronized String getFingerprint() {return fingerprint;}
+
+	/**
+	 * Identifies what a preprocessed sentence depends on: the fields of the
+	 * serialized classes, and the names, sizes and modification times of the
+	 * files under <code>resources</code>. Compiled caches (*.ser) are left out
+	 * since they're rewritten from the other files.
+	 * @param resources a directory, or null
+	 * @return an MD5 in hex
+	 */
+	private static String fingerprint(File resources) {
+		StringBuilder sb = new StringBuilder();
+		for (Class<?> c:new Class<?>[]{Entry.class, Preprocessor.class, Term.class}) {
+			ObjectStreamClass osc = ObjectStreamClass.lookup(c);
+			sb.append(c.getName()).append(':').append(osc.getSerialVersionUID());
+			for (ObjectStreamField f:osc.getFields()) {
+				sb.append(' ').append(f.getName()).append('=').append(f.getTypeCode());
+				if (f.getTypeString() != null) sb.append(f.getTypeString());
+			}
+			sb.append(';');
+		}
+		if (resources != null) fingerprint(resources, "", sb);
+		try {
+			MessageDigest md = MessageDigest.getInstance("MD5");
+			byte[] digest = md.digest(sb.toString().getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder();
+			for (byte b:digest) hex.append(String.format("%02x", b));
+			return hex.toString();
+		} catch (Exception e) {
+			log.error("Error:", e);
+			return sb.toString();
+		}
+	}
+
+	private static void fingerprint(File file, String path, StringBuilder sb) {
+		if (file.isDirectory()) {
+			String[] names = file.list();
+			if (names == null) return;
+			Arrays.sort(names);
+			for (String name:names) fingerprint(new File(file, name), path+"/"+name, sb);
+		} else if (!path.endsWith(".ser")) {
+			sb.append(path).append(':').append(file.length()).append(':')
+				.append(file.lastModified()).append(';');
+		}
+	}
+
+	public static synchronized void logStats() {
+		int lookups = hits + diskHits + misses;
+		log.info(String.format("PreprocessorCache: %d lookups, %d hits (%.1f%%), %d read from disk, " +
+				"%d preprocessed; %d sentences in memory (%d KB), %d evicted, %d stale on disk.",
+				lookups, hits, lookups == 0 ? 0.0 : 100.0*hits/lookups, diskHits, misses,
+				entries.size(), bytes/1024, evictions, stale));
+	}
+}
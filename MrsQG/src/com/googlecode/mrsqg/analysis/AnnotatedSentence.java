@@ -0,0 +1,146 @@
+package com.googlecode.mrsqg.analysis;
+
+import java.util.HashMap;
+
+import com.googlecode.mrsqg.nlp.OpenNLP;
+import com.googlecode.mrsqg.util.StringUtils;
+
+/**
+ * <p>A sentence with its tokens, part of speech tags and chunk tags, as
+ * produced by the <code>Preprocessor</code>, so that terms can be extracted
+ * without tagging the sentence again.</p>
+ *
+ * <p>The tokens are aligned with the sentence once, so the untokenized text of
+ * a span of tokens is a substring of the sentence. What the
+ * <code>TermExtractor</code> computes for the text of a span (its
+ * normalization, keywords and retokenization) is cached, so it is done only
+ * once per sentence.</p>
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class AnnotatedSentence {
+
+	/** The original sentence. */
+	private String sentence;
+	private String[] tokens;
+	private String[] pos;
+	private String[] chunks;
+	/** the start position (in characters) of each token, in the tokens joined by spaces */
+	private int[] tokenStart;
+
+	/** the character offsets of the tokens in the sentence */
+	private OpenNLP.Alignment alignment;
+	/** normalizations of texts */
+	private HashMap<String, String> normalized = new HashMap<String, String>();
+	/** whether texts contain keywords */
+	private HashMap<String, Boolean> keywords = new HashMap<String, Boolean>();
+	/** texts retokenized and joined by spaces */
+	private HashMap<String, String> retokenized = new HashMap<String, String>();
+
+	/**
+	 * Tokenizes and tags a sentence.
+	 *
+	 * @param sentence a sentence
+	 */
+	public AnnotatedSentence(String sentence) {
+		this.sentence = sentence;
+		this.tokens = OpenNLP.tokenize(sentence);
+		this.pos = OpenNLP.tagPos(tokens);
+		this.chunks = OpenNLP.tagChunks(tokens, pos);
+		init();
+	}
+
+	/**
+	 * @param sentence a sentence
+	 * @param tokens the tokens of the sentence, by <code>OpenNLP.tokenize()</code>
+	 * @param pos the part of speech tags of the tokens
+	 * @param chunks the chunk tags of the tokens
+	 */
+	public AnnotatedSentence(String sentence, String[] tokens, String[] pos, String[] chunks) {
+		this.sentence = sentence;
+		this.tokens = tokens;
+		this.pos = pos;
+		this.chunks = chunks;
+		init();
+	}
+
+	private void init() {
+		tokenStart = new int[tokens.length];
+		for (int i=0, offset=0; i<tokens.length; i++) {
+			tokenStart[i] = offset;
+			// 1 for a space
+			offset += (tokens[i].length()+1);
+		}
+		alignment = OpenNLP.align(tokens, sentence);
+	}
+
+	public String getSentence() {return sentence;}
+	public String[] getTokens() {return tokens;}
+	public String[] getPos() {return pos;}
+	public String[] getChunks() {return chunks;}
+	public int[] getTokenStart() {return tokenStart;}
+
+	/**
+	 * @param id the first token
+	 * @param length the number of tokens
+	 * @return the tokens joined by spaces
+	 */
+	public String getTokenText(int id, int length) {
+		String text = tokens[id];
+		for (int offset = 1; offset < length; offset++)
+			text += " " + tokens[id + offset];
+		return text;
+	}
+
+	/**
+	 * Gets the text of a span of tokens as it is in the original sentence.
+	 *
+	 * @param id the first token
+	 * @param length the number of tokens
+	 * @return the untokenized text
+	 */
+	public String getText(int id, int length) {
+		String text = alignment.untokenize(id, id + length);
+		if (text == null)
+			// the tokens are not found next to each other in the sentence
+			text = OpenNLP.untokenize(getTokenText(id, length), sentence);
+		return text;
+	}
+
+	/**
+	 * @return <code>StringUtils.normalize(text)</code>
+	 */
+	public String normalize(String text) {
+		String norm = normalized.get(text);
+		if (norm == null) {
+			norm = StringUtils.normalize(text);
+			normalized.put(text, norm);
+		}
+		return norm;
+	}
+
+	/**
+	 * @return whether <code>KeywordExtractor.getKeywords(text)</code> finds any
+	 */
+	public boolean hasKeywords(String text) {
+		Boolean has = keywords.get(text);
+		if (has == null) {
+			has = KeywordExtractor.getKeywords(text).length > 0;
+			keywords.put(text, has);
+		}
+		return has;
+	}
+
+	/**
+	 * @return the text tokenized by <code>OpenNLP.tokenize()</code> and joined by spaces
+	 */
+	public String retokenize(String text) {
+		String joined = retokenized.get(text);
+		if (joined == null) {
+			joined = StringUtils.concatWithSpaces(OpenNLP.tokenize(text));
+			retokenized.put(text, joined);
+		}
+		return joined;
+	}
+}
@@ -97,6 +97,20 @@ public class Pair {
 		this.failedType = failedType;
 	}
 
+	/**
+	 * Copy the original side of a pair: the original sentence, its generations
+	 * and a copy of its MRS, so that the MRS can be changed (such as its EP
+	 * flags) without touching <code>pair</code>.
+	 * @param pair a pair of the original sentence
+	 */
+	public Pair (Pair pair) {
+		this.oriSent = pair.oriSent;
+		if (pair.oriMrs != null) this.oriMrs = new MRS(pair.oriMrs);
+		this.genOriSentList = pair.genOriSentList;
+		this.genOriSentFailedList = pair.genOriSentFailedList;
+		this.genOriCand = pair.getGenOriCand();
+	}
+
 	public String getTranSent () { return this.tranSent;}
 	//public void setTranMrs (ArrayList<MRS> list) { this.tranMrsList = list;}
 	//public ArrayList<String> getGenSentList () {return this.genSentList;}
@@ -0,0 +1,181 @@
+package com.googlecode.mrsqg.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+
+import org.apache.log4j.Logger;
+
+import com.googlecode.mrsqg.mrs.EP;
+import com.googlecode.mrsqg.mrs.MRS;
+import com.googlecode.mrsqg.util.IntervalTree;
+
+/**
+ * An alignment between the terms of a sentence and the EPs of its MRS
+ * by character ranges.
+ * <p>
+ * It's built once per MRS with two interval trees, one over EPs and one
+ * over terms, and keeps for every term the EPs with the same range
+ * (what {@link MRS#getEPS(int, int)} returns). The transformers query it
+ * instead of scanning the EP list or the term list for every term and
+ * every NE type.
+ * <p>
+ * Queries taking another MRS work on copies of the aligned MRS
+ * (made with {@link MRS#MRS(MRS)}, possibly with EPs removed or added),
+ * whose EPs are found by {@link MRS#epAt(int)}.
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class TermAlignment {
+
+	private static Logger log = Logger.getLogger(TermAlignment.class);
+
+	private MRS mrs;
+	private Term[] terms;
+	/** the EPs of {@link #mrs} in EPS order when this alignment is built */
+	private EP[] eps;
+	private IdentityHashMap<EP, Integer> epPosition = new IdentityHashMap<EP, Integer>();
+	private IdentityHashMap<Term, Integer> termIndex = new IdentityHashMap<Term, Integer>();
+	private IntervalTree<Term> termTree = new IntervalTree<Term>();
+
+	private ArrayList<ArrayList<EP>> exactEPS;
+
+	/**
+	 * Align <code>terms</code> with the EPs of <code>mrs</code>.
+	 * @param mrs an MRS
+	 * @param terms the terms of the sentence of <code>mrs</code>
+	 */
+	public TermAlignment(MRS mrs, Term[] terms) {
+		this.mrs = mrs;
+		this.terms = terms;
+		this.eps = mrs.getEps().toArray(new EP[mrs.getEps().size()]);
+
+		IntervalTree<EP> epTree = new IntervalTree<EP>();
+		for (int i=0; i<eps.length; i++) {
+			epTree.add(eps[i].getCfrom(), eps[i].getCto(), eps[i]);
+			epPosition.put(eps[i], i);
+		}
+		epTree.build();
+
+		int n = terms == null ? 0 : terms.length;
+		exactEPS = new ArrayList<ArrayList<EP>>(n);
+		for (int i=0; i<n; i++) {
+			Term t = terms[i];
+			termIndex.put(t, i);
+			termTree.add(t.getCfrom(), t.getCto(), t);
+			exactEPS.add(epTree.getExact(t.getCfrom(), t.getCto()));
+		}
+		termTree.build();
+	}
+
+	public MRS getMrs() {return mrs;}
+	public Term[] getTerms() {return terms;}
+
+	private int indexOf(Term term) {
+		Integer i = termIndex.get(term);
+		if (i == null) {
+			log.error("Term not aligned: "+term);
+			return -1;
+		}
+		return i;
+	}
+
+	/**
+	 * Return the EPs with the same character range as <code>term</code>,
+	 * the same as {@link MRS#getEPS(int, int)} on the aligned MRS.
+	 * @param term a term
+	 * @return an ArrayList of EP in EPS order (empty if none)
+	 */
+	public ArrayList<EP> getEPS(Term term) {
+		int i = indexOf(term);
+		if (i < 0) return mrs.getEPS(term.getCfrom(), term.getCto());
+		return new ArrayList<EP>(exactEPS.get(i));
+	}
+
+	/**
+	 * Return the EPs with the same character range as <code>term</code>
+	 * in a copy of the aligned MRS.
+	 * @param term a term
+	 * @param copy a copy of the aligned MRS
+	 * @return an ArrayList of EP in EPS order (empty if none)
+	 */
+	public ArrayList<EP> getEPS(Term term, MRS copy) {
+		int i = indexOf(term);
+		if (i < 0) return copy.getEPS(term.getCfrom(), term.getCto());
+		ArrayList<EP> list = new ArrayList<EP>();
+		for (EP ep:exactEPS.get(i)) {
+			EP e = copy.epAt(ep.getOrdinal());
+			if (e != null) list.add(e);
+		}
+		return list;
+	}
+
+	/**
+	 * Get the EP before <code>term</code> in a copy of the aligned MRS,
+	 * the same as {@link MRS#getEPbefore(int, int)} on <code>copy</code>.
+	 * @param term a term
+	 * @param copy a copy of the aligned MRS
+	 * @return an EP (null if not found)
+	 */
+	public EP getEPbefore(Term term, MRS copy) {
+		int i = indexOf(term);
+		if (i < 0) return copy.getEPbefore(term.getCfrom(), term.getCto());
+
+		for (EP ep:exactEPS.get(i)) {
+			EP next = copy.epAt(ep.getOrdinal());
+			if (next == null) continue;
+
+			// EPs added to the copy are after all aligned EPs,
+			// so the one before next is the closest aligned EP still in the copy
+			EP ret = null;
+			for (int p=epPosition.get(ep)-1; p>=0 && ret==null; p--) {
+				ret = copy.epAt(eps[p].getOrdinal());
+			}
+
+			// extra safety
+			if (ret!=null && ret.getCto() >= next.getCfrom()) {
+				log.error("ep1 should be before ep2 in EPS list.");
+				log.error("ep1: "+ret);
+				log.error("ep2: "+next);
+				ret = null;
+			}
+			return ret;
+		}
+
+		// no aligned EP is left in the copy
+		return copy.getEPbefore(term.getCfrom(), term.getCto());
+	}
+
+	/**
+	 * @param cfrom the starting position in characters
+	 * @param cto the ending position in characters
+	 * @return the terms inside <<code>cfrom</code>, <code>cto</code>>
+	 */
+	public ArrayList<Term> getTermsInRange(int cfrom, int cto) {
+		return termTree.getContainedIn(cfrom, cto);
+	}
+
+	/**
+	 * Find out all named entity types of the terms inside the range of <code>eps</code>.
+	 * @param eps a set of EPs
+	 * @return a set of neType
+	 */
+	public HashSet<String> getNeTypes(Iterable<EP> eps) {
+		HashSet<String> neTypes = new HashSet<String>();
+		int cFrom=Integer.MAX_VALUE, cTo=Integer.MIN_VALUE;
+
+		// the character range of eps
+		for (EP ep:eps) {
+			if (ep.getCfrom() < cFrom) cFrom = ep.getCfrom();
+			if (ep.getCto() > cTo) cTo = ep.getCto();
+		}
+		if (cFrom > cTo) return neTypes;
+		for (Term term:getTermsInRange(cFrom, cTo)) {
+			neTypes.addAll(Arrays.asList(term.getNeTypes()));
+		}
+
+		return neTypes;
+	}
+}
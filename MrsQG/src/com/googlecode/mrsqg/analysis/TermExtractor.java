@@ -3,9 +3,12 @@ package com.googlecode.mrsqg.analysis;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import com.googlecode.mrsqg.analysis.TruncationFilter;
 import com.googlecode.mrsqg.nlp.NETagger;
@@ -24,66 +27,127 @@ public class TermExtractor {
 	/** Maximum length of a term in tokens. */
 	private static final int MAX_TERM_LENGTH = 4;
 
+	/** Punctuation removed from terms before looking them up among Stanford NEs. */
+	private static final Pattern PUNCTUATION = Pattern.compile("\\p{Punct}+");
+	/** Whitespace between tokens. */
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+	/** Types of persons, which are kept if a term is a person. */
+	private static final String[] PERSONS = {"NEactor", "NEauthor", "NEdirector", "NEfirstName", "NEscientist", "NEusPresident", "NEperson"};
+
+	/**
+	 * The named entities of a sentence indexed for {@link TermExtractor#getNeTypes(String, NeIndex)}:
+	 * every NE string with the IDs of the taggers which found it, and every
+	 * NE string found by a Stanford tagger with the IDs of the Stanford
+	 * taggers. A term's tokens are looked up among the latter one by one.
+	 */
+	private static class NeIndex {
+		/** NE -> IDs of the taggers */
+		HashMap<String, BitSet> nes = new HashMap<String, BitSet>();
+		/** NE of a Stanford tagger -> IDs of the Stanford taggers */
+		HashMap<String, BitSet> stanfordNes = new HashMap<String, BitSet>();
+		/** type of each tagger ID, as an index into <code>types</code> */
+		int[] typeIds;
+		ArrayList<String> types = new ArrayList<String>();
+		/** the types of persons */
+		BitSet persons = new BitSet();
+		/** the type NEperson, or -1 */
+		int person;
+
+		NeIndex(String[][] nes) {
+			int stanfordStart = NETagger.getStanfordStart();
+			HashMap<String, Integer> typeIndex = new HashMap<String, Integer>();
+			typeIds = new int[nes.length];
+			for (int neId = 0; neId < nes.length; neId++) {
+				String neType = NETagger.getNeType(neId);
+				Integer typeId = typeIndex.get(neType);
+				if (typeId == null) {
+					typeId = types.size();
+					typeIndex.put(neType, typeId);
+					types.add(neType);
+				}
+				typeIds[neId] = typeId;
+
+				for (String ne : nes[neId]) {
+					add(this.nes, ne, neId);
+					if (neId >= stanfordStart) add(stanfordNes, ne, neId);
+				}
+			}
+			for (String type : PERSONS) {
+				Integer typeId = typeIndex.get(type);
+				if (typeId != null) persons.set(typeId);
+			}
+			Integer typeId = typeIndex.get("NEperson");
+			person = typeId == null ? -1 : typeId;
+		}
+
+		private static void add(HashMap<String, BitSet> index, String ne, int neId) {
+			BitSet ids = index.get(ne);
+			if (ids == null) {
+				ids = new BitSet();
+				index.put(ne, ids);
+			}
+			ids.set(neId);
+		}
+	}
+
 	/**
 	 * Checks if the given term is among the named entities and returns the
 	 * types of the entities that match it.
 	 *
 	 * @param term a term, potentially a named entity
-	 * @param nes named entities
+	 * @param index named entities
 	 * @return types of matching entities
 	 */
 	// BUG fix. when a term such as "Gary, Indiana" (all single words are NElocation) comes,
 	// it will recognize it as a term and return NElocation.
-	private static String[] getNeTypes(String term, String[][] nes) {
-		List<String> neTypes = new ArrayList<String>();
-		Set<String> neTypesSet = new HashSet<String>();
-		int stanfordStart = NETagger.getStanfordStart();
-
-		for (int neId = 0; neId < nes.length; neId++)
-			for (String ne : nes[neId])
-				if (term.equals(ne)) {
-					String neType = NETagger.getNeType(neId);
-					if (neTypesSet.add(neType))
-						// there may be multiple taggers (IDs) for one type
-						neTypes.add(neType);
-					break;
+	private static String[] getNeTypes(String term, NeIndex index) {
+		// IDs of the types, in the order they are found
+		int[] found = new int[index.types.size()];
+		int count = 0;
+		BitSet foundSet = new BitSet();
+
+		BitSet ids = index.nes.get(term);
+		if (ids != null)
+			for (int neId = ids.nextSetBit(0); neId >= 0; neId = ids.nextSetBit(neId + 1)) {
+				int typeId = index.typeIds[neId];
+				if (!foundSet.get(typeId)) {
+					// there may be multiple taggers (IDs) for one type
+					foundSet.set(typeId);
+					found[count++] = typeId;
 				}
+			}
 
 		// NEs for stanford tagger. let's try again
 		// remove all punctuation since Stanford tagger doesn't contain any
-		String[] termNoPunc = term.replaceAll("\\p{Punct}+", "").split("\\s+");
-		for (int neId = stanfordStart; neId < nes.length; neId++) {
-			boolean contain = false;
-			ArrayList<String> nesList = new ArrayList<String>(Arrays.asList(nes[neId]));
-			// check if every term in termNoPunc has the same NE type
-			for (String t: termNoPunc) {
-				if (nesList.contains(t)) {
-						contain = true;
-				} else {
-					contain = false;
-					break;
-				}
+		String[] termNoPunc = WHITESPACE.split(PUNCTUATION.matcher(term).replaceAll(""));
+		// the Stanford taggers which found every token in termNoPunc
+		BitSet stanfordIds = null;
+		for (String t: termNoPunc) {
+			BitSet tIds = index.stanfordNes.get(t);
+			if (tIds == null) {
+				stanfordIds = null;
+				break;
 			}
-			if (contain) {
-				String neType = NETagger.getNeType(neId);
-				if (neTypesSet.add(neType))
+			if (stanfordIds == null) stanfordIds = (BitSet)tIds.clone();
+			else stanfordIds.and(tIds);
+		}
+		if (stanfordIds != null)
+			for (int neId = stanfordIds.nextSetBit(0); neId >= 0; neId = stanfordIds.nextSetBit(neId + 1)) {
+				int typeId = index.typeIds[neId];
+				if (!foundSet.get(typeId)) {
 					// there may be multiple taggers (IDs) for one type
-					neTypes.add(neType);
+					foundSet.set(typeId);
+					found[count++] = typeId;
+				}
 			}
-		}
 
 		// disambiguate with the priority of stanford NE tagger
 		// if Jackson is a person, then the following removes NEprovince, NEcapital from neTypes
-		if (neTypes.contains("NEperson")) {
-			String[] persons = {"NEactor", "NEauthor", "NEdirector", "NEfirstName", "NEscientist", "NEusPresident", "NEperson"};
-			ArrayList<String> list = new ArrayList<String>(Arrays.asList(persons));
-			String[] types = neTypes.toArray(new String[neTypes.size()]);
-			for (String type:types) {
-				if (!list.contains(type)) {
-					neTypes.remove(type);
-				}
-			}
-		}
+		boolean isPerson = index.person >= 0 && foundSet.get(index.person);
+		ArrayList<String> neTypes = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++)
+			if (!isPerson || index.persons.get(found[i]))
+				neTypes.add(index.types.get(found[i]));
 		return neTypes.toArray(new String[neTypes.size()]);
 	}
 
@@ -159,24 +223,31 @@ public class TermExtractor {
 	 */
 	public static Term[] getTerms(String sentence, String[][] nes,
 			Dictionary[] dicts) {
-		// extract tokens
-		String[] tokens = OpenNLP.tokenize(sentence);
+		return getTerms(new AnnotatedSentence(sentence), nes, dicts);
+	}
+
+	/**
+	 * Extracts terms from a sentence which has been tokenized and tagged
+	 * before, reusing named entities that have been extracted before.
+	 *
+	 * @param annotated sentence to analyze, with its tokens, POS tags and chunks
+	 * @param nes named entities in the sentence
+	 * @param dicts dictionaries with compound terms
+	 * @return terms in the sentence
+	 */
+	public static Term[] getTerms(AnnotatedSentence annotated, String[][] nes,
+			Dictionary[] dicts) {
+		String[] tokens = annotated.getTokens();
 		// the start position (in characters) of each token
-		int[] tokenStart = new int[tokens.length];
-		for (int i=0, offset=0; i<tokens.length; i++) {
-			tokenStart[i] = offset;
-			// 1 for a space
-			offset += (tokens[i].length()+1);
-		}
-		// tag part of speech
-		String[] pos = OpenNLP.tagPos(tokens);
+		int[] tokenStart = annotated.getTokenStart();
+		String[] pos = annotated.getPos();
 		// temporarily avoid errors such as invalid predicates: |"_thermoplastics_nns_rel"|
 		// X. Yao 2010-05-16: Disable it to use the new LKB/logon with generation from unknown words.
 //		for (int j=0; j<pos.length; j++) {
 //			if (pos[j].equals("NNS")) pos[j] = "NNPS";
 //		}
-		// tag phrase chunks
-		String[] chunks = OpenNLP.tagChunks(tokens, pos);
+		String[] chunks = annotated.getChunks();
+		NeIndex neIndex = new NeIndex(nes);
 		// mark tokens as not yet assigned to a term
 		boolean[] assigned = new boolean[tokens.length];
 		Arrays.fill(assigned, false);
@@ -219,22 +290,18 @@ public class TermExtractor {
 //				if (!pos[id+length-1].equals("''") && pos[id].equals("``")) continue;
 
 				// get phrase spanning the tokens
-				String text = tokens[id];
-				String untokText;
-				for (int offset = 1; offset < length; offset++)
-					text += " " + tokens[id + offset];
-				untokText = text;
-				text = OpenNLP.untokenize(text, sentence);
+				String untokText = annotated.getTokenText(id, length);
+				String text = annotated.getText(id, length);
 
 				// phrase is a duplicate?
-				if (!termSet.add(StringUtils.normalize(text))) continue;
+				if (!termSet.add(annotated.normalize(text))) continue;
 				// phrase does not contain keywords?
-				if (KeywordExtractor.getKeywords(text).length == 0) continue;
+				if (!annotated.hasKeywords(text)) continue;
 
 				// phrase is a named entity?
 				// BUG fix: the RegEx tagger will recognize a NEdate, such as "August 29, 1958",
 				// as "August 29 , 1958", thus all tokens in the text should be concatenated with space
-				String[] neTypes = getNeTypes(StringUtils.concatWithSpaces(OpenNLP.tokenize(text)), nes);
+				String[] neTypes = getNeTypes(annotated.retokenize(text), neIndex);
 				if (neTypes.length > 0) {
 					// construct term
 					Term t = new Term(untokText, Term.COMPOUND, neTypes, id, id+length, tokenStart);
@@ -285,12 +352,12 @@ public class TermExtractor {
 			if (assigned[id]) continue;
 
 			// token is a duplicate?
-			if (!termSet.add(StringUtils.normalize(tokens[id]))) continue;
+			if (!termSet.add(annotated.normalize(tokens[id]))) continue;
 			// token does not contain keywords?
-			if (KeywordExtractor.getKeywords(tokens[id]).length == 0) continue;
+			if (!annotated.hasKeywords(tokens[id])) continue;
 
 			// get named entity types and construct term
-			String[] neTypes = getNeTypes(tokens[id], nes);
+			String[] neTypes = getNeTypes(tokens[id], neIndex);
 			Term t = new Term(tokens[id], pos[id], neTypes, id, id+1, tokenStart);
 			t.setPosFSC(pos);
 			termsL.add(t);
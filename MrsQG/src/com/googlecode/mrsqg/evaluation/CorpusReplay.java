@@ -0,0 +1,390 @@
+package com.googlecode.mrsqg.evaluation;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.log4j.Logger;
+
+import com.googlecode.mrsqg.MrsTransformer2;
+import com.googlecode.mrsqg.Preprocessor;
+import com.googlecode.mrsqg.mrs.MRS;
+import com.googlecode.mrsqg.mrs.MrsBinaryReader;
+import com.googlecode.mrsqg.mrs.MrsBinaryWriter;
+import com.googlecode.mrsqg.mrs.MrxParser;
+import com.googlecode.mrsqg.mrs.decomposition.ApposDecomposer;
+import com.googlecode.mrsqg.mrs.decomposition.CoordDecomposer;
+import com.googlecode.mrsqg.mrs.decomposition.DecompositionEngine;
+import com.googlecode.mrsqg.mrs.decomposition.SubclauseDecomposer;
+import com.googlecode.mrsqg.mrs.decomposition.SubordinateDecomposer;
+import com.googlecode.mrsqg.mrs.decomposition.WhyDecomposer;
+import com.googlecode.mrsqg.util.FileUtils;
+
+/**
+ * Replays a corpus of stored MRS through the decomposition and
+ * transformation stages of the pipeline, without PET or LKB, and reports
+ * per-stage throughput, allocation and output counts.
+ * <p>
+ * The corpus is a directory or a zip archive of <code>.mrx</code> files,
+ * each holding one PET parse, which is parsed like the output of cheap
+ * (unknown words are normalized), or of <code>.mrsb</code> files written by
+ * {@link MrsBinaryWriter}, each holding the parses of one sentence. Binary
+ * files are read much faster and hold MRS as they were after parsing, so
+ * they are not normalized again. The original sentence of <code>foo.mrx</code>
+ * is read from <code>foo.txt</code> (or, for several parses of one sentence,
+ * from <code>foo.txt</code> for <code>foo.1.mrx</code>, <code>foo.2.mrx</code>...).
+ * Parses without a sentence are decomposed but not transformed, since
+ * {@link MrsTransformer2} needs the terms from {@link Preprocessor}.
+ * <p>
+ * Files are replayed in parallel in a thread pool, one task per file.
+ * Preprocessing is serialized since the NLP tools behind it are shared.
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class CorpusReplay {
+
+	private static Logger log = Logger.getLogger(CorpusReplay.class);
+
+	public static final String PARSE = "parse";
+	public static final String PREPROCESS = "preprocess";
+	public static final String DECOMPOSE = "decompose";
+	public static final String TRANSFORM = "transform";
+
+	private ExecutorService pool;
+
+	/** stages in the order they are run */
+	private LinkedHashMap<String, Stage> stages = new LinkedHashMap<String, Stage>();
+	/** per-decomposer statistics summed over all files */
+	private LinkedHashMap<String, long[]> decomposerStats = new LinkedHashMap<String, long[]>();
+	private long wallNanos = 0;
+	private int files = 0;
+
+	/**
+	 * Statistics of one stage, summed over all threads.
+	 */
+	public static class Stage {
+		private String name;
+		private int inputs = 0;
+		private int outputs = 0;
+		private long nanos = 0;
+		private long bytes = 0;
+
+		public Stage(String name) {this.name = name;}
+
+		public String getName() {return name;}
+		public int getInputs() {return inputs;}
+		public int getOutputs() {return outputs;}
+		public double getMillis() {return nanos/1000000.0;}
+		/** @return bytes allocated, or 0 if the JVM can't tell */
+		public long getBytes() {return bytes;}
+
+		synchronized void add(int inputs, int outputs, long nanos, long bytes) {
+			this.inputs += inputs;
+			this.outputs += outputs;
+			this.nanos += nanos;
+			this.bytes += bytes;
+		}
+
+		@Override
+		public String toString() {
+			double sec = nanos/1e9;
+			return String.format("%-10s %7d in %7d out %10.1f ms %10.1f in/s %10.1f MB %8.1f MB/s",
+					name, inputs, outputs, getMillis(), sec == 0 ? 0 : inputs/sec,
+					bytes/1048576.0, sec == 0 ? 0 : bytes/1048576.0/sec);
+		}
+	}
+
+	/**
+	 * One parse to replay.
+	 */
+	private static class Item {
+		String name;
+		String mrx;
+		/** the content of a <code>.mrsb</code> file, if it's not MRX */
+		byte[] mrsb;
+		String sentence;
+	}
+
+	/**
+	 * What replaying one item measured, added to the stages by the caller.
+	 */
+	private static class Sample {
+		long[] nanos = new long[4];
+		long[] bytes = new long[4];
+		int[] inputs = new int[4];
+		int[] outputs = new int[4];
+		ArrayList<DecompositionEngine.Stats> decomposers;
+	}
+
+	/**
+	 * @param pool a thread pool, or null to replay in this thread
+	 */
+	public CorpusReplay(ExecutorService pool) {
+		this.pool = pool;
+		for (String s:new String[]{PARSE, PREPROCESS, DECOMPOSE, TRANSFORM})
+			stages.put(s, new Stage(s));
+	}
+
+	public Stage getStage(String name) {return stages.get(name);}
+	public double getWallMillis() {return wallNanos/1000000.0;}
+
+	/**
+	 * Replay all MRX and binary MRS files in <code>corpus</code>.
+	 * @param corpus a directory or a zip file
+	 * @return the number of files replayed
+	 * @throws IOException
+	 */
+	public int run(File corpus) throws IOException {
+		ArrayList<Item> items = corpus.isDirectory() ? readDirectory(corpus) : readZip(corpus);
+		log.info("Replaying "+items.size()+" MRS files from "+corpus);
+		long t0 = System.nanoTime();
+		ArrayList<Sample> samples = new ArrayList<Sample>(items.size());
+		if (pool == null || items.size() < 2) {
+			for (Item item:items) samples.add(replay(item));
+		} else {
+			ArrayList<Future<Sample>> futures = new ArrayList<Future<Sample>>(items.size());
+			for (final Item item:items) {
+				futures.add(pool.submit(new Callable<Sample>() {
+					public Sample call() {
+						return replay(item);
+					}
+				}));
+			}
+			for (Future<Sample> f:futures) {
+				try {
+					samples.add(f.get());
+				} catch (Exception e) {
+					log.error("Error:", e);
+				}
+			}
+		}
+		wallNanos += System.nanoTime() - t0;
+		files += items.size();
+
+		for (Sample s:samples) {
+			int i = 0;
+			for (Stage stage:stages.values()) {
+				stage.add(s.inputs[i], s.outputs[i], s.nanos[i], s.bytes[i]);
+				i++;
+			}
+			if (s.decomposers == null) continue;
+			for (DecompositionEngine.Stats d:s.decomposers) {
+				long[] sum = decomposerStats.get(d.getName());
+				if (sum == null) {
+					sum = new long[4];
+					decomposerStats.put(d.getName(), sum);
+				}
+				sum[0] += d.getInputs();
+				sum[1] += d.getOutputs();
+				sum[2] += d.getDuplicates();
+				sum[3] += (long)(d.getMillis()*1000000);
+			}
+		}
+		return items.size();
+	}
+
+	/**
+	 * Replay one item through all stages.
+	 */
+	private Sample replay(Item item) {
+		Sample s = new Sample();
+		long t, b;
+
+		// parse the same way as cheap output in Cheap.getParsedMRSlist(), with
+		// unknown words normalized, or read the binary MRS
+		t = System.nanoTime();
+		b = allocatedBytes();
+		ArrayList<MRS> list = item.mrsb == null ? new MrxParser().parseAll(item.mrx) : readBinary(item);
+		s.nanos[0] = System.nanoTime() - t;
+		s.bytes[0] = allocatedBytes() - b;
+		s.inputs[0] = 1;
+		s.outputs[0] = list == null ? 0 : list.size();
+		if (s.outputs[0] == 0) {
+			log.warn("No MRS in "+item.name);
+			return s;
+		}
+
+		// preprocess
+		Preprocessor pre = null;
+		if (item.sentence != null) {
+			synchronized (Preprocessor.class) {
+				t = System.nanoTime();
+				b = allocatedBytes();
+				pre = new Preprocessor();
+				pre.preprocess(Preprocessor.cleanInput(item.sentence), true);
+				s.nanos[1] = System.nanoTime() - t;
+				s.bytes[1] = allocatedBytes() - b;
+			}
+			s.inputs[1] = 1;
+			s.outputs[1] = pre.getTerms()[0] == null ? 0 : pre.getTerms()[0].length;
+		}
+
+		// decompose
+		DecompositionEngine engine = new DecompositionEngine();
+		engine.register(new CoordDecomposer());
+		engine.register(new WhyDecomposer());
+		engine.register(new SubordinateDecomposer());
+		engine.register(new SubclauseDecomposer());
+		engine.register(new ApposDecomposer());
+		t = System.nanoTime();
+		b = allocatedBytes();
+		list = engine.doIt(list);
+		s.nanos[2] = System.nanoTime() - t;
+		s.bytes[2] = allocatedBytes() - b;
+		s.inputs[2] = s.outputs[0];
+		s.outputs[2] = list.size();
+		s.decomposers = engine.getStats();
+
+		// transform
+		if (pre == null) return s;
+		t = System.nanoTime();
+		b = allocatedBytes();
+		for (MRS m:list) {
+			m.changeFromUnkToNamed();
+			ArrayList<MRS> trMrsList = new MrsTransformer2(m, pre).transform(false);
+			s.inputs[3]++;
+			if (trMrsList != null) s.outputs[3] += trMrsList.size();
+		}
+		s.nanos[3] = System.nanoTime() - t;
+		s.bytes[3] = allocatedBytes() - b;
+
+		return s;
+	}
+
+	/**
+	 * @return all MRS in a <code>.mrsb</code> item, or null if there's none
+	 * or it can't be read
+	 */
+	private static ArrayList<MRS> readBinary(Item item) {
+		try {
+			return new MrsBinaryReader(new ByteArrayInputStream(item.mrsb)).readAll();
+		} catch (IOException e) {
+			log.error("Error reading "+item.name+":", e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return bytes allocated by this thread so far, or 0 if the JVM can't tell
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			try {
+				return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+			} catch (UnsupportedOperationException e) {
+				return 0;
+			}
+		}
+		return 0;
+	}
+
+	private ArrayList<Item> readDirectory(File dir) throws IOException {
+		File[] mrxFiles = dir.listFiles(new FileFilter() {
+			public boolean accept(File f) {
+				return isMrs(f.getName());
+			}
+		});
+		Arrays.sort(mrxFiles);
+		ArrayList<Item> items = new ArrayList<Item>(mrxFiles.length);
+		for (File f:mrxFiles) {
+			Item item = new Item();
+			item.name = f.getName();
+			if (item.name.endsWith(".mrsb"))
+				item.mrsb = FileUtils.readBytes(new FileInputStream(f));
+			else
+				item.mrx = FileUtils.readString(new FileInputStream(f), "UTF-8");
+			for (String txt:sentenceFileNames(f.getName())) {
+				File t = new File(dir, txt);
+				if (t.exists()) {
+					item.sentence = FileUtils.readString(new FileInputStream(t), "UTF-8").trim();
+					break;
+				}
+			}
+			items.add(item);
+		}
+		return items;
+	}
+
+	private ArrayList<Item> readZip(File file) throws IOException {
+		ZipFile zip = new ZipFile(file);
+		HashMap<String, ZipEntry> entries = new HashMap<String, ZipEntry>();
+		ArrayList<String> mrxNames = new ArrayList<String>();
+		for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+			ZipEntry entry = e.nextElement();
+			if (entry.isDirectory()) continue;
+			entries.put(entry.getName(), entry);
+			if (isMrs(entry.getName())) mrxNames.add(entry.getName());
+		}
+		Collections.sort(mrxNames);
+		ArrayList<Item> items = new ArrayList<Item>(mrxNames.size());
+		for (String name:mrxNames) {
+			Item item = new Item();
+			item.name = name;
+			if (name.endsWith(".mrsb"))
+				item.mrsb = FileUtils.readBytes(zip.getInputStream(entries.get(name)));
+			else
+				item.mrx = FileUtils.readString(zip.getInputStream(entries.get(name)), "UTF-8");
+			for (String txt:sentenceFileNames(name)) {
+				ZipEntry t = entries.get(txt);
+				if (t != null) {
+					item.sentence = FileUtils.readString(zip.getInputStream(t), "UTF-8").trim();
+					break;
+				}
+			}
+			items.add(item);
+		}
+		zip.close();
+		return items;
+	}
+
+	/**
+	 * @return whether a file holds MRX or binary MRS
+	 */
+	private static boolean isMrs(String name) {
+		return name.endsWith(".mrx") || name.endsWith(".mrsb");
+	}
+
+	/**
+	 * @return the names of the sentence file for an MRS file, "foo.txt" for
+	 * "foo.mrx" or "foo.mrsb", and also "foo.txt" for "foo.1.mrx"
+	 */
+	private static String[] sentenceFileNames(String mrxName) {
+		String base = mrxName.substring(0, mrxName.lastIndexOf('.'));
+		int dot = base.lastIndexOf('.');
+		if (dot > 0 && base.substring(dot+1).matches("\\d+"))
+			return new String[]{base+".txt", base.substring(0, dot)+".txt"};
+		return new String[]{base+".txt"};
+	}
+
+	/**
+	 * Log the statistics of all stages and decomposers.
+	 */
+	public void logStats() {
+		log.info("===========Corpus Replay============");
+		log.info(String.format("%d files in %.1f ms, %.1f files/s",
+				files, getWallMillis(), wallNanos == 0 ? 0 : files/(wallNanos/1e9)));
+		for (Stage s:stages.values()) log.info(s);
+		for (String name:decomposerStats.keySet()) {
+			long[] sum = decomposerStats.get(name);
+			log.info(String.format("  %s: %d in, %d new, %d duplicates, %.1f ms",
+					name, sum[0], sum[1], sum[2], sum[3]/1000000.0));
+		}
+	}
+}
@@ -0,0 +1,376 @@
+package com.googlecode.mrsqg.mrs;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import com.googlecode.mrsqg.util.IntList;
+
+/**
+ * A compact, read-only graph view of the dependencies in an MRS, used by
+ * the traversal-heavy operations of decomposition.
+ * <p>
+ * The EPs are numbered 0..n-1 in the order of {@link MRS#getEps()}. The DMRS
+ * relations of every EP are kept in primitive arrays in CSR (compressed sparse
+ * row) form: the edges of node <code>i</code> are
+ * <code>edgeStart[i]..edgeStart[i+1]-1</code>, each with a target node and an
+ * edge code packing the pre-slash, post-slash and direction values. The
+ * "connections" of the deprecated governor/dependent sets (see
+ * {@link EP#getAllConnections()}) are kept the same way. Traversals use
+ * {@link BitSet}s instead of HashSets of EPs.
+ * <p>
+ * ARG&#42;/NULL relations, which have no target EP, are not stored as edges.
+ * EPs which are reachable through the relations but are not in the EPS list
+ * anymore (after an EP is removed without calling {@link MRS#postprocessing()})
+ * get numbers after n-1, so traversals behave the same as on the EP objects.
+ * <p>
+ * The graph must be rebuilt after dependencies are rebuilt.
+ * {@link MRS#getDmrsGraph()} caches it until the next {@link MRS#postprocessing()}
+ * or the next change to the EPS list.
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class DmrsGraph {
+
+	/* the deprecated governor/dependent sets of an EP, see getConnections() */
+	public static final int GOVERNOR_BY_ARG = 1;
+	public static final int GOVERNOR_BY_NONARG = 2;
+	public static final int DEPENDENT_BY_ARG = 4;
+	public static final int DEPENDENT_BY_NONARG = 8;
+	public static final int EQUAL_LABEL = 16;
+	public static final int ALL_CONNECTIONS = 31;
+
+	/* node properties */
+	private static final int VERB = 1;
+	private static final int PREPOSITION = 2;
+	/** {@link EP#isPassiveEP()} */
+	private static final int PASSIVE = 4;
+	/** the type name is exactly "PARG_D_REL" */
+	private static final int PARG_D = 8;
+	/** the type name contains "_v_", whatever its ARG0 */
+	private static final int VERB_NAME = 16;
+
+	/* the layout of an edge code */
+	private static final int PRE_SHIFT = 0;
+	private static final int POST_SHIFT = 4;
+	private static final int DIR_SHIFT = 8;
+	private static final int SLASH_MASK = 0xF;
+	/** the edge is an ARG2 relation, see {@link DMRS#isPreArg2()} */
+	private static final int PRE_ARG2 = 1<<12;
+
+	private static final int NULL_PRE = DMRS.PRE_SLASH.NULL.ordinal();
+	private static final int EQ = DMRS.POST_SLASH.EQ.ordinal();
+	private static final int NEQ = DMRS.POST_SLASH.NEQ.ordinal();
+	private static final int H = DMRS.POST_SLASH.H.ordinal();
+	private static final int GOV = DMRS.DIRECTION.GOV.ordinal();
+	private static final int DEP = DMRS.DIRECTION.DEP.ordinal();
+
+	/** the number of EPs in the EPS list */
+	private final int size;
+	private final EP[] nodes;
+	private final IdentityHashMap<EP, Integer> index;
+	private final int[] props;
+
+	private final int[] edgeStart;
+	private final int[] edgeTarget;
+	private final int[] edgeCode;
+
+	private final int[] connStart;
+	private final int[] connTarget;
+	private final int[] connKind;
+
+	/**
+	 * Build a graph from the current dependencies of <code>eps</code>.
+	 * @param eps a list of EPs, usually the EPS list of an MRS
+	 */
+	public DmrsGraph(List<EP> eps) {
+		this(eps, null);
+	}
+
+	/**
+	 * Build a graph from the current dependencies of <code>eps</code>,
+	 * with <code>extra</code> EPs (and everything reachable from them)
+	 * numbered after <code>eps</code>.
+	 * @param eps a list of EPs, usually the EPS list of an MRS
+	 * @param extra a collection of EPs, can be null
+	 */
+	public DmrsGraph(List<EP> eps, Collection<EP> extra) {
+		ArrayList<EP> list = new ArrayList<EP>(eps.size());
+		index = new IdentityHashMap<EP, Integer>(eps.size()*2);
+		for (EP ep:eps) {
+			if (ep != null && !index.containsKey(ep)) {
+				index.put(ep, list.size());
+				list.add(ep);
+			}
+		}
+		size = list.size();
+		if (extra != null) {
+			for (EP ep:extra) {
+				if (ep != null && !index.containsKey(ep)) {
+					index.put(ep, list.size());
+					list.add(ep);
+				}
+			}
+		}
+
+		// EPs reachable from the list but not in it are added in the same pass
+		IntList targets = new IntList(list.size()*3);
+		IntList codes = new IntList(list.size()*3);
+		IntList starts = new IntList(list.size()+1);
+		IntList conns = new IntList(list.size()*3);
+		IntList connStarts = new IntList(list.size()+1);
+		BitSet seen = new BitSet();
+		IntList kinds = new IntList(list.size()*3);
+		for (int i=0; i<list.size(); i++) {
+			EP ep = list.get(i);
+			starts.add(targets.size());
+			for (DMRS d:ep.getDmrsSet()) {
+				if (d.getEP() == null) continue;
+				targets.add(nodeOf(d.getEP(), list));
+				codes.add(encode(d));
+			}
+			connStarts.add(conns.size());
+			int first = conns.size();
+			for (int kind=GOVERNOR_BY_ARG; kind<=EQUAL_LABEL; kind<<=1) {
+				HashSet<EP> set = ep.getConnectionSet(kind);
+				if (set == null) continue;
+				for (EP c:set) {
+					int j = nodeOf(c, list);
+					if (seen.get(j)) {
+						// in more than one set
+						for (int k=first; k<conns.size(); k++)
+							if (conns.get(k) == j) kinds.set(k, kinds.get(k) | kind);
+					} else {
+						seen.set(j);
+						conns.add(j);
+						kinds.add(kind);
+					}
+				}
+			}
+			for (int k=first; k<conns.size(); k++)
+				seen.clear(conns.get(k));
+		}
+		starts.add(targets.size());
+		connStarts.add(conns.size());
+
+		nodes = list.toArray(new EP[list.size()]);
+		props = new int[nodes.length];
+		for (int i=0; i<nodes.length; i++) {
+			EP ep = nodes[i];
+			int p = 0;
+			if (ep.isVerbEP()) p |= VERB;
+			if (ep.hasTypeProperty(SymbolTable.VERB)) p |= VERB_NAME;
+			if (ep.isPrepositionEP()) p |= PREPOSITION;
+			if (ep.hasTypeProperty(SymbolTable.PASSIVE)) p |= PASSIVE;
+			if (ep.getTypeId() == SymbolTable.PARG_D_REL) p |= PARG_D;
+			props[i] = p;
+		}
+		edgeStart = starts.toArray();
+		edgeTarget = targets.toArray();
+		edgeCode = codes.toArray();
+		connStart = connStarts.toArray();
+		connTarget = conns.toArray();
+		connKind = kinds.toArray();
+	}
+
+	private int nodeOf(EP ep, ArrayList<EP> list) {
+		Integer i = index.get(ep);
+		if (i != null) return i;
+		index.put(ep, list.size());
+		list.add(ep);
+		return list.size()-1;
+	}
+
+	private static int encode(DMRS d) {
+		int code = d.getPreSlash().ordinal() << PRE_SHIFT |
+			d.getPostSlash().ordinal() << POST_SHIFT |
+			d.getDirection().ordinal() << DIR_SHIFT;
+		if (d.getPreSlash() == DMRS.PRE_SLASH.ARG && "2".equals(d.getArgNum()))
+			code |= PRE_ARG2;
+		return code;
+	}
+
+	/**
+	 * Whether this graph was built from exactly <code>eps</code>.
+	 */
+	boolean isBuiltFrom(List<EP> eps) {
+		if (eps.size() != size) return false;
+		for (int i=0; i<size; i++)
+			if (nodes[i] != eps.get(i)) return false;
+		return true;
+	}
+
+	/**
+	 * @return the number of EPs in the EPS list this graph was built from
+	 */
+	public int size() {return size;}
+
+	/**
+	 * @param i a node number
+	 * @return the EP of node <code>i</code>
+	 */
+	public EP getEP(int i) {return nodes[i];}
+
+	/**
+	 * @param ep an EP
+	 * @return the node number of <code>ep</code>, or -1 if it's not in this graph
+	 */
+	public int indexOf(EP ep) {
+		Integer i = index.get(ep);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * Turn a collection of EPs into a set of node numbers. EPs not in this
+	 * graph (and null) are ignored.
+	 */
+	public BitSet toBitSet(Collection<EP> eps) {
+		BitSet set = new BitSet(nodes.length);
+		if (eps == null) return set;
+		for (EP ep:eps) {
+			Integer i = index.get(ep);
+			if (i != null) set.set(i);
+		}
+		return set;
+	}
+
+	/**
+	 * Add the EPs of the node numbers in <code>set</code> to <code>eps</code>.
+	 * @return <code>eps</code>
+	 */
+	public <T extends Collection<EP>> T addTo(BitSet set, T eps) {
+		for (int i=set.nextSetBit(0); i>=0; i=set.nextSetBit(i+1))
+			eps.add(nodes[i]);
+		return eps;
+	}
+
+	/**
+	 * Return the node numbers of all EPs that are the governor or dependent of
+	 * node <code>i</code>, the same as {@link EP#getAllConnections()}.
+	 */
+	public BitSet getAllConnections(int i) {
+		return getConnections(i, ALL_CONNECTIONS);
+	}
+
+	/**
+	 * Return the node numbers of the EPs in some of the governor/dependent
+	 * sets of node <code>i</code>.
+	 * @param i a node number
+	 * @param kinds a combination of {@link #GOVERNOR_BY_ARG}, {@link #GOVERNOR_BY_NONARG},
+	 * {@link #DEPENDENT_BY_ARG}, {@link #DEPENDENT_BY_NONARG} and {@link #EQUAL_LABEL}
+	 * @return a BitSet
+	 */
+	public BitSet getConnections(int i, int kinds) {
+		BitSet set = new BitSet(nodes.length);
+		for (int k=connStart[i]; k<connStart[i+1]; k++)
+			if ((connKind[k] & kinds) != 0) set.set(connTarget[k]);
+		return set;
+	}
+
+	/**
+	 * The fixed-point algorithm of {@link MRS#decompose(HashSet, HashSet, boolean, boolean)},
+	 * on node numbers. <code>r</code> is extended in place. The first round
+	 * uses <code>relaxEQ</code> and <code>keepEQ</code>, later rounds use
+	 * false and true. Labels are reassigned on <code>mrs</code> when /EQ
+	 * is relaxed.
+	 * @param mrs the MRS this graph was built from
+	 * @param r the target nodes
+	 * @param e the exception nodes
+	 * @return <code>r</code>
+	 */
+	public BitSet decompose(MRS mrs, BitSet r, BitSet e, boolean relaxEQ, boolean keepEQ) {
+		BitSet added = new BitSet(nodes.length);
+		while (!r.isEmpty()) {
+			added.clear();
+			// for EP.isPrepositionBefore(rEPS)
+			int minCfrom = Integer.MAX_VALUE;
+			for (int t=r.nextSetBit(0); t>=0; t=r.nextSetBit(t+1))
+				if (nodes[t].getCfrom() < minCfrom) minCfrom = nodes[t].getCfrom();
+
+			for (int t=r.nextSetBit(0); t>=0; t=r.nextSetBit(t+1)) {
+				if (e.get(t)) continue;
+				for (int k=edgeStart[t]; k<edgeStart[t+1]; k++) {
+					int code = edgeCode[k];
+					if ((code >> PRE_SHIFT & SLASH_MASK) == NULL_PRE) continue;
+					int j = edgeTarget[k];
+					if (r.get(j) || e.get(j)) continue;
+					int post = code >> POST_SHIFT & SLASH_MASK;
+					int dir = code >> DIR_SHIFT & SLASH_MASK;
+					if (dir == DEP) {
+						// j is the dependant of t
+						if (relaxEQ && post == EQ && ((props[t] & VERB) != 0 ||
+								((props[t] & PREPOSITION) != 0 && (code & PRE_ARG2) != 0))) {
+							// see MRS.decompose() for why t and not j gets a new label
+							String newLabel = "h"+mrs.generateUnusedLabel(1).get(0);
+							EP.assignNewLabel(nodes[t], nodes[j], newLabel);
+						}
+						added.set(j);
+					} else if (dir == GOV) {
+						int p = props[j];
+						if (!keepEQ && (p & (VERB|PREPOSITION)) != 0 &&
+								post == EQ && !nodes[j].hasEPemptyArgs()) {
+							continue;
+						}
+						boolean prepositionBefore = (p & PREPOSITION) != 0 &&
+							nodes[j].getCto() <= minCfrom;
+						if (!((post == NEQ || post == H) &&
+								((p & (VERB|PASSIVE)) != 0 || prepositionBefore))) {
+							added.set(j);
+						}
+					}
+				}
+			}
+			if (added.isEmpty()) break;
+			r.or(added);
+			relaxEQ = false;
+			keepEQ = true;
+		}
+		return r;
+	}
+
+	/**
+	 * Set the flag of all connections of the nodes in <code>seeds</code> to
+	 * <code>flag</code>, the same as {@link MRS#setAllConnectionsFlag(HashSet, EP, boolean)}
+	 * and {@link MRS#setAllConnectionsFlagExceptPP(HashSet, EP, boolean)}.
+	 * @param seeds the node numbers to start from
+	 * @param excep the node whose flag is not set, or -1
+	 * @param flag a boolean value
+	 * @param exceptPP whether not to go through prepositions and EPs whose type name
+	 * contains "_v_" (not only {@link EP#isVerbEP()})
+	 */
+	public void setAllConnectionsFlag(BitSet seeds, int excep, boolean flag, boolean exceptPP) {
+		/*
+		 * A node is only expanded when its flag is changed, so every node
+		 * needs to be put on the worklist once.
+		 */
+		BitSet queued = new BitSet(nodes.length);
+		int[] stack = new int[nodes.length];
+		int top = 0;
+		for (int i=seeds.nextSetBit(0); i>=0; i=seeds.nextSetBit(i+1)) {
+			queued.set(i);
+			stack[top++] = i;
+		}
+		while (top > 0) {
+			int i = stack[--top];
+			EP ep = nodes[i];
+			int p = props[i];
+			if (i != excep && ep.getFlag() != flag && (p & PARG_D) == 0 &&
+					!(exceptPP && (p & (VERB_NAME|PREPOSITION)) != 0)) {
+				ep.setFlag(flag);
+				for (int k=connStart[i]; k<connStart[i+1]; k++) {
+					int j = connTarget[k];
+					if (!queued.get(j)) {
+						queued.set(j);
+						stack[top++] = j;
+					}
+				}
+			} else if ((p & PARG_D) != 0) {
+				ep.setFlag(flag);
+			}
+		}
+	}
+}
@@ -44,6 +44,15 @@ public class EP {
 	private String spred = null;
 	private String label = null;
 	private String label_vid = null;
+	/** the ID of the type name (pred or spred) in {@link SymbolTable#PREDICATES} */
+	private int typeId = -1;
+	/** the ID of label in {@link SymbolTable#VARIABLES} */
+	private int labelId = -1;
+	/**
+	 * The ordinal of this EP in its MRS, kept by copies, see {@link MRS#epAt(int)}.
+	 * -1 if this EP isn't in any MRS yet.
+	 */
+	private int ordinal = -1;
 	private ArrayList<FvPair> fvpair = null;
 
 	/**
@@ -84,6 +93,12 @@ public class EP {
 	 */
 	private HashSet<EP> equalLabelSet = null;
 
+	/*
+	 * The five sets above are only allocated when something is added to
+	 * them (or their getters are called), since most EPs only have a few
+	 * of them and EPs are copied a lot in decomposition.
+	 */
+
 	/**
 	 * The DMRS relations of this EP
 	 */
@@ -102,27 +117,20 @@ public class EP {
 		this.spred = old.getSpred();
 		this.label = old.getLabel();
 		this.label_vid = old.getLabelVid();
+		this.typeId = old.getTypeId();
+		this.labelId = old.getLabelId();
+		this.ordinal = old.getOrdinal();
 		this.flag = old.getFlag();
 		this.fvpair = new ArrayList<FvPair>();
 		for(FvPair p:old.getFvpair()) {
 			this.fvpair.add(new FvPair(p));
 		}
-		governorsByArg = new HashSet<EP>();
-		governorsByNonArg = new HashSet<EP>();
-		dependentsByArg = new HashSet<EP>();
-		dependentsByNonArg = new HashSet<EP>();
-		equalLabelSet = new HashSet<EP>();
 		dmrsSet = new HashSet<DMRS>();
 	}
 
 
 	public EP() {
 		fvpair = new ArrayList<FvPair>();
-		governorsByArg = new HashSet<EP>();
-		governorsByNonArg = new HashSet<EP>();
-		dependentsByArg = new HashSet<EP>();
-		dependentsByNonArg = new HashSet<EP>();
-		equalLabelSet = new HashSet<EP>();
 		dmrsSet = new HashSet<DMRS>();
 	}
 
@@ -137,6 +145,7 @@ public class EP {
 			this.pred = typeName;
 		else
 			this.spred = typeName;
+		this.typeId = SymbolTable.PREDICATES.intern(typeName);
 		this.cfrom = 0;
 		this.cto = 0;
 		this.setLabel(label);
@@ -153,19 +162,58 @@ public class EP {
 	public String getLabelVid() {return label_vid;}
 	public ArrayList<FvPair> getFvpair() {return fvpair;}
 	public String getTypeName() {if (pred!=null) return pred; else return spred;};
+	public int getTypeId() {return typeId;}
+	public int getLabelId() {return labelId;}
+	public int getOrdinal() {return ordinal;}
+	void setOrdinal(int ordinal) {this.ordinal = ordinal;}
 	public boolean getFlag () {return flag;}
 	public void setFlag (boolean f) {this.flag = f;}
 
-	public void setPred(String s) {pred=s;}
-	public void setSpred(String s) {spred=s;}
-	public void setLabelVid(String s) {label_vid=s;label="h"+s;}
-	public void setLabel(String s) {label=s; label_vid=s.substring(1);}
+	public void setCfrom(int i) {cfrom=i;}
+	public void setCto(int i) {cto=i;}
+	public void setSurface(String s) {surface=s;}
+	public void setBase(String s) {base=s;}
+	public void setPred(String s) {pred=s; internTypeName();}
+	public void setSpred(String s) {spred=s; internTypeName();}
+	public void setLabelVid(String s) {label_vid=s;label="h"+s;labelId=SymbolTable.VARIABLES.intern(label);}
+	public void setLabel(String s) {label=s; label_vid=s.substring(1);labelId=SymbolTable.VARIABLES.intern(label);}
+
+	/**
+	 * Update <code>typeId</code> after pred or spred changes.
+	 */
+	private void internTypeName() {
+		typeId = SymbolTable.PREDICATES.intern(getTypeName());
+	}
+
+	/**
+	 * Whether the type name of this EP has a property in {@link SymbolTable}.
+	 * @param prop such as {@link SymbolTable#COORDINATION}
+	 * @return a boolean value
+	 */
+	public boolean hasTypeProperty(int prop) {
+		return SymbolTable.PREDICATES.hasProperty(typeId, prop);
+	}
 
-	public HashSet<EP> getGovernorsByArg () { return governorsByArg;}
-	public HashSet<EP> getGovernorsByNonArg () { return governorsByNonArg;}
-	public HashSet<EP> getDependentsByArg () { return dependentsByArg;}
-	public HashSet<EP> getDependentsByNonArg () { return dependentsByNonArg;}
-	public HashSet<EP> getEqualLabelSet () { return equalLabelSet;}
+	public HashSet<EP> getGovernorsByArg () {
+		if (governorsByArg == null) governorsByArg = new HashSet<EP>();
+		return governorsByArg;
+	}
+	public HashSet<EP> getGovernorsByNonArg () {
+		if (governorsByNonArg == null) governorsByNonArg = new HashSet<EP>();
+		return governorsByNonArg;
+	}
+	public HashSet<EP> getDependentsByArg () {
+		if (dependentsByArg == null) dependentsByArg = new HashSet<EP>();
+		return dependentsByArg;
+	}
+	public HashSet<EP> getDependentsByNonArg () {
+		if (dependentsByNonArg == null) dependentsByNonArg = new HashSet<EP>();
+		return dependentsByNonArg;
+	}
+	public HashSet<EP> getEqualLabelSet () {
+		if (equalLabelSet == null) equalLabelSet = new HashSet<EP>();
+		return equalLabelSet;
+	}
 	public HashSet<DMRS> getDmrsSet () {return dmrsSet;}
 	/**
 	 * Add an EP to the set of governors which refer to the current EP by ARG*.
@@ -175,7 +223,7 @@ public class EP {
 	 */
 	public void addGovernorByArg (EP ep) {
 		if (ep != this)
-			governorsByArg.add(ep);
+			getGovernorsByArg().add(ep);
 	}
 
 	/**
@@ -187,7 +235,7 @@ public class EP {
 	 */
 	public void addGovernorByNonArg (EP ep) {
 		if (ep != this)
-			governorsByNonArg.add(ep);
+			getGovernorsByNonArg().add(ep);
 	}
 
 	/**
@@ -198,7 +246,7 @@ public class EP {
 	 */
 	public void addDependentByArg (EP ep) {
 		if (ep != this)
-			dependentsByArg.add(ep);
+			getDependentsByArg().add(ep);
 	}
 
 	/**
@@ -210,7 +258,7 @@ public class EP {
 	 */
 	public void addDependentByNonArg (EP ep) {
 		if (ep != this)
-			dependentsByNonArg.add(ep);
+			getDependentsByNonArg().add(ep);
 	}
 
 	/**
@@ -222,7 +270,7 @@ public class EP {
 	 */
 	public void addEqualLabelSet (EP ep) {
 		if (ep != this)
-			equalLabelSet.add(ep);
+			getEqualLabelSet().add(ep);
 	}
 
 	/**
@@ -235,7 +283,7 @@ public class EP {
 	public void addAllEqualLabelSet (Collection<EP> epCollection) {
 		for (EP ep:epCollection) {
 			if (ep != this)
-				equalLabelSet.add(ep);
+				getEqualLabelSet().add(ep);
 		}
 	}
 
@@ -248,11 +296,11 @@ public class EP {
 	}
 
 	public void clearDependencies () {
-		governorsByArg.clear();
-		governorsByNonArg.clear();
-		dependentsByArg.clear();
-		dependentsByNonArg.clear();
-		equalLabelSet.clear();
+		governorsByArg = null;
+		governorsByNonArg = null;
+		dependentsByArg = null;
+		dependentsByNonArg = null;
+		equalLabelSet = null;
 		dmrsSet.clear();
 	}
 
@@ -281,14 +329,31 @@ public class EP {
 	 */
 	public HashSet<EP> getAllConnections() {
 		HashSet<EP> connections = new HashSet<EP>();
-		connections.addAll(governorsByArg);
-		connections.addAll(governorsByNonArg);
-		connections.addAll(dependentsByArg);
-		connections.addAll(dependentsByNonArg);
-		connections.addAll(equalLabelSet);
+		if (governorsByArg != null) connections.addAll(governorsByArg);
+		if (governorsByNonArg != null) connections.addAll(governorsByNonArg);
+		if (dependentsByArg != null) connections.addAll(dependentsByArg);
+		if (dependentsByNonArg != null) connections.addAll(dependentsByNonArg);
+		if (equalLabelSet != null) connections.addAll(equalLabelSet);
 		return connections;
 	}
 
+	/**
+	 * Return one of the governor/dependent sets without allocating it.
+	 * Used by {@link DmrsGraph}.
+	 * @param kind such as {@link DmrsGraph#GOVERNOR_BY_ARG}
+	 * @return a HashSet of EPs, or null if it's empty
+	 */
+	HashSet<EP> getConnectionSet(int kind) {
+		switch (kind) {
+		case DmrsGraph.GOVERNOR_BY_ARG: return governorsByArg;
+		case DmrsGraph.GOVERNOR_BY_NONARG: return governorsByNonArg;
+		case DmrsGraph.DEPENDENT_BY_ARG: return dependentsByArg;
+		case DmrsGraph.DEPENDENT_BY_NONARG: return dependentsByNonArg;
+		case DmrsGraph.EQUAL_LABEL: return equalLabelSet;
+		default: return null;
+		}
+	}
+
 	/**
 	 * Set the type name of this EP.
 	 *
@@ -304,6 +369,7 @@ public class EP {
 			this.spred = typeName;
 			this.pred = null;
 		}
+		internTypeName();
 	}
 	/**
 	 * return all "ARG*" values in this EP.
@@ -324,7 +390,7 @@ public class EP {
 
 		HashSet<String> set = new HashSet<String>();
 		for (FvPair fp:fvpair) {
-			if (fp.getFeature().startsWith("ARG")) {
+			if (fp.isArgFeature()) {
 				set.add(fp.getVar().getLabel());
 			}
 		}
@@ -351,7 +417,7 @@ public class EP {
 
 		HashSet<String> set = new HashSet<String>();
 		for (FvPair fp:fvpair) {
-			if (fp.getFeature().startsWith("ARG") && !fp.getFeature().equals("ARG0")) {
+			if (fp.isArgFeature() && fp.getFeatureId() != SymbolTable.ARG0) {
 				set.add(fp.getVar().getLabel());
 			}
 		}
@@ -383,7 +449,7 @@ public class EP {
 
 		HashSet<String> set = new HashSet<String>();
 		for (FvPair fp:fvpair) {
-			if (fp.getVar() != null && !fp.getFeature().equals("ARG0"))
+			if (fp.getVar() != null && fp.getFeatureId() != SymbolTable.ARG0)
 				set.add(fp.getVar().getLabel());
 		}
 
@@ -429,7 +495,7 @@ public class EP {
 	 * @return the ARG0 value, such as "e2", or null if none
 	 */
 	public String getArg0() {
-		return getValueByFeature("ARG0");
+		return getValueByFeatureId(SymbolTable.ARG0);
 	}
 
 	/**
@@ -438,7 +504,11 @@ public class EP {
 	 * @return a boolean value
 	 */
 	public boolean isVerbEP() {
-		return this.getTypeName().toLowerCase().contains("_v_") && this.getArg0().startsWith("e");
+		if (!hasTypeProperty(SymbolTable.VERB)) return false;
+		Var arg0 = getValueVarByFeatureId(SymbolTable.ARG0);
+		if (arg0 != null) return arg0.getSortChar() == 'e';
+		String value = this.getArg0();
+		return value != null && value.startsWith("e");
 	}
 
 	/**
@@ -466,7 +536,7 @@ public class EP {
 	 * @return a boolean value
 	 */
 	public boolean isPrepositionEP() {
-		return this.getTypeName().toLowerCase().contains("_p_");
+		return hasTypeProperty(SymbolTable.PREPOSITION);
 	}
 
 	/**
@@ -474,7 +544,7 @@ public class EP {
 	 * @return a boolean value
 	 */
 	public boolean isPassiveEP() {
-		return this.getTypeName().toLowerCase().equals("parg_d_rel");
+		return hasTypeProperty(SymbolTable.PASSIVE);
 	}
 
 	/**
@@ -632,10 +702,21 @@ public class EP {
 	 * @return a label, such as "x3", or null if not found
 	 */
 	public String getValueByFeature (String s) {
+		int id = SymbolTable.FEATURES.lookup(s.toUpperCase());
+		if (id == -1) return null;
+		return getValueByFeatureId(id);
+	}
+
+	/**
+	 * Return the value of a feature.
+	 *
+	 * @param id a feature ID, such as {@link SymbolTable#ARG0}
+	 * @return a label, such as "x3", or null if not found
+	 */
+	public String getValueByFeatureId (int id) {
 		String label = null;
-		s = s.toUpperCase();
 		for (FvPair p:fvpair) {
-			if (p.getFeature().equals(s)) {
+			if (p.getFeatureId() == id) {
 				label = p.getValue();
 				break;
 			}
@@ -649,9 +730,20 @@ public class EP {
 	 * @return a boolean value
 	 */
 	public boolean hasFeature (String f) {
+		int id = SymbolTable.FEATURES.lookup(f);
+		if (id == -1) return false;
+		return hasFeatureId(id);
+	}
+
+	/**
+	 * Whether this EP has a certain feature
+	 * @param id a feature ID, such as {@link SymbolTable#RSTR}
+	 * @return a boolean value
+	 */
+	public boolean hasFeatureId (int id) {
 		boolean ret = false;
 		for (FvPair p:fvpair) {
-			if (p.getFeature().equals(f)) {
+			if (p.getFeatureId() == id) {
 				ret = true;
 				break;
 			}
@@ -676,6 +768,23 @@ public class EP {
 		return v;
 	}
 
+	/**
+	 * Return the extra type (Var) of a feature.
+	 * @param id a feature ID, such as {@link SymbolTable#ARG0}
+	 * @return a corresponding Var
+	 */
+	public Var getValueVarByFeatureId (int id) {
+		Var v = null;
+
+		for (FvPair p:fvpair) {
+			if (p.getFeatureId() == id) {
+				v = p.getVar();
+				break;
+			}
+		}
+		return v;
+	}
+
 	/**
 	 * Delete a FvPair with a specific label.
 	 *
@@ -895,8 +1004,7 @@ public class EP {
 						"complete your code!");
 			}
 		} else if (qName.equals("label")) {
-			label_vid = atts.getValue("vid");
-			label = "h"+label_vid;
+			setLabelVid(atts.getValue("vid"));
 		} else if (qName.equals("fvpair")) {
 			currentFvPair = new FvPair();
 			fvpair.add(currentFvPair);
@@ -909,9 +1017,9 @@ public class EP {
 
 	public void processEndElement (String qName, String str) {
 		if (qName.equals("pred")) {
-			pred = str;
+			setPred(str);
 		} else if (qName.equals("spred")) {
-			spred = str;
+			setSpred(str);
 		} else if (qName.equals("realpred")) {
 			// no such situation in sample files, need to complete
 			// this part once met
@@ -927,10 +1035,48 @@ public class EP {
 		}
 	}
 
+	/**
+	 * Output EP in MRX
+	 * @param sb a StringBuilder
+	 * @see MrxWriter
+	 */
+	public void serializeMRX (StringBuilder sb) {
+		// <ep cfrom='0' cto='3'>
+		sb.append("<ep");
+		MrxWriter.appendAttribute(sb, "cfrom", Integer.toString(cfrom));
+		MrxWriter.appendAttribute(sb, "cto", Integer.toString(cto));
+		if (base!=null)
+			MrxWriter.appendAttribute(sb, "surface", surface);
+		if (base!=null)
+			MrxWriter.appendAttribute(sb, "base", base);
+		sb.append('>');
+
+		if (pred!=null) {
+			//<pred>PROPER_Q_REL</pred>
+			MrxWriter.appendTextElement(sb, "pred", pred);
+		} else if (spred!=null) {
+			//<spred>_like_v_1_rel</pred>
+			MrxWriter.appendTextElement(sb, "spred", spred);
+		}
+
+		//<label vid='3'/>
+		sb.append("<label");
+		MrxWriter.appendAttribute(sb, "vid", label_vid);
+		sb.append("/>");
+
+		//<fvpair>
+		for (FvPair p : fvpair) {
+			p.serializeMRX(sb);
+		}
+		sb.append("</ep>");
+	}
+
 	/**
 	 * Output EP in XML
 	 * @param hd
+	 * @deprecated replaced by {@link #serializeMRX(StringBuilder)}
 	 */
+	@Deprecated
 	public void serializeXML (ContentHandler hd) {
 //		<!ELEMENT ep ((pred|realpred), label, fvpair*)>
 //		<!ATTLIST ep
@@ -23,17 +23,24 @@ public class FvPair {
 	private static Logger log = Logger.getLogger(FvPair.class);
 
 	private String rargname = null;
+	/** the ID of rargname in {@link SymbolTable#FEATURES} */
+	private int featureId = -1;
 	private String constant = null;
 	private Var var = null;
 	public String getValue() {return constant==null?(var!=null?var.getLabel():null):constant;}
 	public String getFeature() {return rargname;}
+	public int getFeatureId() {return featureId;}
+	/**
+	 * Whether the feature of this pair is an ARG*, such as "ARG0" or "ARG1"
+	 */
+	public boolean isArgFeature() {return SymbolTable.FEATURES.hasProperty(featureId, SymbolTable.ARG);}
 
-	public void setFeature (String feat) {rargname = feat;}
+	public void setFeature (String feat) {rargname = feat; featureId = SymbolTable.FEATURES.intern(feat);}
 	@Deprecated public String getRargname() {return rargname;}
 	@Deprecated public String getConstant() {return constant;}
 	public Var getVar() {return var;}
 	public void setValue(String v) {if (var!=null) var.setLabel(v);}
-	public void setRargname(String s) {rargname = s;}
+	public void setRargname(String s) {setFeature(s);}
 	public void setConstant(String s) {constant = s;}
 	public void setVar(Var v) {var = v;}
 
@@ -55,6 +62,7 @@ public class FvPair {
 	public FvPair(FvPair old) {
 		if (old == null) return;
 		this.rargname = old.getRargname();
+		this.featureId = old.getFeatureId();
 		this.constant = old.getConstant();
 		if (old.getVar()!=null)
 			this.var = new Var(old.getVar());
@@ -70,7 +78,7 @@ public class FvPair {
 	 * @param sort "h"
 	 */
 	public FvPair(String rargname, String vid, String sort) {
-		this.rargname = rargname;
+		setFeature(rargname);
 		this.var = new Var(vid, sort);
 	}
 
@@ -80,7 +88,7 @@ public class FvPair {
 	 * @param value "h9"
 	 */
 	public FvPair(String feature, String value) {
-		this.rargname = feature;
+		setFeature(feature);
 		this.var = new Var(value);
 	}
 
@@ -91,7 +99,7 @@ public class FvPair {
 	 * @param extraPairs {"SF", "PROP", "TENSE", "UNTENSED", "MOOD", "INDICATIVE"}
 	 */
 	public FvPair(String feature, String value, String[] extraPairs) {
-		this.rargname = feature;
+		setFeature(feature);
 		this.var = new Var(value, extraPairs);
 	}
 
@@ -101,10 +109,30 @@ public class FvPair {
 	 * @param value a value Var.
 	 */
 	public FvPair(String feature, Var value) {
-		this.rargname = feature;
+		setFeature(feature);
 		this.var = value;
 	}
 
+	/**
+	 * Output this FvPair in MRX.
+	 * @param sb a StringBuilder
+	 * @see MrxWriter
+	 */
+	public void serializeMRX (StringBuilder sb) {
+		sb.append("<fvpair>");
+		MrxWriter.appendTextElement(sb, "rargname", rargname);
+		if (var!=null) {
+			var.serializeMRX(sb);
+		} else if (constant != null) {
+			MrxWriter.appendTextElement(sb, "constant", constant);
+		}
+		sb.append("</fvpair>");
+	}
+
+	/**
+	 * @deprecated replaced by {@link #serializeMRX(StringBuilder)}
+	 */
+	@Deprecated
 	public void serializeXML (ContentHandler hd) {
 		AttributesImpl atts = new AttributesImpl();
 		try {
@@ -0,0 +1,50 @@
+package com.googlecode.mrsqg.mrs;
+
+import java.util.ArrayList;
+
+/**
+ * What LKB generated from an MRS: the generated sentences, their MaxEnt
+ * scores and, on a generation failure, the excerpts of *gen-chart*.
+ * <p>
+ * It's attached to an MRS with {@link MRS#setGeneration(GenerationResult)}
+ * so that the same MRX isn't sent to LKB twice. The MRX it was generated from
+ * is kept, since it's only valid as long as the MRS isn't changed.
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class GenerationResult {
+
+	private String mrx;
+	private ArrayList<String> sentences;
+	private ArrayList<String> failedSentences;
+	private double[] scores;
+
+	/**
+	 * @param mrx the MRX sent to LKB
+	 * @param sentences the generated sentences, or null if none
+	 * @param failedSentences the excerpts of *gen-chart* if nothing is generated, or null
+	 * @param scores the MaxEnt scores of <code>sentences</code>, or null
+	 */
+	public GenerationResult(String mrx, ArrayList<String> sentences,
+			ArrayList<String> failedSentences, double[] scores) {
+		this.mrx = mrx;
+		this.sentences = sentences;
+		this.failedSentences = failedSentences;
+		this.scores = scores;
+	}
+
+	public String getMrx() {return mrx;}
+	public ArrayList<String> getSentences() {return sentences;}
+	public ArrayList<String> getFailedSentences() {return failedSentences;}
+	public double[] getScores() {return scores;}
+	public boolean isSuccess() {return sentences != null;}
+
+	/**
+	 * @param mrx an MRX string
+	 * @return whether this is generated from <code>mrx</code>
+	 */
+	public boolean isFor(String mrx) {
+		return this.mrx.equals(mrx);
+	}
+}
@@ -108,6 +108,37 @@ public class HCONS {
 		}
 	}
 
+	/**
+	 * Output this HCONS in MRX.
+	 * @param sb a StringBuilder
+	 * @see MrxWriter
+	 */
+	public void serializeMRX (StringBuilder sb) {
+		//<hcons hreln='qeq'><hi><var vid='4' sort='h'></var></hi><lo><var vid='7' sort='h'></var></lo></hcons>
+		sb.append("<hcons");
+		MrxWriter.appendAttribute(sb, "hreln", rel);
+		sb.append("><hi>");
+		hiVar.serializeMRX(sb);
+		sb.append("</hi>");
+		if (loVar != null) {
+			sb.append("<lo>");
+			loVar.serializeMRX(sb);
+			sb.append("</lo>");
+		} else if (loLabel != null) {
+			sb.append("<lo><label");
+			MrxWriter.appendAttribute(sb, "vid", loLabel);
+			sb.append("/></lo>");
+		} else {
+			log.error("Error, <lo> must have either <lo> or <label>");
+			sb.append("<lo/>");
+		}
+		sb.append("</hcons>");
+	}
+
+	/**
+	 * @deprecated replaced by {@link #serializeMRX(StringBuilder)}
+	 */
+	@Deprecated
 	public void serializeXML (ContentHandler hd) {
 		//<hcons hreln='qeq'><hi><var vid='4' sort='h'></var></hi><lo><var vid='7' sort='h'></var></lo></hcons>
 		AttributesImpl atts = new AttributesImpl();
@@ -1,28 +1,21 @@
 package com.googlecode.mrsqg.mrs;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.Stack;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.AttributesImpl;
-import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
 
 import org.apache.log4j.Logger;
 import org.apache.xml.serialize.OutputFormat;
@@ -30,6 +23,7 @@ import org.apache.xml.serialize.XMLSerializer;
 
 import com.googlecode.mrsqg.nlp.SnowballStemmer;
 import com.googlecode.mrsqg.nlp.indices.IrregularVerbs;
+import com.googlecode.mrsqg.util.FileUtils;
 
 /**
  * An MRS representation class that provides MRS manipulation utilities.<p>
@@ -83,7 +77,23 @@ public class MRS {
 	protected ArrayList<HCONS> hcons;
 	/** Every characteristic variable (see dmrs.pdf) is mapped to an EP.*/
 	protected HashMap<String, EP> charVariableMap;
-	private MrsParser parser = new MrsParser();
+	/**
+	 * A compact graph of the dependencies, built on demand by
+	 * {@link #getDmrsGraph()}. Not copied, since it's rebuilt from the EPs.
+	 */
+	private DmrsGraph dmrsGraph = null;
+	/** the ordinal for the next EP added to this MRS, see {@link #epAt(int)} */
+	private int nextOrdinal = 0;
+	/**
+	 * EPs indexed by their ordinals, built on demand by {@link #epAt(int)}.
+	 * Not copied.
+	 */
+	private EP[] ordinalIndex = null;
+	/**
+	 * What LKB generated from this MRS, if it has been sent to LKB.
+	 * Not copied, since copies are made to be changed.
+	 */
+	private GenerationResult generation = null;
 
 	public String getLTOP() {return ltop;}
 	public String getLabelVid() {return label_vid;}
@@ -96,6 +106,8 @@ public class MRS {
 	public void setSentType (String sentType) {sent_type = sentType;}
 	public void setDecomposer (String p) {decomposer.add(p);}
 	public ArrayList<String> getDecomposer () {return decomposer;}
+	public GenerationResult getGeneration () {return generation;}
+	public void setGeneration (GenerationResult g) {generation = g;}
 	public void setIndex (String index) {
 		if (!index.startsWith("e")) {
 			log.warn("the main event of this MRS doesn't start with an e: "+index+"!");
@@ -226,9 +238,13 @@ public class MRS {
 		this.ansCrange[0] = old.getAnsCrange()[0];
 		this.ansCrange[1] = old.getAnsCrange()[1];
 		for (String s:old.getDecomposer()) decomposer.add(s);
+		// EPs added to old since it was last indexed have no ordinal yet,
+		// give them one so that their copies can be found by epAt()
+		if (old.ordinalIndex == null) old.indexOrdinals();
 		for (EP ep:old.getEps()) {
 			this.eps.add(new EP(ep));
 		}
+		this.nextOrdinal = old.nextOrdinal;
 		this.hcons = new ArrayList<HCONS>();
 		for (HCONS h:old.getHcons()) {
 			this.hcons.add(new HCONS(h));
@@ -244,6 +260,8 @@ public class MRS {
 	 * should be called to rebuild the {@link MRS#charVariableMap} and EPS' dependencies.
 	 */
 	public void postprocessing() {
+		this.dmrsGraph = null;
+		this.indexOrdinals();
 		this.charVariableMap.clear();
 		for (EP ep:this.eps) {
 			ep.clearDependencies();
@@ -253,181 +271,6 @@ public class MRS {
 		this.buildDependencies();
 	}
 
-	private class MrsParser extends DefaultHandler {
-
-		private Stack<String> stack;
-		private StringBuilder chars;
-		// whether we are processing in an <ep> element
-		private boolean inEP = false;
-		private EP currentEP = null;
-
-		public MrsParser () {
-			super();
-			this.stack = new Stack<String>();
-			this.chars = new StringBuilder();
-		}
-
-		public void parse(File file) {
-			try {
-				XMLReader xr = XMLReaderFactory.createXMLReader();
-				MrsParser handler = new MrsParser();
-				xr.setContentHandler(handler);
-				xr.setErrorHandler(handler);
-
-				FileReader r = new FileReader(file);
-				xr.parse(new InputSource(r));
-			} catch (Exception e) {
-				log.error("Error:", e);
-			}
-
-		}
-
-		public void parseString(String str) {
-			try {
-				XMLReader xr = XMLReaderFactory.createXMLReader();
-				MrsParser handler = new MrsParser();
-				xr.setContentHandler(handler);
-				xr.setErrorHandler(handler);
-
-
-				StringReader r = new StringReader(str);
-				xr.parse(new InputSource(r));
-			} catch (Exception e) {
-				log.error("Error:", e);
-			}
-
-		}
-
-		public void startDocument ()
-	    {
-			//System.out.println("Start document");
-	    }
-
-		public void endDocument ()
-	    {
-			//System.out.println("End document");
-	    }
-
-		public void startElement (String uri, String name,
-				String qName, Attributes atts)
-		{
-			String vid;
-			String parent;
-
-			if (qName.equals("mrs")) {
-				// if stack is not empty, then error
-				if (stack.empty() == false) {
-					log.error("Error, non-empty stack: " +
-							"<mrs> shouldn't have parent element");
-				}
-			} else if (qName.equals("label")) {
-				parent = stack.peek();
-				vid = atts.getValue("vid");
-
-				// top element, indicating the LTOP of MRS
-				if (parent.equals("mrs")) {
-					ltop = "h"+vid;
-					label_vid = vid;
-				} else if (parent.equals("ep")) {
-					// label for <ep>
-					currentEP.processStartElement(qName, atts);
-				} else if (parent.equals("lo")) {
-					HCONS h = hcons.get(hcons.size()-1);
-					h.setLoLabelRare(atts.getValue("vid"));
-					h.setLo(atts.getValue("vid"));
-					log.error("Warning: <label> inisde <lo>. " +
-							"not in sample. check the code!");
-				} else {
-					log.error("file format error: unknown" +
-							"element label");
-				}
-			} else if (qName.equals("var")) {
-				parent = stack.peek();
-				vid = atts.getValue("vid");
-
-				// top element, indicating the INDEX of MRS
-				if (parent.equals("mrs")) {
-					index = "e"+vid;
-					index_vid = vid;
-				} else if (parent.equals("fvpair")) {
-					// label for <fvpair>
-					if (inEP) {
-						currentEP.processStartElement(qName, atts);
-					} else {
-						log.error("error: <fvpair> outside <ep>");
-					}
-				} else if (parent.equals("hi")) {
-					// get the last one in the list
-					HCONS h = hcons.get(hcons.size()-1);
-					// should be sth. like "h11"
-					h.setHiVar(new Var(atts));
-				} else if (parent.equals("lo")) {
-					String sort = atts.getValue("sort");
-					// get the last one in the list
-					HCONS h = hcons.get(hcons.size()-1);
-					// should be sth. like "h11"
-					h.setLoVar(new Var(atts));
-				} else {
-					log.error("file format error: unknown" +
-							"element var");
-				}
-			} else if (qName.equals("hcons")) {
-//				;;; <!ELEMENT hcons (hi, lo)>
-//				;;; <!ATTLIST hcons
-//				;;;          hreln (qeq|lheq|outscopes) #REQUIRED >
-//				;;;
-//				;;; <!ELEMENT hi (var)>
-//				;;; <!ELEMENT lo (label|var)>
-
-				String hreln = atts.getValue("hreln");
-				if (hreln.equals("lheq") || hreln.equals("outscopes")) {
-					// no such situation in sample files, need to complete
-					// this part once met
-					log.error("Manually check the code and complete it!");
-				}
-				HCONS hcon = new HCONS(hreln);
-				hcons.add(hcon);
-			} else if (qName.equals("ep")) {
-				inEP = true;
-				EP e = new EP();
-				eps.add(e);
-				currentEP = e;
-				currentEP.processStartElement(qName, atts);
-			} else if (inEP == true) {
-				currentEP.processStartElement(qName, atts);
-			} else if (qName.equals("hi") || qName.equals("lo")) {
-			} else {
-				log.error("Unknown element "+qName);
-			}
-			chars = new StringBuilder();
-			stack.push(qName);
-		}
-
-		public void endElement (String uri, String name, String qName)
-		{
-			if (qName.equals("mrs")) {
-
-			} else if (qName.equals("hcons")) {
-				HCONS h = hcons.get(hcons.size()-1);
-				if (h.checkValid() == false) {
-					log.error("HCONS read error!");
-				}
-			} else if (qName.equals("ep")) {
-				inEP = false;
-				currentEP = null;
-			} else if (inEP) {
-				currentEP.processEndElement(qName, chars.toString());
-			}
-			stack.pop();
-		}
-
-		public void characters (char ch[], int start, int length)
-		{
-			chars.append(ch, start, length);
-		}
-
-	}
-
 	/**
 	 * Return all ElementaryPredication starting from cfrom and ending to cto.
 	 *
@@ -666,14 +509,59 @@ public class MRS {
 	 *
 	 * This is used when the current MRS is a copy of <code>copyEP</code>,
 	 * then we return the same EP as <code>copyEP</code>
-	 * by computing parallel index in the current MRS.
+	 * by its ordinal, see {@link #epAt(int)}.
 	 *
 	 * @param copyMrs an MRS which the current MRS is copied from
 	 * @param copyEP one EP in <code>copyMrs</code>
-	 * @return a corresponding EP the "same" to <code>copyEP</code>
+	 * @return a corresponding EP the "same" to <code>copyEP</code>, or null
+	 * if <code>copyEP</code> was added to <code>copyMrs</code> after copying
 	 */
 	public EP getEPbyParallelIndex (MRS copyMrs, EP copyEP) {
-		return this.getEps().get(copyMrs.getEps().indexOf(copyEP));
+		return epAt(copyEP.getOrdinal());
+	}
+
+	/**
+	 * Return the EP with an ordinal in this MRS.
+	 * <p>
+	 * Every EP gets an ordinal when it's added to an MRS: after parsing,
+	 * EPs are numbered 0..n-1 in order. Copies of an MRS ({@link #MRS(MRS)})
+	 * keep the ordinals, so <code>copy.epAt(ep.getOrdinal())</code> is the
+	 * copy of <code>ep</code>, even after EPs are removed from either of them.
+	 * EPs added later get new ordinals, at the latest when the MRS is
+	 * copied.
+	 *
+	 * @param ordinal an ordinal from {@link EP#getOrdinal()}
+	 * @return an EP, or null if there's no EP with this ordinal
+	 */
+	public EP epAt (int ordinal) {
+		if (ordinalIndex == null) indexOrdinals();
+		if (ordinal < 0 || ordinal >= ordinalIndex.length) return null;
+		return ordinalIndex[ordinal];
+	}
+
+	/**
+	 * Give every EP without an ordinal (or with the ordinal of another EP in
+	 * this MRS) a new one, then build {@link #ordinalIndex}.
+	 */
+	private void indexOrdinals() {
+		for (EP ep:eps) {
+			if (ep.getOrdinal() >= nextOrdinal) nextOrdinal = ep.getOrdinal()+1;
+		}
+		EP[] index = new EP[nextOrdinal + 4];
+		for (EP ep:eps) {
+			int o = ep.getOrdinal();
+			if (o < 0 || o < index.length && index[o] != null && index[o] != ep) {
+				o = nextOrdinal++;
+				ep.setOrdinal(o);
+			}
+			if (o >= index.length) {
+				EP[] newIndex = new EP[index.length*2];
+				System.arraycopy(index, 0, newIndex, 0, index.length);
+				index = newIndex;
+			}
+			index[o] = ep;
+		}
+		ordinalIndex = index;
 	}
 
 	/**
@@ -687,7 +575,7 @@ public class MRS {
 		HashSet<EP> retEPS = new HashSet<EP>();
 		if (copyEPS == null || copyEPS.size() == 0) return null;
 		for (EP ep:copyEPS) {
-			retEPS.add(this.getEps().get(copyMrs.getEps().indexOf(ep)));
+			retEPS.add(getEPbyParallelIndex(copyMrs, ep));
 		}
 		return retEPS;
 	}
@@ -767,7 +655,12 @@ public class MRS {
 	 * @param ep
 	 */
 	public void addEPtoEPS (EP ep) {
-		if (ep!=null) this.eps.add(ep);
+		if (ep!=null) {
+			ep.setOrdinal(-1);
+			this.eps.add(ep);
+			this.dmrsGraph = null;
+			this.ordinalIndex = null;
+		}
 	}
 
 	/**
@@ -1293,7 +1186,7 @@ public class MRS {
 		String loLabel = mrs.getLoLabelFromHconsList(label);
 		if (loLabel!=null) set.add(loLabel);
 		if (exceptionEP != null)
-			mrs.getEps().get(this.getEps().indexOf(exceptionEP)).setFlag(true);
+			mrs.epAt(exceptionEP.getOrdinal()).setFlag(true);
 		int oldSize = 0;
 
 		// get all h* and x* referred by label and loLabel
@@ -1494,6 +1387,8 @@ public class MRS {
 			log.error("Can't remove ep:\n"+ep+"\nfrom EPS list:\n"+eps);
 			return false;
 		}
+		dmrsGraph = null;
+		ordinalIndex = null;
 		return true;
 	}
 
@@ -1543,6 +1438,8 @@ public class MRS {
 	 */
 	public boolean removeEPlist (ArrayList<EP> list) {
 		boolean ret = false;
+		dmrsGraph = null;
+		ordinalIndex = null;
 		for (EP ep:list) {
 			ret = eps.remove(ep);
 			if (!ret) {
@@ -1599,17 +1496,50 @@ public class MRS {
 	 * @return a one-line string with an &lt;mrs&gt; element
 	 */
 	public String toMRXstring() {
-		ByteArrayOutputStream os = new ByteArrayOutputStream();
-		toXML(os);
-		String mrx = os.toString();
-		return mrx;
+		return MrxWriter.toString(this);
 	}
 
 	/**
-	 * Output MRS to an OutputStream <code>os</code>.
+	 * Output MRS to an OutputStream <code>os</code> in UTF-8.
 	 * @param os an OutputStream
 	 */
 	public void toXML(OutputStream os) {
+		try {
+			MrxWriter.write(os, this);
+		} catch (IOException e) {
+			log.error("Error:", e);
+		}
+	}
+
+	/**
+	 * Output this MRS in MRX (without the XML declaration).
+	 * @param sb a StringBuilder
+	 * @see MrxWriter
+	 */
+	public void serializeMRX(StringBuilder sb) {
+		// <mrs><label vid='1'/><var vid='2'/>
+		sb.append("<mrs><label");
+		MrxWriter.appendAttribute(sb, "vid", label_vid);
+		sb.append("/><var");
+		MrxWriter.appendAttribute(sb, "vid", index_vid);
+		sb.append("/>");
+		for (EP e: eps) {
+			e.serializeMRX(sb);
+		}
+		for (HCONS h: hcons) {
+			h.serializeMRX(sb);
+		}
+		sb.append("</mrs>");
+	}
+
+	/**
+	 * Output MRS to an OutputStream <code>os</code> through the Xerces
+	 * XMLSerializer. The output is the same as {@link #toXML(OutputStream)}.
+	 * @param os an OutputStream
+	 * @deprecated slow, only kept to verify {@link MrxWriter} against.
+	 */
+	@Deprecated
+	public void toXMLwithSerializer(OutputStream os) {
 		OutputFormat of = new OutputFormat("XML","UTF-8",true);
 		// LKB doesn't support properly indented xml files. thus set indentation off.
 		of.setIndenting(false);
@@ -1673,7 +1603,7 @@ public class MRS {
 			for (FvPair p:ep.getFvpair()) {
 				v = p.getVar();
 				// only deal with argument
-				if (v!=null && v.getSort().equals("x")) {
+				if (v!=null && v.getSortChar() == 'x') {
 					label = v.getLabel();
 					if (varM.get(label) == null) {
 						varM.put(label, v);
@@ -1707,8 +1637,8 @@ public class MRS {
 				 * Multiple EPs can have arg0 as their ARG0. Usually these multiple
 				 * EPs are in a qeq relation.
 				 */
-				boolean ep0HasRstr = arg0EPlist.get(0).hasFeature("RSTR");
-				boolean ep1HasRstr = arg0EPlist.get(1).hasFeature("RSTR");
+				boolean ep0HasRstr = arg0EPlist.get(0).hasFeatureId(SymbolTable.RSTR);
+				boolean ep1HasRstr = arg0EPlist.get(1).hasFeatureId(SymbolTable.RSTR);
 				if (ep0HasRstr && !ep1HasRstr) {
 					this.charVariableMap.put(arg0, arg0EPlist.get(1));
 				} else if (ep1HasRstr && !ep0HasRstr) {
@@ -1771,7 +1701,7 @@ public class MRS {
 			rstr = null;
 			dEP = null;
 			for (FvPair p:ep.getFvpair()) {
-				if (p.getFeature().equals("RSTR")) {
+				if (p.getFeatureId() == SymbolTable.RSTR) {
 					rstr = p.getValue();
 					break;
 				}
@@ -1787,29 +1717,32 @@ public class MRS {
 					continue;
 				} else {
 					for (FvPair pair:ep.getFvpair()) {
+						int featureId = pair.getFeatureId();
 						String feature = pair.getFeature();
 						String value = pair.getValue();
 						argNum = "";
 						dEP = null;
-						boolean isArgFeature = feature.startsWith("ARG");
-						if (feature.equals("ARG0")) continue;
+						boolean isArgFeature = pair.isArgFeature();
+						if (featureId == SymbolTable.ARG0) continue;
 						if (isArgFeature) {
-							argNum = pair.getFeature().substring(3);
+							argNum = SymbolTable.FEATURES.getArgNum(featureId);
 						}
-						if (feature.equals("RSTR")) continue;
-						if (feature.equals("BODY")) continue;
+						if (featureId == SymbolTable.RSTR) continue;
+						if (featureId == SymbolTable.BODY) continue;
 						ArrayList<EP> l=null;
-						if (value.startsWith("x") || value.startsWith("e")) {
+						char sort = pair.getVar() != null ? pair.getVar().getSortChar() :
+							(value == null || value.length() == 0 ? 0 : value.charAt(0));
+						if (sort == 'x' || sort == 'e') {
 							dEP = this.charVariableMap.get(value);
 							if (dEP == null) {
 								continue;
 							}
-							if (dEP.getLabel().equals(ep.getLabel())) {
+							if (dEP.getLabelId() == ep.getLabelId()) {
 								postSlash = DMRS.POST_SLASH.EQ;
 							} else {
 								postSlash = DMRS.POST_SLASH.NEQ;
 							}
-						} else if (value.startsWith("h")) {
+						} else if (sort == 'h') {
 							/* HEQ (one ep’s argument is the other ep’s label)
 L-HNDL:h8 -> _like_v-1_rel
 [ _AND_C_REL<16:19>
@@ -1961,18 +1894,21 @@ L-HNDL:h8 -> _like_v-1_rel
 		EP dEP = null;
 
 		int nGovernor = 0;
-		HashSet<String> valueSet = new HashSet<String>();
+		int labelId, arg0Id, id;
+		Var arg0Var;
 		for (int i=list.size()-1; i>=0; i--) {
 			// usually the last one is the dependent, so we loop backward
 			dEP = list.get(i);
-			valueSet.clear();
 			nGovernor = 0;
-			valueSet.add(dEP.getLabel());
-			valueSet.add(dEP.getArg0());
+			labelId = dEP.getLabelId();
+			arg0Var = dEP.getValueVarByFeatureId(SymbolTable.ARG0);
+			arg0Id = arg0Var == null ? -1 : arg0Var.getLabelId();
 			for (EP ep:list) {
 				if (ep==dEP) continue;
-				for (String v:ep.getAllValueExceptArg0()) {
-					if (valueSet.contains(v)) {
+				for (FvPair p:ep.getFvpair()) {
+					if (p.getVar() == null || p.getFeatureId() == SymbolTable.ARG0) continue;
+					id = p.getVar().getLabelId();
+					if (id == labelId || id == arg0Id) {
 						nGovernor++;
 						break;
 					}
@@ -1986,18 +1922,20 @@ L-HNDL:h8 -> _like_v-1_rel
 		else {
 
 			// first try to build dependencies for the EPs in the list
-			String arg0;
-			HashSet<String> argSet;
 			for (EP ep1:list) {
-				arg0 = ep1.getArg0();
+				arg0Var = ep1.getValueVarByFeatureId(SymbolTable.ARG0);
+				if (arg0Var == null) continue;
+				arg0Id = arg0Var.getLabelId();
 				for (EP ep2:list) {
 					if (ep2==ep1) continue;
-					argSet = ep2.getAllARGvalueExceptARG0();
-					if (argSet.contains(arg0)) {
-						ep1.addGovernorByArg(ep2);
-						ep2.addDependentByArg(ep1);
+					for (FvPair p:ep2.getFvpair()) {
+						if (p.isArgFeature() && p.getFeatureId() != SymbolTable.ARG0 &&
+								p.getVar().getLabelId() == arg0Id) {
+							ep1.addGovernorByArg(ep2);
+							ep2.addDependentByArg(ep1);
+							break;
+						}
 					}
-
 				}
 			}
 
@@ -2013,9 +1951,9 @@ L-HNDL:h8 -> _like_v-1_rel
 			else {
 				// last chance: check whether this is a /EQ relation
 				boolean shareSameLabel = true;
-				String firstLabel = list.get(0).getLabel();
+				int firstLabel = list.get(0).getLabelId();
 				for (int i=1; i<list.size(); i++) {
-					if (!list.get(i).getLabel().equals(firstLabel)) {
+					if (list.get(i).getLabelId() != firstLabel) {
 						shareSameLabel = false;
 					}
 				}
@@ -2166,67 +2104,62 @@ L-HNDL:h8 -> _like_v-1_rel
 	 */
 	public HashSet<EP> decompose(HashSet<EP> rEPS, HashSet<EP> eEPS,
 			boolean relaxEQ, boolean keepEQ) {
-		HashSet<EP> retEPS = new HashSet<EP>();
 		if (eEPS == null) eEPS = new HashSet<EP>();
 		if (rEPS.size() == 0) return rEPS;
-		EP ep;
-		DMRS.PRE_SLASH preSlash;
-		DMRS.POST_SLASH postSlash;
-		DMRS.DIRECTION direction;
-
-		for (EP tEP: rEPS) {
-			if (eEPS.contains(tEP)) continue;
-			if (tEP == null) continue;
-			for (DMRS dmrs:tEP.getDmrsSet()) {
-
-				preSlash = dmrs.getPreSlash();
-				if (preSlash == DMRS.PRE_SLASH.NULL) continue;
-				ep = dmrs.getEP();
-				if (rEPS.contains(ep) || eEPS.contains(ep)) continue;
-				postSlash = dmrs.getPostSlash();
-				direction = dmrs.getDirection();
-				//!ep.getTypeName().equals("PARG_D_REL")
-				if (direction == DMRS.DIRECTION.DEP) {
-					// ep is the dependant of tEP
-					if (relaxEQ && postSlash == DMRS.POST_SLASH.EQ &&
-							(tEP.isVerbEP() || (tEP.isPrepositionEP() && dmrs.isPreArg2())) ) {
-						/*
-						 *  assign tEP a new label. we could have assigned ep a new label but in
-						 *  this way we have to fix the qeq relations since in most cases ep is
-						 *  an NP. tEP is usually a verb EP or preposition EP that doesn't involve
-						 *  qeq relations.
-						 */
-						String newLabel = "h"+this.generateUnusedLabel(1).get(0);
-						EP.assignNewLabel(tEP, ep, newLabel);
-					}
-					retEPS.add(ep);
-				} else if (direction == DMRS.DIRECTION.GOV) {
-					if (!keepEQ && (ep.isVerbEP() || ep.isPrepositionEP()) &&
-							postSlash == DMRS.POST_SLASH.EQ && !ep.hasEPemptyArgs()) {
-						continue;
-					}
-					if (!((postSlash == DMRS.POST_SLASH.NEQ || postSlash == DMRS.POST_SLASH.H) &&
-							(ep.isVerbEP() || ep.isPassiveEP() || ep.isPrepositionBefore(rEPS)))) {
-						/*
-						 * ep.isPrepositionBefore(rEPS): we want to remove the preposition if rEPS
-						 * is in a PP, such as that "with people suffering badly...", we don't want
-						 * "with", but in a normal sentence, such as "people suffer badly with pain",
-						 * we want to keep the PP.
-						 */
-						retEPS.add(ep);
-					}
-				} else {
-				}
 
-			}
-		}
+		/*
+		 * For every EP in rEPS (except eEPS), its dependants are added, and so
+		 * are its governors unless they are verbs, passives, or prepositions
+		 * before rEPS with a /NEQ or /H relation. This is repeated until nothing
+		 * new is added, see DmrsGraph.decompose().
+		 *
+		 * If relaxEQ and a verb (or a preposition by ARG2) governs an EP by /EQ,
+		 * the verb is assigned a new label. We could have assigned the EP a new
+		 * label but in this way we have to fix the qeq relations since in most
+		 * cases the EP is an NP. A verb or preposition EP usually doesn't involve
+		 * qeq relations.
+		 *
+		 * ep.isPrepositionBefore(rEPS): we want to remove the preposition if rEPS
+		 * is in a PP, such as that "with people suffering badly...", we don't want
+		 * "with", but in a normal sentence, such as "people suffer badly with pain",
+		 * we want to keep the PP.
+		 */
+		DmrsGraph g = getDmrsGraph(rEPS, eEPS);
+		BitSet r = g.toBitSet(rEPS);
+		g.decompose(this, r, g.toBitSet(eEPS), relaxEQ, keepEQ);
+		return g.addTo(r, rEPS);
+	}
 
+	/**
+	 * Return a graph of the dependencies of this MRS, which is cached until
+	 * the next {@link #postprocessing()} or change to the EPS list.
+	 * @return a DmrsGraph
+	 */
+	public DmrsGraph getDmrsGraph() {
+		if (dmrsGraph == null || !dmrsGraph.isBuiltFrom(eps))
+			dmrsGraph = new DmrsGraph(eps);
+		return dmrsGraph;
+	}
 
-		if (retEPS.size() != 0) {
-			rEPS.addAll(retEPS);
-			return decompose(rEPS, eEPS, false, true);
-		} else
-			return rEPS;
+	/**
+	 * Return {@link #getDmrsGraph()} if it contains every EP in <code>a</code>
+	 * and <code>b</code>, otherwise a new graph which also contains them
+	 * (they are not in the EPS list of this MRS anymore).
+	 */
+	private DmrsGraph getDmrsGraph(Collection<EP> a, Collection<EP> b) {
+		DmrsGraph g = getDmrsGraph();
+		ArrayList<EP> extra = null;
+		for (int i=0; i<2; i++) {
+			Collection<EP> c = i==0 ? a : b;
+			if (c == null) continue;
+			for (EP ep:c) {
+				if (ep != null && g.indexOf(ep) == -1) {
+					if (extra == null) extra = new ArrayList<EP>();
+					extra.add(ep);
+				}
+			}
+		}
+		return extra == null ? g : new DmrsGraph(eps, extra);
 	}
 
 	/**
@@ -2250,7 +2183,8 @@ L-HNDL:h8 -> _like_v-1_rel
 		} else {
 			depSet.add(this.charVariableMap.get(label));
 		}
-		setAllConnectionsFlag(depSet, excepEP, false);
+		DmrsGraph g = getDmrsGraph(depSet, null);
+		g.setAllConnectionsFlag(g.toBitSet(depSet), g.indexOf(excepEP), false, false);
 	}
 
 	/**
@@ -2261,33 +2195,42 @@ L-HNDL:h8 -> _like_v-1_rel
 	 */
 	public void keepDependentEPfromVerbEP (EP vEP) {
 		this.setAllFlag(true);
-		HashSet<EP> depSet = new HashSet<EP>();
+		DmrsGraph g = getDmrsGraph(Arrays.asList(vEP), null);
+		int v = g.indexOf(vEP);
 
 		// keep all vEP's governors
-		depSet.addAll(vEP.getGovernorsByArg());
-		depSet.addAll(vEP.getGovernorsByNonArg());
-		depSet.addAll(vEP.getDependentsByNonArg());
-		depSet.addAll(vEP.getEqualLabelSet());
+		BitSet depSet = g.getConnections(v, DmrsGraph.GOVERNOR_BY_ARG|DmrsGraph.GOVERNOR_BY_NONARG|
+				DmrsGraph.DEPENDENT_BY_NONARG|DmrsGraph.EQUAL_LABEL);
+		g.setAllConnectionsFlag(depSet, v, false, false);
+
+		keepDependentsByArg(g, v);
+		vEP.setFlag(false);
 
-		setAllConnectionsFlag(depSet, vEP, false);
+	}
 
-		for (EP ep:vEP.getDependentsByArg()) {
+	/**
+	 * Set the flag of the dependents by ARG&#42; of node <code>v</code>, and all
+	 * their connections, to false.
+	 */
+	private static void keepDependentsByArg(DmrsGraph g, int v) {
+		EP vEP = g.getEP(v);
+		BitSet args = g.getConnections(v, DmrsGraph.DEPENDENT_BY_ARG);
+		int numArgs = args.cardinality();
+		BitSet depSet = new BitSet();
+		for (int i=args.nextSetBit(0); i>=0; i=args.nextSetBit(i+1)) {
 			depSet.clear();
+			depSet.set(i);
 			// keep all dependents EP after vEP
-			if (ep.getCfrom() >= vEP.getCfrom() && vEP.getDependentsByArg().size() != 1) {
-				depSet.add(ep);
-				setAllConnectionsFlag(depSet, vEP, false);
+			if (g.getEP(i).getCfrom() >= vEP.getCfrom() && numArgs != 1) {
+				g.setAllConnectionsFlag(depSet, v, false, false);
 			} else {
 			/*
 			 * For dependents EP before vEP, probably this EP is vEP's
 			 * ARG1 EP, we have to remove any preprosition EP that governs this EP.
 			 */
-				depSet.add(ep);
-				setAllConnectionsFlagExceptPP(depSet, vEP, false);
+				g.setAllConnectionsFlag(depSet, v, false, true);
 			}
 		}
-		vEP.setFlag(false);
-
 	}
 
 
@@ -2300,34 +2243,20 @@ L-HNDL:h8 -> _like_v-1_rel
 	 */
 	public void keepDependentEPandVerbEP (EP vEP, EP excepEP) {
 		this.setAllFlag(true);
-		HashSet<EP> depSet = new HashSet<EP>();
 
 		// keep all vEP's governors
 		if (vEP==null)
 			return;
-		depSet.addAll(vEP.getGovernorsByArg());
-		depSet.addAll(vEP.getGovernorsByNonArg());
-		depSet.addAll(vEP.getDependentsByNonArg());
-		depSet.addAll(vEP.getEqualLabelSet());
+		DmrsGraph g = getDmrsGraph(Arrays.asList(vEP), null);
+		int v = g.indexOf(vEP);
+		BitSet depSet = g.getConnections(v, DmrsGraph.GOVERNOR_BY_ARG|DmrsGraph.GOVERNOR_BY_NONARG|
+				DmrsGraph.DEPENDENT_BY_NONARG|DmrsGraph.EQUAL_LABEL);
 
-		if (depSet.contains(excepEP)) depSet.remove(excepEP);
-		setAllConnectionsFlag(depSet, vEP, false);
+		int e = g.indexOf(excepEP);
+		if (e != -1) depSet.clear(e);
+		g.setAllConnectionsFlag(depSet, v, false, false);
 
-		for (EP ep:vEP.getDependentsByArg()) {
-			depSet.clear();
-			// keep all dependents EP after vEP
-			if (ep.getCfrom() >= vEP.getCfrom() && vEP.getDependentsByArg().size() != 1) {
-				depSet.add(ep);
-				setAllConnectionsFlag(depSet, vEP, false);
-			} else {
-			/*
-			 * For dependents EP before vEP, probably this EP is vEP's
-			 * ARG1 EP, we have to remove any preprosition EP that governs this EP.
-			 */
-				depSet.add(ep);
-				setAllConnectionsFlagExceptPP(depSet, vEP, false);
-			}
-		}
+		keepDependentsByArg(g, v);
 		excepEP.setFlag(true);
 		vEP.setFlag(false);
 
@@ -2344,14 +2273,8 @@ L-HNDL:h8 -> _like_v-1_rel
 	 */
 	public static void setAllConnectionsFlag (HashSet<EP> depSet,
 			EP excepEP, boolean flag) {
-		for (EP ep:depSet) {
-			if (ep!=excepEP && ep.getFlag() != flag && !ep.getTypeName().equals("PARG_D_REL")) {
-				ep.setFlag(flag);
-				setAllConnectionsFlag(ep.getAllConnections(), excepEP, flag);
-			} else if (ep.getTypeName().equals("PARG_D_REL")) {
-				ep.setFlag(flag);
-			}
-		}
+		DmrsGraph g = new DmrsGraph(new ArrayList<EP>(), depSet);
+		g.setAllConnectionsFlag(g.toBitSet(depSet), g.indexOf(excepEP), flag, false);
 	}
 
 	/**
@@ -2367,16 +2290,8 @@ L-HNDL:h8 -> _like_v-1_rel
 	 */
 	public static void setAllConnectionsFlagExceptPP (HashSet<EP> depSet,
 			EP excepEP, boolean flag) {
-		for (EP ep:depSet) {
-			if (ep!=excepEP && ep.getFlag() != flag && !ep.getTypeName().equals("PARG_D_REL")
-					&& !ep.getTypeName().toLowerCase().contains("_p_")
-					&& !ep.getTypeName().toLowerCase().contains("_v_")) {
-				ep.setFlag(flag);
-				setAllConnectionsFlagExceptPP(ep.getAllConnections(), excepEP, flag);
-			} else if (ep.getTypeName().equals("PARG_D_REL")) {
-				ep.setFlag(flag);
-			}
-		}
+		DmrsGraph g = new DmrsGraph(new ArrayList<EP>(), depSet);
+		g.setAllConnectionsFlag(g.toBitSet(depSet), g.indexOf(excepEP), flag, true);
 	}
 
 	/**
@@ -2385,7 +2300,11 @@ L-HNDL:h8 -> _like_v-1_rel
 	 * @param file an MRS XML file
 	 */
 	public void parse(File file) {
-		this.parser.parse(file);
+		try {
+			new MrxParser().parse(FileUtils.readString(file, "UTF-8"), this);
+		} catch (IOException e) {
+			log.error("Error:", e);
+		}
 		//preventInvalidPredicate();
 		normalizeUnknownWords();
 		postprocessing();
@@ -2397,7 +2316,7 @@ L-HNDL:h8 -> _like_v-1_rel
 	 * @param str a string containing an MRS structure
 	 */
 	public void parseString(String str) {
-		this.parser.parseString(str);
+		new MrxParser().parse(str, this);
 		//preventInvalidPredicate();
 		normalizeUnknownWords();
 		postprocessing();
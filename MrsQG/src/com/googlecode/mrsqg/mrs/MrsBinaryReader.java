@@ -0,0 +1,200 @@
+package com.googlecode.mrsqg.mrs;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A streaming reader for the binary MRS encoding written by
+ * {@link MrsBinaryWriter}.
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class MrsBinaryReader {
+
+	private static Logger log = Logger.getLogger(MrsBinaryReader.class);
+
+	private DataInputStream in;
+	private ArrayList<String> symbols = new ArrayList<String>();
+	private int version;
+
+	/**
+	 * Open a reader and check the header.
+	 * @param is an InputStream, which is buffered by this reader
+	 * @throws IOException if the stream is not a binary MRS stream or
+	 * its version is not supported
+	 */
+	public MrsBinaryReader(InputStream is) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(is));
+		if (in.readInt() != MrsBinaryWriter.MAGIC)
+			throw new IOException("not a binary MRS stream");
+		version = readVarInt();
+		if (version > MrsBinaryWriter.VERSION)
+			throw new IOException("unsupported binary MRS version: "+version);
+	}
+
+	public int getVersion() {return version;}
+
+	/**
+	 * Read the next MRS from the stream.
+	 * @return an MRS with dependencies built, or null at the end of stream
+	 * @throws IOException
+	 */
+	public MRS read() throws IOException {
+		int tag = in.read();
+		if (tag == -1) return null;
+		if (tag != MrsBinaryWriter.RECORD)
+			throw new IOException("corrupted binary MRS stream");
+
+		MRS mrs = new MRS();
+		mrs.ltop = readSymbol();
+		mrs.label_vid = readSymbol();
+		mrs.index = readSymbol();
+		mrs.index_vid = readSymbol();
+		mrs.sent_type = readSymbol();
+
+		int n = readVarInt();
+		for (int i=0; i<n; i++)
+			mrs.decomposer.add(readSymbol());
+		mrs.ansCrange[0] = readSignedVarInt();
+		mrs.ansCrange[1] = readSignedVarInt();
+
+		n = readVarInt();
+		mrs.eps.ensureCapacity(n);
+		for (int i=0; i<n; i++)
+			mrs.eps.add(readEP());
+
+		n = readVarInt();
+		for (int i=0; i<n; i++) {
+			HCONS h = new HCONS(readSymbol());
+			h.setHiVar(readVar());
+			h.setLoVar(readVar());
+			h.setLoLabelRare(readSymbol());
+			mrs.hcons.add(h);
+		}
+
+		mrs.postprocessing();
+		return mrs;
+	}
+
+	/**
+	 * Read all remaining MRS from the stream.
+	 * @return a list of MRS, or null if none
+	 * @throws IOException
+	 */
+	public ArrayList<MRS> readAll() throws IOException {
+		ArrayList<MRS> list = new ArrayList<MRS>();
+		MRS mrs;
+		while ((mrs = read()) != null)
+			list.add(mrs);
+		return list.size()==0?null:list;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private EP readEP() throws IOException {
+		EP ep = new EP();
+		ep.setCfrom(readSignedVarInt());
+		ep.setCto(readSignedVarInt());
+		ep.setSurface(readSymbol());
+		ep.setBase(readSymbol());
+		String pred = readSymbol();
+		String spred = readSymbol();
+		if (pred != null) ep.setPred(pred);
+		if (spred != null) ep.setSpred(spred);
+		String label = readSymbol();
+		if (label != null) ep.setLabel(label);
+		ep.setFlag(in.readBoolean());
+
+		int n = readVarInt();
+		for (int i=0; i<n; i++) {
+			FvPair p = new FvPair();
+			p.setFeature(readSymbol());
+			int kind = in.readByte();
+			if ((kind & MrsBinaryWriter.FV_VAR) != 0) p.setVar(readVar());
+			if ((kind & MrsBinaryWriter.FV_CONSTANT) != 0) p.setConstant(readSymbol());
+			ep.getFvpair().add(p);
+		}
+		return ep;
+	}
+
+	private Var readVar() throws IOException {
+		if (!in.readBoolean()) return null;
+		Var v = new Var(readSymbol(), readSymbol());
+		int n = readVarInt();
+		for (int i=0; i<n; i++)
+			v.addExtrapair(readSymbol(), readSymbol());
+		return v;
+	}
+
+	private String readSymbol() throws IOException {
+		int code = readVarInt();
+		if (code == MrsBinaryWriter.SYM_NULL) return null;
+		if (code == MrsBinaryWriter.SYM_NEW) {
+			String s = in.readUTF();
+			symbols.add(s);
+			return s;
+		}
+		int id = code - MrsBinaryWriter.SYM_REF;
+		if (id >= symbols.size())
+			throw new IOException("corrupted binary MRS stream: unknown symbol "+id);
+		return symbols.get(id);
+	}
+
+	private int readVarInt() throws IOException {
+		int v = 0, shift = 0, b;
+		do {
+			b = in.read();
+			if (b == -1) throw new EOFException();
+			v |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return v;
+	}
+
+	private int readSignedVarInt() throws IOException {
+		int v = readVarInt();
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	/**
+	 * Decode a single MRS encoded by {@link MrsBinaryWriter#toBytes(MRS)}.
+	 * @param bytes a byte array
+	 * @return an MRS, or null on error
+	 */
+	public static MRS fromBytes(byte[] bytes) {
+		try {
+			return new MrsBinaryReader(new ByteArrayInputStream(bytes)).read();
+		} catch (IOException e) {
+			log.error("Error:", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Print every MRS in a binary file as MRX, one per line.
+	 * @param args a binary MRS file
+	 */
+	public static void main(String args[]) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: MrsBinaryReader in.mrsb");
+			return;
+		}
+		MrsBinaryReader r = new MrsBinaryReader(new FileInputStream(args[0]));
+		MRS mrs;
+		while ((mrs = r.read()) != null) {
+			System.out.println(mrs.toMRXstring());
+		}
+		r.close();
+	}
+}
@@ -0,0 +1,230 @@
+package com.googlecode.mrsqg.mrs;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A streaming writer for a compact binary encoding of MRS, read back by
+ * {@link MrsBinaryReader}. It's much faster and smaller than MRX and is
+ * meant to be used for caches and for storing parsed corpora.
+ * <p>
+ * Format (version 1): a header of {@link #MAGIC} and {@link #VERSION},
+ * followed by one record per MRS, each starting with {@link #RECORD}.
+ * All integers are variable-length encoded. Strings are written to a symbol
+ * dictionary shared by all records in the stream: the first occurrence of a
+ * string is written in full and every later one as a reference, so predicate
+ * names, features and extrapairs cost one or two bytes each.
+ * <p>
+ * Everything {@link MRS#toMRXstring()} outputs is kept, plus the fields MRX
+ * loses (sentence type, decomposer history, answer range, the index sort,
+ * the surface/base of EPs and their flags). Dependencies are not stored
+ * but rebuilt by {@link MRS#postprocessing()} when reading.
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class MrsBinaryWriter {
+
+	private static Logger log = Logger.getLogger(MrsBinaryWriter.class);
+
+	/** "MRSB" */
+	public static final int MAGIC = 0x4D525342;
+	public static final int VERSION = 1;
+	/** marks the beginning of an MRS record */
+	public static final int RECORD = 'M';
+
+	/* symbol codes, see writeSymbol() */
+	static final int SYM_NULL = 0;
+	static final int SYM_NEW = 1;
+	static final int SYM_REF = 2;
+
+	/* what an FvPair holds */
+	static final int FV_VAR = 1;
+	static final int FV_CONSTANT = 2;
+
+	private DataOutputStream out;
+	private Map<String, Integer> symbols = new HashMap<String, Integer>();
+
+	/**
+	 * Open a writer and output the header.
+	 * @param os an OutputStream, which is buffered by this writer
+	 * @throws IOException
+	 */
+	public MrsBinaryWriter(OutputStream os) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(os));
+		out.writeInt(MAGIC);
+		writeVarInt(VERSION);
+	}
+
+	/**
+	 * Append an MRS to the stream.
+	 * @param mrs an MRS
+	 * @throws IOException
+	 */
+	public void write(MRS mrs) throws IOException {
+		out.writeByte(RECORD);
+		writeSymbol(mrs.ltop);
+		writeSymbol(mrs.label_vid);
+		writeSymbol(mrs.index);
+		writeSymbol(mrs.index_vid);
+		writeSymbol(mrs.sent_type);
+
+		writeVarInt(mrs.decomposer.size());
+		for (String d:mrs.decomposer)
+			writeSymbol(d);
+		writeSignedVarInt(mrs.ansCrange[0]);
+		writeSignedVarInt(mrs.ansCrange[1]);
+
+		writeVarInt(mrs.eps.size());
+		for (EP ep:mrs.eps)
+			writeEP(ep);
+
+		writeVarInt(mrs.hcons.size());
+		for (HCONS h:mrs.hcons) {
+			writeSymbol(h.getRel());
+			writeVar(h.getHiVar());
+			writeVar(h.getLoVar());
+			writeSymbol(h.getLoLabelRare());
+		}
+	}
+
+	/**
+	 * Flush the underlying stream.
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Flush and close the underlying stream.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		out.close();
+	}
+
+	private void writeEP(EP ep) throws IOException {
+		writeSignedVarInt(ep.getCfrom());
+		writeSignedVarInt(ep.getCto());
+		writeSymbol(ep.getSurface());
+		writeSymbol(ep.getBase());
+		writeSymbol(ep.getPred());
+		writeSymbol(ep.getSpred());
+		writeSymbol(ep.getLabel());
+		out.writeBoolean(ep.getFlag());
+
+		writeVarInt(ep.getFvpair().size());
+		for (FvPair p:ep.getFvpair()) {
+			writeSymbol(p.getFeature());
+			// the value is a constant unless it's the label of the variable
+			String constant = p.getValue();
+			if (constant != null && p.getVar() != null && constant.equals(p.getVar().getLabel()))
+				constant = null;
+			int kind = 0;
+			if (p.getVar() != null) kind |= FV_VAR;
+			if (constant != null) kind |= FV_CONSTANT;
+			out.writeByte(kind);
+			if (p.getVar() != null) writeVar(p.getVar());
+			if (constant != null) writeSymbol(constant);
+		}
+	}
+
+	/**
+	 * Write a (nullable) Var.
+	 */
+	private void writeVar(Var v) throws IOException {
+		if (v == null) {
+			out.writeBoolean(false);
+			return;
+		}
+		out.writeBoolean(true);
+		writeSymbol(v.getVid());
+		writeSymbol(v.getSort());
+		if (v.getExtrapair() == null) {
+			writeVarInt(0);
+			return;
+		}
+		writeVarInt(v.getExtrapair().size());
+		for (Map.Entry<String, String> e:v.getExtrapair().entrySet()) {
+			writeSymbol(e.getKey());
+			writeSymbol(e.getValue());
+		}
+	}
+
+	/**
+	 * Write a (nullable) String through the symbol dictionary.
+	 */
+	private void writeSymbol(String s) throws IOException {
+		if (s == null) {
+			writeVarInt(SYM_NULL);
+			return;
+		}
+		Integer id = symbols.get(s);
+		if (id != null) {
+			writeVarInt(SYM_REF + id);
+		} else {
+			symbols.put(s, symbols.size());
+			writeVarInt(SYM_NEW);
+			out.writeUTF(s);
+		}
+	}
+
+	private void writeVarInt(int v) throws IOException {
+		while ((v & ~0x7F) != 0) {
+			out.writeByte((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+
+	/**
+	 * zigzag encoding so small negative numbers (such as cfrom=-1) stay short
+	 */
+	private void writeSignedVarInt(int v) throws IOException {
+		writeVarInt((v << 1) ^ (v >> 31));
+	}
+
+	/**
+	 * Encode a single MRS.
+	 * @param mrs an MRS
+	 * @return a byte array, or null on error
+	 */
+	public static byte[] toBytes(MRS mrs) {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try {
+			MrsBinaryWriter w = new MrsBinaryWriter(os);
+			w.write(mrs);
+			w.close();
+		} catch (IOException e) {
+			log.error("Error:", e);
+			return null;
+		}
+		return os.toByteArray();
+	}
+
+	/**
+	 * Convert MRX files into one binary file.
+	 * @param args output file followed by MRX files
+	 */
+	public static void main(String args[]) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: MrsBinaryWriter out.mrsb in1.mrx [in2.mrx ...]");
+			return;
+		}
+		MrsBinaryWriter w = new MrsBinaryWriter(new FileOutputStream(args[0]));
+		for (int i=1; i<args.length; i++) {
+			w.write(new MRS(new File(args[i])));
+		}
+		w.close();
+	}
+}
@@ -0,0 +1,452 @@
+package com.googlecode.mrsqg.mrs;
+
+import java.util.ArrayList;
+import java.util.Stack;
+
+import org.apache.log4j.Logger;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * A hand-written pull parser for MRX. It builds EP/FvPair/Var/HCONS objects
+ * directly from a CharSequence, without creating a SAX XMLReader per MRS.
+ * <p>
+ * It understands the subset of XML used by MRX: elements, attributes,
+ * the predefined entities and character references, CDATA sections,
+ * comments, processing instructions and DOCTYPE declarations (skipped).
+ * <p>
+ * {@link #parseAll(CharSequence)} reads every &lt;mrs&gt; element out of
+ * a whole cheap output buffer in one pass, ignoring the text around them.
+ * A parser instance can be reused but is not thread-safe.
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class MrxParser {
+
+	private static Logger log = Logger.getLogger(MrxParser.class);
+
+	private static final int START = 1;
+	private static final int END = 2;
+	private static final int EOF = 3;
+
+	private CharSequence in;
+	private int pos;
+	private int end;
+
+	/** name of the current element */
+	private String name;
+	/** attributes of the current start element, reused */
+	private AttributesImpl atts = new AttributesImpl();
+	/** the character data since the last start element, reused */
+	private StringBuilder chars = new StringBuilder();
+	/** the current start element is an empty element such as &lt;label vid='1'/&gt; */
+	private boolean pendingEnd = false;
+	private StringBuilder buf = new StringBuilder();
+
+	/* handler state, the same as the old SAX handler in MRS */
+	private Stack<String> stack = new Stack<String>();
+	private boolean inEP = false;
+	private EP currentEP = null;
+	private MRS mrs = null;
+
+	/**
+	 * Parse an MRX string into <code>mrs</code>. Only the raw structure is
+	 * filled in: the caller is responsible for post-processing
+	 * (see {@link MRS#parseString(String)}).
+	 * @param mrx a string containing an &lt;mrs&gt; element
+	 * @param mrs an empty MRS
+	 * @return true if parsed without errors
+	 */
+	public boolean parse(CharSequence mrx, MRS mrs) {
+		reset(mrx, 0, mrx.length(), mrs);
+		try {
+			parseElement();
+			return true;
+		} catch (Exception e) {
+			log.error("Error:", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Parse every &lt;mrs&gt; element in a cheap output buffer. Each MRS
+	 * is post-processed the same way as {@link MRS#parseString(String)}.
+	 * @param buffer cheap output spreading multilines
+	 * @return a list of MRS, or null if none was found
+	 */
+	public ArrayList<MRS> parseAll(CharSequence buffer) {
+		if (buffer == null) return null;
+		ArrayList<MRS> list = new ArrayList<MRS>();
+		int from = 0, len = buffer.length();
+		int start;
+		while ((start = indexOf(buffer, "<mrs>", from)) != -1) {
+			MRS m = new MRS();
+			reset(buffer, start, len, m);
+			try {
+				parseElement();
+				from = pos;
+				m.normalizeUnknownWords();
+				m.postprocessing();
+				list.add(m);
+			} catch (Exception e) {
+				log.error("Error:", e);
+				// skip the broken element
+				int close = indexOf(buffer, "</mrs>", start);
+				if (close == -1) break;
+				from = close + 6;
+			}
+		}
+
+		if (list.size()==0) {
+			log.error("Cheap output:");
+			log.error("No parsed MRS from Cheap:\n"+buffer);
+			return null;
+		}
+		return list;
+	}
+
+	private void reset(CharSequence s, int start, int end, MRS m) {
+		this.in = s;
+		this.pos = start;
+		this.end = end;
+		this.mrs = m;
+		this.stack.clear();
+		this.inEP = false;
+		this.currentEP = null;
+		this.pendingEnd = false;
+		this.chars.setLength(0);
+	}
+
+	/**
+	 * Read events until the first element (usually &lt;mrs&gt;) is closed.
+	 */
+	private void parseElement() throws MrxFormatException {
+		int event;
+		do {
+			event = next();
+			if (event == START) {
+				startElement(name);
+			} else if (event == END) {
+				if (stack.empty() || !stack.peek().equals(name))
+					throw new MrxFormatException("unexpected </"+name+">");
+				endElement(name);
+			} else {
+				throw new MrxFormatException("premature end of MRX");
+			}
+		} while (!stack.empty());
+	}
+
+	private void startElement(String qName) {
+		String vid;
+		String parent;
+
+		if (qName.equals("mrs")) {
+			// if stack is not empty, then error
+			if (stack.empty() == false) {
+				log.error("Error, non-empty stack: " +
+						"<mrs> shouldn't have parent element");
+			}
+		} else if (stack.empty()) {
+			log.error("Unknown element "+qName);
+		} else if (qName.equals("label")) {
+			parent = stack.peek();
+			vid = atts.getValue("vid");
+
+			// top element, indicating the LTOP of MRS
+			if (parent.equals("mrs")) {
+				mrs.ltop = "h"+vid;
+				mrs.label_vid = vid;
+			} else if (parent.equals("ep")) {
+				// label for <ep>
+				currentEP.processStartElement(qName, atts);
+			} else if (parent.equals("lo")) {
+				HCONS h = mrs.hcons.get(mrs.hcons.size()-1);
+				h.setLoLabelRare(vid);
+				h.setLo(vid);
+				log.error("Warning: <label> inisde <lo>. " +
+						"not in sample. check the code!");
+			} else {
+				log.error("file format error: unknown" +
+						"element label");
+			}
+		} else if (qName.equals("var")) {
+			parent = stack.peek();
+			vid = atts.getValue("vid");
+
+			// top element, indicating the INDEX of MRS
+			if (parent.equals("mrs")) {
+				mrs.index = "e"+vid;
+				mrs.index_vid = vid;
+			} else if (parent.equals("fvpair")) {
+				if (inEP) {
+					currentEP.processStartElement(qName, atts);
+				} else {
+					log.error("error: <fvpair> outside <ep>");
+				}
+			} else if (parent.equals("hi")) {
+				HCONS h = mrs.hcons.get(mrs.hcons.size()-1);
+				h.setHiVar(new Var(vid, atts.getValue("sort")));
+			} else if (parent.equals("lo")) {
+				HCONS h = mrs.hcons.get(mrs.hcons.size()-1);
+				h.setLoVar(new Var(vid, atts.getValue("sort")));
+			} else {
+				log.error("file format error: unknown" +
+						"element var");
+			}
+		} else if (qName.equals("hcons")) {
+			String hreln = atts.getValue("hreln");
+			if ("lheq".equals(hreln) || "outscopes".equals(hreln)) {
+				log.error("Manually check the code and complete it!");
+			}
+			mrs.hcons.add(new HCONS(hreln));
+		} else if (qName.equals("ep")) {
+			inEP = true;
+			currentEP = new EP();
+			mrs.eps.add(currentEP);
+			currentEP.processStartElement(qName, atts);
+		} else if (inEP) {
+			currentEP.processStartElement(qName, atts);
+		} else if (qName.equals("hi") || qName.equals("lo")) {
+		} else {
+			log.error("Unknown element "+qName);
+		}
+		chars.setLength(0);
+		stack.push(qName);
+	}
+
+	private void endElement(String qName) {
+		if (qName.equals("mrs")) {
+
+		} else if (qName.equals("hcons")) {
+			HCONS h = mrs.hcons.get(mrs.hcons.size()-1);
+			if (h.checkValid() == false) {
+				log.error("HCONS read error!");
+			}
+		} else if (qName.equals("ep")) {
+			inEP = false;
+			currentEP = null;
+		} else if (inEP) {
+			currentEP.processEndElement(qName, chars.toString());
+		}
+		stack.pop();
+	}
+
+	/**
+	 * Read the next start or end tag, appending character data in between
+	 * to <code>chars</code>.
+	 * @return START, END or EOF
+	 */
+	private int next() throws MrxFormatException {
+		if (pendingEnd) {
+			pendingEnd = false;
+			return END;
+		}
+		while (pos < end) {
+			char c = in.charAt(pos);
+			if (c == '<') {
+				if (startsWith("</")) {
+					pos += 2;
+					name = readName();
+					skipSpaces();
+					expect('>');
+					return END;
+				} else if (startsWith("<!--")) {
+					skipPast("-->");
+				} else if (startsWith("<![CDATA[")) {
+					pos += 9;
+					int close = indexOf(in, "]]>", pos);
+					if (close == -1 || close >= end)
+						throw new MrxFormatException("unterminated CDATA section");
+					appendNormalized(chars, pos, close);
+					pos = close + 3;
+				} else if (startsWith("<?")) {
+					skipPast("?>");
+				} else if (startsWith("<!")) {
+					skipDeclaration();
+				} else {
+					pos++;
+					name = readName();
+					readAttributes();
+					if (startsWith("/>")) {
+						pos += 2;
+						pendingEnd = true;
+					} else {
+						expect('>');
+					}
+					return START;
+				}
+			} else if (c == '&') {
+				readReference(chars);
+			} else if (c == '\r') {
+				// line-end normalization: \r\n and \r become \n
+				chars.append('\n');
+				pos++;
+				if (pos < end && in.charAt(pos) == '\n') pos++;
+			} else {
+				chars.append(c);
+				pos++;
+			}
+		}
+		return EOF;
+	}
+
+	private void readAttributes() throws MrxFormatException {
+		atts.clear();
+		while (true) {
+			skipSpaces();
+			if (pos >= end)
+				throw new MrxFormatException("unterminated tag <"+name);
+			char c = in.charAt(pos);
+			if (c == '>' || c == '/') return;
+			String attName = readName();
+			skipSpaces();
+			expect('=');
+			skipSpaces();
+			if (pos >= end)
+				throw new MrxFormatException("missing value of attribute "+attName);
+			char quote = in.charAt(pos);
+			if (quote != '"' && quote != '\'')
+				throw new MrxFormatException("unquoted value of attribute "+attName);
+			pos++;
+			buf.setLength(0);
+			while (true) {
+				if (pos >= end)
+					throw new MrxFormatException("unterminated value of attribute "+attName);
+				c = in.charAt(pos);
+				if (c == quote) {
+					pos++;
+					break;
+				} else if (c == '&') {
+					readReference(buf);
+				} else if (c == '\t' || c == '\n' || c == '\r') {
+					// attribute-value normalization
+					if (c == '\r' && pos+1 < end && in.charAt(pos+1) == '\n') pos++;
+					buf.append(' ');
+					pos++;
+				} else if (c == '<') {
+					throw new MrxFormatException("'<' in value of attribute "+attName);
+				} else {
+					buf.append(c);
+					pos++;
+				}
+			}
+			atts.addAttribute("", "", attName, "CDATA", buf.toString());
+		}
+	}
+
+	/**
+	 * Read an entity or character reference starting at '&amp;'.
+	 */
+	private void readReference(StringBuilder sb) throws MrxFormatException {
+		int semi = pos + 1;
+		while (semi < end && semi - pos < 12 && in.charAt(semi) != ';') semi++;
+		if (semi >= end || in.charAt(semi) != ';')
+			throw new MrxFormatException("unterminated reference at "+pos);
+		String ref = in.subSequence(pos+1, semi).toString();
+		if (ref.equals("lt")) sb.append('<');
+		else if (ref.equals("gt")) sb.append('>');
+		else if (ref.equals("amp")) sb.append('&');
+		else if (ref.equals("quot")) sb.append('"');
+		else if (ref.equals("apos")) sb.append('\'');
+		else if (ref.startsWith("#")) {
+			int code;
+			try {
+				if (ref.startsWith("#x"))
+					code = Integer.parseInt(ref.substring(2), 16);
+				else
+					code = Integer.parseInt(ref.substring(1));
+			} catch (NumberFormatException e) {
+				throw new MrxFormatException("invalid character reference &"+ref+";");
+			}
+			sb.appendCodePoint(code);
+		} else {
+			throw new MrxFormatException("unknown entity &"+ref+";");
+		}
+		pos = semi + 1;
+	}
+
+	private String readName() throws MrxFormatException {
+		int start = pos;
+		while (pos < end) {
+			char c = in.charAt(pos);
+			if (c == '>' || c == '/' || c == '=' || c == '<' || Character.isWhitespace(c)) break;
+			pos++;
+		}
+		if (pos == start)
+			throw new MrxFormatException("missing name at "+start);
+		return in.subSequence(start, pos).toString();
+	}
+
+	private void skipSpaces() {
+		while (pos < end && Character.isWhitespace(in.charAt(pos))) pos++;
+	}
+
+	private void expect(char c) throws MrxFormatException {
+		if (pos >= end || in.charAt(pos) != c)
+			throw new MrxFormatException("expected '"+c+"' at "+pos);
+		pos++;
+	}
+
+	private boolean startsWith(String s) {
+		int len = s.length();
+		if (pos + len > end) return false;
+		for (int i=0; i<len; i++) {
+			if (in.charAt(pos+i) != s.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	private void skipPast(String s) throws MrxFormatException {
+		int i = indexOf(in, s, pos);
+		if (i == -1 || i >= end)
+			throw new MrxFormatException("missing "+s);
+		pos = i + s.length();
+	}
+
+	/**
+	 * Skip &lt;!DOCTYPE ...&gt; including an internal subset.
+	 */
+	private void skipDeclaration() throws MrxFormatException {
+		int depth = 0;
+		while (pos < end) {
+			char c = in.charAt(pos++);
+			if (c == '[') depth++;
+			else if (c == ']') depth--;
+			else if (c == '>' && depth <= 0) return;
+		}
+		throw new MrxFormatException("unterminated declaration");
+	}
+
+	private void appendNormalized(StringBuilder sb, int from, int to) {
+		for (int i=from; i<to; i++) {
+			char c = in.charAt(i);
+			if (c == '\r') {
+				sb.append('\n');
+				if (i+1 < to && in.charAt(i+1) == '\n') i++;
+			} else {
+				sb.append(c);
+			}
+		}
+	}
+
+	private static int indexOf(CharSequence s, String target, int from) {
+		if (s instanceof String) return ((String)s).indexOf(target, from);
+		int max = s.length() - target.length();
+		char first = target.charAt(0);
+		for (int i=from; i<=max; i++) {
+			if (s.charAt(i) != first) continue;
+			int j = 1;
+			while (j < target.length() && s.charAt(i+j) == target.charAt(j)) j++;
+			if (j == target.length()) return i;
+		}
+		return -1;
+	}
+
+	private static class MrxFormatException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		MrxFormatException(String msg) {
+			super(msg);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.googlecode.mrsqg.mrs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * A direct writer for one-line MRX, which replaces the Xerces
+ * <code>XMLSerializer</code> used by {@link MRS#toXML(OutputStream)}.
+ * <p>
+ * The output is byte-for-byte the same as the serializer's (with
+ * indenting off): the same XML declaration, self-closing empty elements,
+ * double-quoted attributes and the same escaping, including its quirks
+ * (whitespace in text is output as a space, &quot; and ' are escaped
+ * in text, control characters and U+00F7 are escaped as character
+ * references, unpaired surrogates are output as '?').
+ * <p>
+ * EP, FvPair, Var and HCONS append themselves through their
+ * <code>serializeMRX(StringBuilder)</code> methods.
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class MrxWriter {
+
+	public static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/** buffers larger than this (in chars) aren't kept for reuse */
+	private static final int MAX_REUSED = 1<<16;
+
+	/** a buffer per thread, reused by {@link #toString(MRS)} and {@link #write(Writer, MRS)} */
+	private static final ThreadLocal<StringBuilder> buffer = new ThreadLocal<StringBuilder>() {
+		protected StringBuilder initialValue() {
+			return new StringBuilder(4096);
+		}
+	};
+
+	/**
+	 * Append a whole MRS, including the XML declaration.
+	 * @param sb a StringBuilder, which can be reused across calls
+	 * @param mrs an MRS
+	 * @return <code>sb</code>
+	 */
+	public static StringBuilder append(StringBuilder sb, MRS mrs) {
+		sb.append(XML_DECLARATION);
+		mrs.serializeMRX(sb);
+		return sb;
+	}
+
+	/**
+	 * Get a whole MRS as a string, including the XML declaration.
+	 * @param mrs an MRS
+	 * @return a one-line string with an &lt;mrs&gt; element
+	 */
+	public static String toString(MRS mrs) {
+		StringBuilder sb = buffer.get();
+		sb.setLength(0);
+		String s = append(sb, mrs).toString();
+		release(sb);
+		return s;
+	}
+
+	/**
+	 * Drop the buffer of this thread if an unusually large MRS made it grow.
+	 */
+	private static void release(StringBuilder sb) {
+		if (sb.capacity() > MAX_REUSED) buffer.remove();
+		else sb.setLength(0);
+	}
+
+	/**
+	 * Write a whole MRS to <code>os</code> in UTF-8.
+	 * @param os an OutputStream
+	 * @param mrs an MRS
+	 * @throws IOException
+	 */
+	public static void write(OutputStream os, MRS mrs) throws IOException {
+		Writer w = new OutputStreamWriter(os, "UTF-8");
+		write(w, mrs);
+		w.flush();
+	}
+
+	/**
+	 * Write a whole MRS to <code>w</code>.
+	 * @param w a Writer
+	 * @param mrs an MRS
+	 * @throws IOException
+	 */
+	public static void write(Writer w, MRS mrs) throws IOException {
+		StringBuilder sb = buffer.get();
+		sb.setLength(0);
+		append(sb, mrs);
+		w.append(sb);
+		release(sb);
+	}
+
+	/**
+	 * Append <code>&lt;name&gt;text&lt;/name&gt;</code>.
+	 */
+	public static void appendTextElement(StringBuilder sb, String name, String text) {
+		sb.append('<').append(name).append('>');
+		appendText(sb, text);
+		sb.append("</").append(name).append('>');
+	}
+
+	/**
+	 * Append <code> name="value"</code>. A null value is output as "".
+	 */
+	public static void appendAttribute(StringBuilder sb, String name, String value) {
+		sb.append(' ').append(name).append("=\"");
+		escape(sb, value, true);
+		sb.append('"');
+	}
+
+	/**
+	 * Append escaped character data.
+	 */
+	public static void appendText(StringBuilder sb, String text) {
+		escape(sb, text, false);
+	}
+
+	private static void escape(StringBuilder sb, String s, boolean inAttribute) {
+		if (s == null) return;
+		int len = s.length();
+		for (int i=0; i<len; i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '<': sb.append("&lt;"); break;
+			case '>': sb.append("&gt;"); break;
+			case '&': sb.append("&amp;"); break;
+			case '"': sb.append("&quot;"); break;
+			case '\'': sb.append("&apos;"); break;
+			case '\t':
+			case '\n':
+			case '\r':
+				if (inAttribute) sb.append(c);
+				else sb.append(' ');
+				break;
+			case '\f':
+				if (inAttribute) appendCharRef(sb, c);
+				else sb.append(' ');
+				break;
+			case '\u00f7':
+				appendCharRef(sb, c);
+				break;
+			default:
+				if (c < 0x20) {
+					appendCharRef(sb, c);
+				} else if (Character.isHighSurrogate(c)) {
+					if (i+1 < len && Character.isLowSurrogate(s.charAt(i+1))) {
+						sb.append(c).append(s.charAt(++i));
+					} else {
+						sb.append('?');
+					}
+				} else if (Character.isLowSurrogate(c)) {
+					sb.append('?');
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+	}
+
+	private static void appendCharRef(StringBuilder sb, char c) {
+		sb.append("&#x");
+		boolean started = false;
+		for (int shift=12; shift>=0; shift-=4) {
+			int d = (c >> shift) & 0xF;
+			if (d != 0 || started || shift == 0) {
+				sb.append(HEX[d]);
+				started = true;
+			}
+		}
+		sb.append(';');
+	}
+}
@@ -0,0 +1,183 @@
+package com.googlecode.mrsqg.mrs;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A symbol table which interns the strings of the MRS model into compact
+ * int IDs. Three tables are kept: one for predicate names (such as
+ * "_like_v_1_rel" or "PROPER_Q_REL"), one for feature names (such as "ARG0",
+ * "RSTR", "L-INDEX") and one for variable labels (such as "x6", "h3").
+ * <p>
+ * An ID is never reused, thus two EPs have the same predicate iff their
+ * predicate IDs are the same. Some properties of a symbol (whether it's an
+ * ARG* feature, a verb/preposition/coordination/passive predicate) are computed
+ * once when it's interned, so the hot paths in building dependencies and
+ * decomposition compare ints instead of calling <code>equals()</code>,
+ * <code>startsWith()</code> or <code>contains()</code>.
+ * <p>
+ * Lookups don't lock, so the tables can be shared by all threads; only adding
+ * a symbol does. Symbols are never removed: the tables grow with the number of
+ * distinct symbols ever seen, which is bounded by the grammar for features
+ * and for most predicates, and by the size of the largest MRS for variable
+ * labels. Only the predicates of unknown words (such as
+ * "_foo/NN_u_unknown_rel") grow with the input, by about 100 bytes each.
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class SymbolTable {
+
+	/** the table of predicate names */
+	public static final SymbolTable PREDICATES = new SymbolTable();
+	/** the table of feature names */
+	public static final SymbolTable FEATURES = new SymbolTable();
+	/** the table of variable labels */
+	public static final SymbolTable VARIABLES = new SymbolTable();
+
+	/** the symbol starts with "ARG", such as "ARG0" */
+	public static final int ARG = 1;
+	/** the symbol is a verb predicate, i.e. matches "_v_" */
+	public static final int VERB = 2;
+	/** the symbol is a preposition predicate, i.e. matches "_p_" */
+	public static final int PREPOSITION = 4;
+	/** the symbol is a coordination predicate, i.e. contains "_C_REL" */
+	public static final int COORDINATION = 8;
+	/** the symbol is a passive predicate, i.e. "PARG_D_REL" in any case */
+	public static final int PASSIVE = 16;
+
+	/*
+	 * Frequently used features. They are interned first so the ARG*
+	 * features have consecutive IDs.
+	 */
+	public static final int ARG0 = FEATURES.intern("ARG0");
+	public static final int ARG1 = FEATURES.intern("ARG1");
+	public static final int ARG2 = FEATURES.intern("ARG2");
+	public static final int ARG3 = FEATURES.intern("ARG3");
+	public static final int ARG4 = FEATURES.intern("ARG4");
+	public static final int RSTR = FEATURES.intern("RSTR");
+	public static final int BODY = FEATURES.intern("BODY");
+	public static final int CARG = FEATURES.intern("CARG");
+	public static final int L_INDEX = FEATURES.intern("L-INDEX");
+	public static final int R_INDEX = FEATURES.intern("R-INDEX");
+	public static final int L_HNDL = FEATURES.intern("L-HNDL");
+	public static final int R_HNDL = FEATURES.intern("R-HNDL");
+
+	/** the predicate of passive forms */
+	public static final int PARG_D_REL = PREDICATES.intern("PARG_D_REL");
+
+	/**
+	 * The symbols and their properties, indexed by ID. Replaced by a larger
+	 * copy when it's full, so readers never see a partly copied one.
+	 */
+	private static class Entries {
+		final String[] names;
+		final byte[] props;
+		/** the suffix after "ARG" for ARG* symbols, such as "1" for "ARG1" */
+		final String[] argNums;
+		Entries(int capacity) {
+			names = new String[capacity];
+			props = new byte[capacity];
+			argNums = new String[capacity];
+		}
+	}
+
+	private ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+	private volatile Entries entries = new Entries(64);
+	/** the number of symbols. Written after their entries, read before them. */
+	private volatile int size = 0;
+
+	/**
+	 * Return the ID of <code>s</code>, adding it to the table if it's
+	 * not there yet.
+	 * @param s a symbol, such as "ARG0"
+	 * @return the ID of <code>s</code>, or -1 if <code>s</code> is null
+	 */
+	public int intern(String s) {
+		if (s == null) return -1;
+		Integer id = ids.get(s);
+		if (id != null) return id;
+		return add(s);
+	}
+
+	private synchronized int add(String s) {
+		// added by another thread meanwhile?
+		Integer id = ids.get(s);
+		if (id != null) return id;
+
+		int newId = size;
+		Entries e = entries;
+		if (newId == e.names.length) {
+			Entries larger = new Entries(e.names.length*2);
+			System.arraycopy(e.names, 0, larger.names, 0, newId);
+			System.arraycopy(e.props, 0, larger.props, 0, newId);
+			System.arraycopy(e.argNums, 0, larger.argNums, 0, newId);
+			entries = e = larger;
+		}
+
+		int p = 0;
+		if (s.startsWith("ARG")) p |= ARG;
+		String lower = s.toLowerCase();
+		if (lower.contains("_v_")) p |= VERB;
+		if (lower.contains("_p_")) p |= PREPOSITION;
+		if (s.contains("_C_REL")) p |= COORDINATION;
+		if (lower.equals("parg_d_rel")) p |= PASSIVE;
+		e.names[newId] = s;
+		e.props[newId] = (byte)p;
+		e.argNums[newId] = (p & ARG) != 0 ? s.substring(3) : null;
+
+		// publish the entries before the ID
+		size = newId+1;
+		ids.put(s, newId);
+		return newId;
+	}
+
+	/**
+	 * Return the ID of <code>s</code> without adding it to the table.
+	 * @param s a symbol
+	 * @return the ID of <code>s</code>, or -1 if not found
+	 */
+	public int lookup(String s) {
+		Integer id = ids.get(s);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Return the symbol of an ID.
+	 * @param id an ID returned by {@link #intern(String)}
+	 * @return the symbol, or null if <code>id</code> is invalid
+	 */
+	public String name(int id) {
+		if (id < 0 || id >= size) return null;
+		return entries.names[id];
+	}
+
+	/**
+	 * Whether the symbol of <code>id</code> has a property, such as {@link #ARG}.
+	 * @param id an ID returned by {@link #intern(String)}
+	 * @param prop one of {@link #ARG}, {@link #VERB}, {@link #PREPOSITION},
+	 * {@link #COORDINATION} and {@link #PASSIVE}
+	 * @return a boolean value
+	 */
+	public boolean hasProperty(int id, int prop) {
+		if (id < 0 || id >= size) return false;
+		return (entries.props[id] & prop) != 0;
+	}
+
+	/**
+	 * Return the number of an ARG* symbol, such as "1" for "ARG1".
+	 * @param id an ID returned by {@link #intern(String)}
+	 * @return the number as a string, or "" if it's not an ARG* symbol
+	 */
+	public String getArgNum(int id) {
+		if (id < 0 || id >= size) return "";
+		String num = entries.argNums[id];
+		return num == null ? "" : num;
+	}
+
+	/**
+	 * @return the number of symbols in this table
+	 */
+	public int size() {
+		return size;
+	}
+}
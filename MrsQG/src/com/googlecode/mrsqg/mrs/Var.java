@@ -40,6 +40,10 @@ public class Var {
 	protected String sort = null;
 	// label = sort+vid
 	protected String label = null;
+	/** the first char of sort, such as 'x', or 0 if sort is null */
+	protected char sortChar = 0;
+	/** the ID of label in {@link SymbolTable#VARIABLES} */
+	protected int labelId = -1;
 //	;;; <!ELEMENT extrapair (path,value)>
 //	;;; <!ELEMENT path (#PCDATA)>
 //	;;; <!ELEMENT value (#PCDATA)>
@@ -51,13 +55,25 @@ public class Var {
 	public String getSort() {return sort;}
 	public String getLabel() {return label;}
 	public String getPath() {return path;}
+	public char getSortChar() {return sortChar;}
+	public int getLabelId() {return labelId;}
 	public LinkedHashMap<String, String> getExtrapair() {return extrapair;}
-	public void setSort(String s) {sort = s; label=sort+vid;}
-	public void setVid(String s) {vid = s; label=sort+vid;}
+	public void setSort(String s) {sort = s; label=sort+vid; internLabel();}
+	public void setVid(String s) {vid = s; label=sort+vid; internLabel();}
 	public void setLabel(String value) {
 		this.vid = value.substring(1);
 		this.sort = value.substring(0, 1);
 		this.label = value;
+		internLabel();
+	}
+
+	/**
+	 * Update <code>sortChar</code> and <code>labelId</code> after
+	 * <code>sort</code> or <code>label</code> changes.
+	 */
+	private void internLabel() {
+		this.sortChar = (sort == null || sort.length() == 0) ? 0 : sort.charAt(0);
+		this.labelId = SymbolTable.VARIABLES.intern(label);
 	}
 
 	@Override public String toString() {
@@ -85,6 +101,8 @@ public class Var {
 		this.vid = old.getVid();
 		this.sort = old.getSort();
 		this.label = old.getLabel();
+		this.sortChar = old.getSortChar();
+		this.labelId = old.getLabelId();
 		this.path = old.getPath();
 		// values and keys of this LinkedHashMap are of class String.
 		// so shallow copy equals deep copy in this case.
@@ -95,6 +113,7 @@ public class Var {
 		this.vid = vid;
 		this.sort = sort;
 		this.label = sort+vid;
+		internLabel();
 		this.extrapair = new LinkedHashMap<String, String>();
 	}
 
@@ -102,6 +121,7 @@ public class Var {
 		this.vid = value.substring(1);
 		this.sort = value.substring(0, 1);
 		this.label = sort+vid;
+		internLabel();
 		this.extrapair = new LinkedHashMap<String, String>();
 	}
 
@@ -114,6 +134,7 @@ public class Var {
 		this.vid = value.substring(1);
 		this.sort = value.substring(0, 1);
 		this.label = sort+vid;
+		internLabel();
 		this.extrapair = new LinkedHashMap<String, String>();
 		int size = extraPairs.length/2;
 		for (int i=0; i<size; i++) {
@@ -125,6 +146,7 @@ public class Var {
 		vid = atts.getValue("vid");
 		sort = atts.getValue("sort");
 		label = sort+vid;
+		internLabel();
 		extrapair = new LinkedHashMap<String, String>();
 	}
 
@@ -198,6 +220,40 @@ public class Var {
 		return;
 	}
 
+	/**
+	 * Output this Var in MRX, such as <code>&lt;var vid="5" sort="x"/&gt;</code>.
+	 * @param sb a StringBuilder
+	 * @see MrxWriter
+	 */
+	public void serializeMRX (StringBuilder sb) {
+		sb.append("<var");
+		MrxWriter.appendAttribute(sb, "vid", vid);
+		if (sort != null) {
+			MrxWriter.appendAttribute(sb, "sort", sort);
+		}
+		boolean empty = true;
+		for (String path: extrapair.keySet()) {
+			String value = extrapair.get(path);
+			if (value == null || path == null) continue;
+			if (empty) {
+				sb.append('>');
+				empty = false;
+			}
+			sb.append("<extrapair>");
+			MrxWriter.appendTextElement(sb, "path", path);
+			MrxWriter.appendTextElement(sb, "value", value);
+			sb.append("</extrapair>");
+		}
+		if (empty)
+			sb.append("/>");
+		else
+			sb.append("</var>");
+	}
+
+	/**
+	 * @deprecated replaced by {@link #serializeMRX(StringBuilder)}
+	 */
+	@Deprecated
 	public void serializeXML (ContentHandler hd) {
 
 		// <var vid='5' sort='x'>
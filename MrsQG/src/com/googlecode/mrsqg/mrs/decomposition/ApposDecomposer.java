@@ -155,7 +155,7 @@ public class ApposDecomposer extends MrsDecomposer {
 		// There's obviously a better way to do this, which I omitted the first time.
 		//MRS apposMrs = MRS.extractByEPandArg0(apposEP, mrs);
 		MRS apposMrs = new MRS(mrs);
-		apposEP = apposMrs.getEps().get(mrs.getEps().indexOf(apposEP));
+		apposEP = apposMrs.epAt(apposEP.getOrdinal());
 		int cfrom = apposEP.getCfrom();
 		int cto = apposEP.getCto();
 		boolean inside = false;
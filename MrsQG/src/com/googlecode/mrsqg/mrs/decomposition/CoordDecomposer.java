@@ -8,6 +8,7 @@ import org.apache.log4j.Logger;
 
 import com.googlecode.mrsqg.mrs.EP;
 import com.googlecode.mrsqg.mrs.MRS;
+import com.googlecode.mrsqg.mrs.SymbolTable;
 
 /**
  * Coordination decomposer. For coordinating conjunctions
@@ -33,17 +34,14 @@ public class CoordDecomposer extends MrsDecomposer {
 	public ArrayList<MRS> decompose(ArrayList<MRS> inList) {
 		if (inList == null) return null;
 
-		String coordEPname = "_C_REL";
-
 		ArrayList<MRS> outList = new ArrayList<MRS>();
 		EP coordEP = null;
 
 		for (MRS mrs:inList) {
 			for (EP ep:mrs.getEps()) {
-				String pred = ep.getTypeName();
-				if (pred.contains(coordEPname)) {
-					String lEvent = ep.getValueByFeature("L-INDEX");
-					String rEvent = ep.getValueByFeature("R-INDEX");
+				if (ep.hasTypeProperty(SymbolTable.COORDINATION)) {
+					String lEvent = ep.getValueByFeatureId(SymbolTable.L_INDEX);
+					String rEvent = ep.getValueByFeatureId(SymbolTable.R_INDEX);
 
 					if ((lEvent == null || rEvent == null) || (lEvent.startsWith("x") && rEvent.startsWith("x"))) {
 						// don't decompose coordination of NPs
@@ -54,7 +52,7 @@ public class CoordDecomposer extends MrsDecomposer {
 						// could be empty index such as from a _BUT_C_REL "conjunction"
 						if (event.startsWith("i") || event.startsWith("u")) continue;
 						MRS cMrs = new MRS(mrs);
-						coordEP = cMrs.getEps().get(mrs.getEps().indexOf(ep));
+						coordEP = cMrs.epAt(ep.getOrdinal());
 
 						//cMrs.keepDependentEPandVerbEP(cMrs.getCharVariableMap().get(event), coordEP);
 						cMrs.doDecomposition(new HashSet<EP>(Arrays.asList(cMrs.getCharVariableMap().get(event))),
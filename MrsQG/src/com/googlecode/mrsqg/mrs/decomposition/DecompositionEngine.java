@@ -0,0 +1,278 @@
+package com.googlecode.mrsqg.mrs.decomposition;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import com.googlecode.mrsqg.mrs.MRS;
+
+/**
+ * Drives a chain of decomposers over a list of MRS.
+ * <p>
+ * The decomposers are run in the order they are registered. Each one is run
+ * on a worklist to its fixpoint: first on all MRS so far, then only on what
+ * it produced in the last round. The output is ordered the same as chaining
+ * {@link MrsDecomposer#doIt(ArrayList)} of every decomposer, but an MRS
+ * which has been seen before (the input included) is dropped instead of
+ * being decomposed again by this and all following decomposers. Two MRS are
+ * the same if their sentence types and MRX are the same.
+ * <p>
+ * Every decomposer works on each MRS of its input list independently, so
+ * the engine calls it on one MRS at a time and remembers the result. With an
+ * ExecutorService, {@link #doIt(ArrayList, ExecutorService)} first decomposes
+ * every input MRS (and everything decomposed from it) in its own task, then
+ * merges the results by running the same worklist over the remembered
+ * results. The output is the same as the sequential one.
+ * <p>
+ * Per-decomposer statistics are kept in {@link #getStats()}.
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class DecompositionEngine {
+
+	private static Logger log = Logger.getLogger(DecompositionEngine.class);
+
+	private ArrayList<MrsDecomposer> decomposers = new ArrayList<MrsDecomposer>();
+	private ArrayList<Stats> stats = new ArrayList<Stats>();
+
+	/**
+	 * Statistics of one decomposer, accumulated over all calls of
+	 * {@link DecompositionEngine#doIt(ArrayList)}.
+	 */
+	public static class Stats {
+		private String name;
+		/** how many times decompose() was run on a worklist */
+		private int rounds = 0;
+		/** how many MRS were in the worklists */
+		private int inputs = 0;
+		/** how many new MRS decompose() produced */
+		private int outputs = 0;
+		/** how many MRS decompose() produced which were seen before */
+		private int duplicates = 0;
+		/** time spent in decompose(), summed over all threads */
+		private long nanos = 0;
+
+		public Stats(String name) {this.name = name;}
+
+		public String getName() {return name;}
+		public int getRounds() {return rounds;}
+		public int getInputs() {return inputs;}
+		public int getOutputs() {return outputs;}
+		public int getDuplicates() {return duplicates;}
+		/** @return time spent in decompose() in milliseconds */
+		public double getMillis() {return nanos/1000000.0;}
+
+		public void reset() {
+			rounds = inputs = outputs = duplicates = 0;
+			nanos = 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d rounds, %d in, %d new, %d duplicates, %.1f ms",
+					name, rounds, inputs, outputs, duplicates, getMillis());
+		}
+	}
+
+	/**
+	 * What every decomposer produced from every MRS it was called on.
+	 * One is used by one thread at a time.
+	 */
+	private class Results {
+		/** one map per decomposer. An empty list means nothing is produced. */
+		private ArrayList<IdentityHashMap<MRS, ArrayList<MRS>>> produced;
+		private long[] nanos;
+		/** the keys of the MRS in the seen-set */
+		private IdentityHashMap<MRS, String> keys = new IdentityHashMap<MRS, String>();
+
+		Results() {
+			produced = new ArrayList<IdentityHashMap<MRS, ArrayList<MRS>>>(decomposers.size());
+			for (int i=0; i<decomposers.size(); i++)
+				produced.add(new IdentityHashMap<MRS, ArrayList<MRS>>());
+			nanos = new long[decomposers.size()];
+		}
+
+		/**
+		 * Return what decomposer <code>i</code> produces from <code>mrs</code>,
+		 * calling it if it hasn't been called on <code>mrs</code> yet.
+		 */
+		ArrayList<MRS> get(int i, MRS mrs) {
+			ArrayList<MRS> out = produced.get(i).get(mrs);
+			if (out != null) return out;
+
+			ArrayList<MRS> in = new ArrayList<MRS>(1);
+			in.add(mrs);
+			long t = System.nanoTime();
+			out = decomposers.get(i).decompose(in);
+			nanos[i] += System.nanoTime() - t;
+			if (out == null) out = new ArrayList<MRS>(0);
+			produced.get(i).put(mrs, out);
+			return out;
+		}
+
+		String getKey(MRS mrs) {
+			String key = keys.get(mrs);
+			if (key == null) {
+				key = DecompositionEngine.getKey(mrs);
+				keys.put(mrs, key);
+			}
+			return key;
+		}
+
+		void addAll(Results r) {
+			keys.putAll(r.keys);
+			for (int i=0; i<decomposers.size(); i++) {
+				produced.get(i).putAll(r.produced.get(i));
+				nanos[i] += r.nanos[i];
+			}
+		}
+	}
+
+	/**
+	 * Append a decomposer to the chain.
+	 * @param d a decomposer
+	 */
+	public void register(MrsDecomposer d) {
+		decomposers.add(d);
+		stats.add(new Stats(d.getClass().getSimpleName()));
+	}
+
+	/**
+	 * Run all decomposers on <code>inList</code>.
+	 * @param inList the input MRS list
+	 * @return a list of decomposed MRS followed by <code>inList</code>, or null
+	 * if <code>inList</code> is null
+	 */
+	public ArrayList<MRS> doIt(ArrayList<MRS> inList) {
+		return doIt(inList, null);
+	}
+
+	/**
+	 * Run all decomposers on <code>inList</code>, with one task per input MRS.
+	 * The decomposers must not change the MRS they are given.
+	 * @param inList the input MRS list
+	 * @param pool an ExecutorService, or null to run in this thread
+	 * @return a list of decomposed MRS followed by <code>inList</code>, or null
+	 * if <code>inList</code> is null
+	 */
+	public ArrayList<MRS> doIt(ArrayList<MRS> inList, ExecutorService pool) {
+		if (inList == null) return null;
+
+		Results results = new Results();
+		if (pool != null && inList.size() > 1) {
+			ArrayList<Future<Results>> futures = new ArrayList<Future<Results>>(inList.size());
+			for (final MRS m:inList) {
+				futures.add(pool.submit(new Callable<Results>() {
+					public Results call() {
+						Results r = new Results();
+						ArrayList<MRS> l = new ArrayList<MRS>(1);
+						l.add(m);
+						run(l, r, null);
+						return r;
+					}
+				}));
+			}
+			for (Future<Results> f:futures) {
+				try {
+					results.addAll(f.get());
+				} catch (InterruptedException e) {
+					log.error("Error:", e);
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					// the merge below decomposes what is missing in this thread
+					log.error("Error:", e.getCause());
+				}
+			}
+		}
+
+		ArrayList<MRS> list = run(inList, results, stats);
+		for (int i=0; i<decomposers.size(); i++)
+			stats.get(i).nanos += results.nanos[i];
+		return list;
+	}
+
+	/**
+	 * Run all decomposers on <code>inList</code>, taking what they produce
+	 * from <code>results</code>.
+	 * @param stats where to count rounds and outputs, or null
+	 */
+	private ArrayList<MRS> run(ArrayList<MRS> inList, Results results, ArrayList<Stats> stats) {
+		HashSet<String> seen = new HashSet<String>();
+		for (MRS m:inList) seen.add(results.getKey(m));
+
+		ArrayList<MRS> list = inList;
+		for (int i=0; i<decomposers.size(); i++) {
+			Stats s = stats == null ? null : stats.get(i);
+
+			// every round's output goes before the last one's
+			ArrayList<ArrayList<MRS>> rounds = new ArrayList<ArrayList<MRS>>();
+			int total = list.size();
+			ArrayList<MRS> work = list;
+			while (work.size() != 0) {
+				ArrayList<MRS> fresh = new ArrayList<MRS>();
+				int produced = 0;
+				for (MRS w:work) {
+					for (MRS m:results.get(i, w)) {
+						produced++;
+						if (seen.add(results.getKey(m))) fresh.add(m);
+					}
+				}
+				if (s != null) {
+					s.rounds++;
+					s.inputs += work.size();
+					s.outputs += fresh.size();
+					s.duplicates += produced - fresh.size();
+				}
+				if (fresh.size() != 0) rounds.add(fresh);
+				total += fresh.size();
+				work = fresh;
+			}
+
+			if (rounds.size() != 0) {
+				ArrayList<MRS> outList = new ArrayList<MRS>(total);
+				for (int j=rounds.size()-1; j>=0; j--)
+					outList.addAll(rounds.get(j));
+				outList.addAll(list);
+				list = outList;
+			}
+		}
+
+		return list;
+	}
+
+	/**
+	 * @return statistics of every registered decomposer, in the order
+	 * they are registered
+	 */
+	public ArrayList<Stats> getStats() {
+		return stats;
+	}
+
+	/**
+	 * Reset the statistics of all decomposers.
+	 */
+	public void resetStats() {
+		for (Stats s:stats) s.reset();
+	}
+
+	/**
+	 * Log the statistics of all decomposers.
+	 */
+	public void logStats() {
+		for (Stats s:stats) log.info(s);
+	}
+
+	/**
+	 * The key of an MRS in the seen-set.
+	 */
+	protected static String getKey(MRS m) {
+		return m.getSentType()+m.toMRXstring();
+	}
+}
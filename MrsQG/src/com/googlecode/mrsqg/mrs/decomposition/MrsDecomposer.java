@@ -6,7 +6,7 @@ import com.googlecode.mrsqg.mrs.MRS;
 
 /**
  * This abstract class uses the decompose() method to decompose complex sentences into
- * simple ones.
+ * simple ones. To run several decomposers in a chain, use {@link DecompositionEngine}.
  *
  * @author Xuchen Yao
  *
@@ -21,16 +21,23 @@ public abstract class MrsDecomposer {
 	 */
 	public ArrayList<MRS> doIt(ArrayList<MRS> inList) {
 		if (inList == null) return null;
-		ArrayList<MRS> outList = new ArrayList<MRS>();
+
+		// every round's output goes before the last one's
+		ArrayList<ArrayList<MRS>> rounds = new ArrayList<ArrayList<MRS>>();
+		int total = inList.size();
 
 		ArrayList<MRS> decomposedList;
 
 		decomposedList = decompose(inList);
 		while (decomposedList != null) {
-			outList.addAll(0, decomposedList);
+			rounds.add(decomposedList);
+			total += decomposedList.size();
 			decomposedList = decompose(decomposedList);
 		}
 
+		ArrayList<MRS> outList = new ArrayList<MRS>(total);
+		for (int i=rounds.size()-1; i>=0; i--)
+			outList.addAll(rounds.get(i));
 		outList.addAll(inList);
 
 		return outList;
@@ -72,7 +72,7 @@ public class SubclauseDecomposer extends MrsDecomposer {
 					mrs = new MRS(inMrs);
 					oriTense = mrs.getTense();
 					if (oriTense.equals("UNTENSED")) oriTense = "PAST";
-					tEP = mrs.getEps().get(inMrs.getEps().indexOf(ep));
+					tEP = mrs.epAt(ep.getOrdinal());
 
 					//mrs.keepDependentEPfromVerbEP(verbEP);
 					mrs.doDecomposition(new HashSet<EP>(Arrays.asList(tEP)), null, true, true);
@@ -57,7 +57,7 @@ public class SubordinateDecomposer extends MrsDecomposer {
 						if (label==null) continue;
 
 						MRS subMrs = new MRS(mrs);
-						EP subEP = subMrs.getEps().get(mrs.getEps().indexOf(ep));
+						EP subEP = subMrs.epAt(ep.getOrdinal());
 
 						//subMrs.keepDependentEPbyLabel(label, subEP);
 						subMrs.doDecompositionByLabel(label, subEP, true, true);
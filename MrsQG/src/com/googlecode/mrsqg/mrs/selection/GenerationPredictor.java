@@ -0,0 +1,307 @@
+package com.googlecode.mrsqg.mrs.selection;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import com.googlecode.mrsqg.mrs.EP;
+import com.googlecode.mrsqg.mrs.FvPair;
+import com.googlecode.mrsqg.mrs.HCONS;
+import com.googlecode.mrsqg.mrs.MRS;
+
+/**
+ * A generability predictor, which estimates how likely LKB generates
+ * from an MRS before it's sent to LKB.
+ * <p>
+ * It's a logistic regression over binary features of the MRS: EP predicates,
+ * unknown-word predicates, the shape of HCONS, the sentence type and which
+ * decomposers the MRS comes from. The model is trained from an outcome log,
+ * which {@link #logOutcome(MRS, boolean)} writes in the pipeline, one line per
+ * MRS: 1 or 0 (generated or not), a tab, then the features separated by spaces.
+ * <p>
+ * Usage: GenerationPredictor outcome.log model.txt [epochs]
+ * <p>
+ * Unlike {@link PreSelector}, which calls LKB to find out, it costs almost
+ * nothing, so MRS which are very unlikely to generate are skipped instead.
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class GenerationPredictor {
+
+	private static Logger log = Logger.getLogger(GenerationPredictor.class);
+
+	public static final String BIAS = "bias";
+
+	/** feature weights, the bias included */
+	private HashMap<String, Double> weights = new HashMap<String, Double>();
+
+	/** MRS scoring below this are skipped */
+	private double threshold = 0.05;
+
+	/** where to log generation outcomes, or null */
+	private BufferedWriter outcomeLog = null;
+
+	private int predicted = 0;
+	private int skipped = 0;
+
+	public double getThreshold() {return threshold;}
+	public void setThreshold(double t) {threshold = t;}
+	public int getPredicted() {return predicted;}
+	public int getSkipped() {return skipped;}
+	/** @return whether a model is loaded or trained */
+	public boolean hasModel() {return weights.size() != 0;}
+
+	/**
+	 * Extract the features of an MRS.
+	 * @param mrs an MRS
+	 * @return a list of features without duplicates
+	 */
+	public static ArrayList<String> getFeatures(MRS mrs) {
+		HashSet<String> set = new HashSet<String>();
+		set.add(BIAS);
+		if (mrs.getSentType() != null)
+			set.add("type:"+mrs.getSentType().replaceAll("\\s+", "_"));
+
+		HashSet<String> labels = new HashSet<String>();
+		HashSet<String> values = new HashSet<String>();
+		values.add(mrs.getLTOP());
+		int unknown = 0;
+		for (EP ep:mrs.getEps()) {
+			String pred = ep.getTypeName().toLowerCase();
+			set.add("pred:"+pred);
+			if (pred.equals("named_unk_rel")) {
+				// missed by changeFromUnkToNamed()
+				unknown++;
+				set.add("unk:named");
+			} else if (pred.endsWith("_unknown_rel")) {
+				// "_foo/nn_u_unknown_rel", or "_foo_n_unknown_rel" after normalizeUnknownWords()
+				unknown++;
+				set.add("unk:word");
+			}
+			labels.add(ep.getLabel());
+			for (FvPair p:ep.getFvpair()) {
+				if (p.getValue() != null) values.add(p.getValue());
+			}
+		}
+		set.add("unk:n="+bucket(unknown));
+		set.add("eps:n="+bucket(mrs.getEps().size()));
+
+		int loDangling = 0, hiDangling = 0;
+		for (HCONS h:mrs.getHcons()) {
+			set.add("hcons:"+h.getRel());
+			if (h.getLoVar() != null && !labels.contains(h.getLo())) loDangling++;
+			if (h.getHiVar() != null && !values.contains(h.getHi())) hiDangling++;
+		}
+		set.add("hcons:n="+bucket(mrs.getHcons().size()));
+		if (loDangling > 0) set.add("hcons:lo-dangling="+bucket(loDangling));
+		if (hiDangling > 0) set.add("hcons:hi-dangling="+bucket(hiDangling));
+
+		if (mrs.getDecomposer() != null) {
+			for (String d:mrs.getDecomposer()) set.add("dec:"+d);
+			set.add("dec:n="+mrs.getDecomposer().size());
+		}
+
+		ArrayList<String> list = new ArrayList<String>(set);
+		Collections.sort(list);
+		return list;
+	}
+
+	/**
+	 * @return 0, 1, 2, 4, 8... the largest power of 2 not larger than n
+	 */
+	private static int bucket(int n) {
+		return n <= 0 ? 0 : Integer.highestOneBit(n);
+	}
+
+	private double score(Iterable<String> features) {
+		double sum = 0;
+		for (String f:features) {
+			Double w = weights.get(f);
+			if (w != null) sum += w;
+		}
+		return 1.0/(1.0+Math.exp(-sum));
+	}
+
+	/**
+	 * Predict how likely LKB generates from <code>mrs</code>.
+	 * @param mrs an MRS
+	 * @return a probability, 1.0 if there's no model
+	 */
+	public double predict(MRS mrs) {
+		if (!hasModel()) return 1.0;
+		return score(getFeatures(mrs));
+	}
+
+	/**
+	 * Whether <code>mrs</code> is so unlikely to generate that it
+	 * shouldn't be sent to LKB.
+	 * @param mrs an MRS
+	 * @return true if the predicted probability is below the threshold
+	 */
+	public synchronized boolean isDoomed(MRS mrs) {
+		if (!hasModel()) return false;
+		predicted++;
+		double p = predict(mrs);
+		if (p < threshold) {
+			skipped++;
+			log.info(String.format("Skipped by GenerationPredictor (%.3f): ", p)+mrs.getSentType());
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Log the features of every MRS sent to LKB and whether it generated
+	 * to <code>file</code>, which is appended.
+	 * @param file an outcome log file
+	 */
+	public void setOutcomeLog(String file) {
+		try {
+			outcomeLog = new BufferedWriter(new FileWriter(file, true));
+		} catch (IOException e) {
+			log.error("Error:", e);
+		}
+	}
+
+	/**
+	 * Log the generation outcome of <code>mrs</code>, if there's an outcome log.
+	 * @param mrs an MRS which was sent to LKB
+	 * @param success whether LKB generated from it
+	 */
+	public synchronized void logOutcome(MRS mrs, boolean success) {
+		if (outcomeLog == null) return;
+		StringBuilder sb = new StringBuilder();
+		sb.append(success ? '1' : '0').append('\t');
+		for (String f:getFeatures(mrs)) sb.append(f).append(' ');
+		try {
+			outcomeLog.write(sb.toString().trim());
+			outcomeLog.newLine();
+			outcomeLog.flush();
+		} catch (IOException e) {
+			log.error("Error:", e);
+		}
+	}
+
+	/**
+	 * Train the model with stochastic gradient descent on an outcome log.
+	 * @param file an outcome log file
+	 * @param epochs the number of passes over the data
+	 * @return the number of examples
+	 * @throws IOException
+	 */
+	public int train(String file, int epochs) throws IOException {
+		ArrayList<String[]> examples = new ArrayList<String[]>();
+		ArrayList<Boolean> outcomes = new ArrayList<Boolean>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		String line;
+		while ((line = in.readLine()) != null) {
+			int tab = line.indexOf('\t');
+			if (tab < 0) continue;
+			outcomes.add(line.charAt(0) == '1');
+			examples.add(line.substring(tab+1).trim().split(" "));
+		}
+		in.close();
+
+		weights.clear();
+		double rate = 0.1, lambda = 1e-4;
+		Random r = new Random(0);
+		int n = examples.size();
+		int[] order = new int[n];
+		for (int i=0; i<n; i++) order[i] = i;
+		for (int epoch=0; epoch<epochs; epoch++) {
+			for (int i=n-1; i>0; i--) {
+				int j = r.nextInt(i+1), t = order[i];
+				order[i] = order[j];
+				order[j] = t;
+			}
+			for (int i:order) {
+				String[] features = examples.get(i);
+				double y = outcomes.get(i) ? 1.0 : 0.0;
+				double g = y - score(Arrays.asList(features));
+				for (String f:features) {
+					Double w = weights.get(f);
+					double v = w == null ? 0.0 : w;
+					weights.put(f, v + rate*(g - lambda*v));
+				}
+			}
+			rate *= 0.9;
+		}
+
+		int correct = 0;
+		for (int i=0; i<n; i++) {
+			if ((score(Arrays.asList(examples.get(i))) >= 0.5) == outcomes.get(i)) correct++;
+		}
+		log.info("Trained on "+n+" examples, training accuracy: "+(n==0 ? 0 : (double)correct/n));
+		return n;
+	}
+
+	/**
+	 * Load a model saved by {@link #save(String)}.
+	 * @param file a model file
+	 * @throws IOException
+	 */
+	public void load(String file) throws IOException {
+		weights.clear();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		String line;
+		while ((line = in.readLine()) != null) {
+			int tab = line.lastIndexOf('\t');
+			if (line.startsWith("#") || tab < 0) continue;
+			weights.put(line.substring(0, tab), Double.parseDouble(line.substring(tab+1)));
+		}
+		in.close();
+		log.info("Loaded "+weights.size()+" feature weights from "+file);
+	}
+
+	/**
+	 * Save the model, one feature and its weight per line.
+	 * @param file a model file
+	 * @throws IOException
+	 */
+	public void save(String file) throws IOException {
+		ArrayList<String> features = new ArrayList<String>(weights.keySet());
+		Collections.sort(features);
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		out.write("# GenerationPredictor model: feature<TAB>weight");
+		out.newLine();
+		for (String f:features) {
+			out.write(f+"\t"+weights.get(f));
+			out.newLine();
+		}
+		out.close();
+	}
+
+	/**
+	 * Log how many MRS were skipped.
+	 */
+	public void logStats() {
+		if (hasModel())
+			log.info("GenerationPredictor skipped "+skipped+" of "+predicted+" MRS.");
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: GenerationPredictor outcome.log model.txt [epochs]");
+			return;
+		}
+		int epochs = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		GenerationPredictor p = new GenerationPredictor();
+		p.train(args[0], epochs);
+		p.save(args[1]);
+		for (Map.Entry<String, Double> e:p.weights.entrySet()) {
+			if (Math.abs(e.getValue()) > 1.0) log.info(e.getKey()+"\t"+e.getValue());
+		}
+	}
+}
@@ -1,15 +1,26 @@
 package com.googlecode.mrsqg.mrs.selection;
 
 import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
 
 import org.apache.log4j.Logger;
 
+import com.googlecode.mrsqg.mrs.GenerationResult;
 import com.googlecode.mrsqg.mrs.MRS;
 import com.googlecode.mrsqg.nlp.LKB;
 
 /**
  * An MRS selector for PET's output. Any parsed MRS that can't
  * generate through LKB is filtered out.
+ * <p>
+ * What LKB generates from every MRS is attached to it
+ * ({@link MRS#getGeneration()}), so the pipeline doesn't need to
+ * generate from it again. With more than one LKB and a thread pool, the
+ * MRS are generated in parallel, each LKB used by one thread at a time.
  *
  * @author Xuchen Yao
  *
@@ -19,22 +30,100 @@ public class PreSelector {
 
 	public static ArrayList<MRS> doIt (LKB lkb, ArrayList<MRS> origMrsList) {
 		if (lkb == null) return origMrsList;
+		ArrayList<LKB> generators = new ArrayList<LKB>(1);
+		generators.add(lkb);
+		return doIt(generators, origMrsList);
+	}
+
+	/**
+	 * Generate from every MRS in <code>origMrsList</code> with the first of
+	 * <code>generators</code> and select those which generate.
+	 * @param generators a list of LKB
+	 * @param origMrsList a list of MRS
+	 * @return the MRS which generate, in the same order, or null if none
+	 */
+	public static ArrayList<MRS> doIt (ArrayList<LKB> generators, ArrayList<MRS> origMrsList) {
+		return doIt(generators, origMrsList, null);
+	}
+
+	/**
+	 * Generate from every MRS in <code>origMrsList</code> with
+	 * <code>generators</code> and select those which generate.
+	 * @param generators a list of LKB, each is used by one thread at a time
+	 * @param origMrsList a list of MRS
+	 * @param pool a thread pool to generate in, together with this thread,
+	 * or null to generate in this thread with the first LKB only
+	 * @return the MRS which generate, in the same order, or null if none
+	 */
+	public static ArrayList<MRS> doIt (ArrayList<LKB> generators, ArrayList<MRS> origMrsList,
+			ExecutorService pool) {
+		if (generators == null || generators.size() == 0) return origMrsList;
 		if (origMrsList == null) return null;
 		ArrayList<MRS> list = new ArrayList<MRS>();
 
 		log.info("Entering PreSelector... Original MRS list size: "+origMrsList.size());
-		String mrx;
 		for (MRS m:origMrsList) {
 			// generate from original sentence
 			m.changeFromUnkToNamed();
-			mrx = m.toMRXstring();
-			lkb.sendMrxToGen(mrx);
-			ArrayList<String> genSents = lkb.getGenSentences();
-			if (genSents != null) list.add(m);
+		}
+
+		if (pool == null || generators.size() == 1 || origMrsList.size() == 1) {
+			for (MRS m:origMrsList) {
+				generate(generators.get(0), m);
+			}
+		} else {
+			final BlockingQueue<LKB> idle = new ArrayBlockingQueue<LKB>(generators.size(), false, generators);
+			ArrayList<FutureTask<GenerationResult>> tasks = new ArrayList<FutureTask<GenerationResult>>();
+			for (final MRS m:origMrsList) {
+				FutureTask<GenerationResult> t = new FutureTask<GenerationResult>(new Callable<GenerationResult>() {
+					public GenerationResult call() throws InterruptedException {
+						LKB lkb = idle.take();
+						try {
+							return generate(lkb, m);
+						} finally {
+							idle.put(lkb);
+						}
+					}
+				});
+				pool.execute(t);
+				tasks.add(t);
+			}
+			for (FutureTask<GenerationResult> t:tasks) {
+				// does nothing if the pool has started it
+				t.run();
+				try {
+					t.get();
+				} catch (Exception e) {
+					log.error("Error:", e);
+				}
+			}
+		}
+
+		for (MRS m:origMrsList) {
+			if (m.getGeneration() != null && m.getGeneration().isSuccess()) list.add(m);
 		}
 
 		log.info("Exiting PreSelector... Selected MRS list size: "+list.size());
 		return list.size()==0 ? null : list;
 	}
 
+	/**
+	 * Generate from <code>m</code> with <code>lkb</code>: the generated
+	 * sentences and their MaxEnt scores, or the excerpts of *gen-chart* if
+	 * nothing is generated. The result is attached to <code>m</code>.
+	 * @param lkb an LKB, which must not be used by another thread meanwhile
+	 * @param m an MRS
+	 * @return the generation result
+	 */
+	public static GenerationResult generate (LKB lkb, MRS m) {
+		String mrx = m.toMRXstring();
+		ArrayList<String> genSents = lkb.doGeneration(mrx);
+		double[] scores = lkb.getMaxEntScores();
+		ArrayList<String> failed = null;
+		if (genSents == null) failed = lkb.getFailedGenSentences();
+		GenerationResult g = new GenerationResult(mrx, genSents, failed, scores);
+		m.setGeneration(g);
+		return g;
+	}
+
 }
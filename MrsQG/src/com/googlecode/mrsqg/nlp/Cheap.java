@@ -12,6 +12,7 @@ import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
 
 import com.googlecode.mrsqg.mrs.MRS;
+import com.googlecode.mrsqg.mrs.MrxParser;
 
 /**
  * Java wrapper code for the <code>cheap</code> parser.
@@ -136,6 +137,31 @@ public class Cheap {
 	 * @return an ArrayList<String> with each member containing a <mrs> element
 	 */
 	public ArrayList<String> getParsedMrxString () {
+		String output = getParsedOutput();
+		if (output == null) return null;
+
+		return MRS.getMrxStringsFromCheap(output);
+	}
+
+	/**
+	 * Retrieve a list of MRS objects from the parsing result. All &lt;mrs&gt;
+	 * elements are parsed from the cheap output in one pass.
+	 *
+	 * @return an ArrayList<MRS> with each member containing an MRS object, or null if none
+	 *
+	 */
+	public ArrayList<MRS> getParsedMRSlist () {
+		String output = getParsedOutput();
+		if (output == null) return null;
+
+		return new MrxParser().parseAll(output);
+	}
+
+	/**
+	 * Retrieve the raw output of cheap.
+	 * @return the output, or null if cheap failed
+	 */
+	private String getParsedOutput () {
 		if (!success) {
 			log.fatal("cheap is not working properly!");
 			return null;
@@ -149,29 +175,9 @@ public class Cheap {
 
 			result = getError();
 			retrieved = true;
-			if (result==null) return null;
-		}
-
-		return MRS.getMrxStringsFromCheap(result);
-	}
-
-	/**
-	 * Retrieve a list of MRS objects from the parsing result.
-	 *
-	 * @return an ArrayList<MRS> with each member containing an MRS object, or null if none
-	 *
-	 */
-	public ArrayList<MRS> getParsedMRSlist () {
-		ArrayList<String> mrxList = getParsedMrxString();
-		if (mrxList == null || mrxList.size()==0) return null;
-		ArrayList<MRS> list = new ArrayList<MRS> ();
-		for (String s:mrxList) {
-			MRS m = new MRS();
-			m.parseString(s);
-			list.add(m);
 		}
 
-		return list.size()==0?null:list;
+		return result;
 	}
 
 	/**
@@ -0,0 +1,403 @@
+package com.googlecode.mrsqg.nlp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import org.apache.log4j.Logger;
+
+import com.googlecode.mrsqg.util.FileUtils;
+import com.googlecode.mrsqg.util.HashDictionary;
+
+/**
+ * <p>Tags a token sequence with all gazetteer lists at once.</p>
+ *
+ * <p>The entries of all lists are compiled into one Aho-Corasick automaton
+ * over token IDs (one for case-sensitive lists and one for case-insensitive
+ * lists), so a sentence is scanned once from left to right for all lists,
+ * instead of once per list with a dictionary lookup for every span.</p>
+ *
+ * <p>The result is identical to calling
+ * {@link RegExMatcher#markAllContained(String[], HashDictionary)} for every
+ * list: per list, the longest match starting at the leftmost position is
+ * taken, a match has at most <code>getMaxTokens()</code> tokens of the list,
+ * and every token of a match has to be a token of the list.</p>
+ *
+ * <p>The compiled tagger is serializable, so it's only compiled when the lists
+ * change (see {@link #load(String[], File)}).</p>
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class GazetteerTagger implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static Logger log = Logger.getLogger(GazetteerTagger.class);
+
+	/** file names of the lists */
+	private String[] lists;
+	/** maximum number of tokens of an entry, per list */
+	private int[] maxTokens;
+	/** identifies the list files the tagger was compiled from */
+	private String fingerprint;
+
+	/** entries of case-sensitive lists */
+	private Automaton cs;
+	/** entries of case-insensitive lists, in lower case */
+	private Automaton ci;
+
+	/**
+	 * Compile the lists.
+	 * @param lists file names of the lists, as given to {@link RegExMatcher#getDictionary(String)}
+	 */
+	public GazetteerTagger(String[] lists) {
+		this.lists = lists.clone();
+		this.maxTokens = new int[lists.length];
+		this.fingerprint = fingerprint(lists);
+		this.cs = new Automaton();
+		this.ci = new Automaton();
+		for (int i = 0; i < lists.length; i++) {
+			HashDictionary dict = RegExMatcher.getDictionary(lists[i]);
+			maxTokens[i] = dict.getMaxTokens();
+			Automaton a = dict.isCaseInsensitive() ? ci : cs;
+			Iterator<String> it = dict.getIterator();
+			while (it.hasNext()) a.add(it.next().split(" "), i);
+		}
+		cs.compile();
+		ci.compile();
+	}
+
+	/**
+	 * Load a compiled tagger from <code>file</code>, or compile the lists and
+	 * save the tagger to <code>file</code> if it doesn't exist or was compiled
+	 * from other lists.
+	 * @param lists file names of the lists
+	 * @param file a file for the compiled tagger
+	 * @return a tagger
+	 */
+	public static GazetteerTagger load(String[] lists, File file) {
+		if (file.exists()) {
+			try {
+				GazetteerTagger t = (GazetteerTagger) FileUtils.readSerialized(file);
+				if (Arrays.equals(t.lists, lists) && t.fingerprint.equals(fingerprint(lists)))
+					return t;
+			} catch (Exception e) {
+				log.warn("Could not read compiled lists from " + file + ", compiling them again", e);
+			}
+		}
+		GazetteerTagger t = new GazetteerTagger(lists);
+		try {
+			FileUtils.writeSerialized(t, file);
+		} catch (IOException e) {
+			log.warn("Could not save compiled lists to " + file, e);
+		}
+		return t;
+	}
+
+	/**
+	 * @return names, sizes and modification times of the list files
+	 */
+	private static String fingerprint(String[] lists) {
+		StringBuilder sb = new StringBuilder();
+		for (String list : lists) {
+			File f = new File(RegExMatcher.LIST_DIRECTORY + list);
+			sb.append(list).append(':').append(f.length()).append(':')
+				.append(f.lastModified()).append(';');
+		}
+		return sb.toString();
+	}
+
+	public String[] getLists() {
+		return lists;
+	}
+
+	/**
+	 * Mark all parts of a token sequence contained in each list.
+	 *
+	 * @param tokens the token sequence to be rooted through
+	 * @return marker arrays, one per list, as returned by
+	 *         {@link RegExMatcher#markAllContained(String[], HashDictionary)}
+	 */
+	public String[][] markAllContained(String[] tokens) {
+		String[][] markers = new String[lists.length][tokens.length];
+		for (String[] m : markers) Arrays.fill(m, RegExMatcher.OTHER);
+		if (tokens.length == 0) return markers;
+
+		// split tokens as the dictionaries do, remembering where tokens begin and end
+		ArrayList<String> parts = new ArrayList<String>();
+		ArrayList<Integer> partOfToken = new ArrayList<Integer>();
+		for (int i = 0; i < tokens.length; i++) {
+			for (String part : NETagger.tokenize(tokens[i])) {
+				parts.add(part);
+				partOfToken.add(i);
+			}
+		}
+		int nParts = parts.size();
+		int[] token = new int[nParts];
+		for (int p = 0; p < nParts; p++) token[p] = partOfToken.get(p);
+		boolean[] first = new boolean[nParts];
+		boolean[] last = new boolean[nParts];
+		for (int p = 0; p < nParts; p++) {
+			first[p] = p == 0 || token[p - 1] != token[p];
+			last[p] = p == nParts - 1 || token[p + 1] != token[p];
+		}
+
+		// matches as (list, start token, end token)
+		ArrayList<int[]> matches = new ArrayList<int[]>();
+		String[] lower = new String[tokens.length];
+		for (int i = 0; i < tokens.length; i++) lower[i] = tokens[i].toLowerCase();
+		cs.findAll(parts, tokens, token, first, last, false, matches);
+		ci.findAll(parts, lower, token, first, last, true, matches);
+
+		// per list, the longest of the leftmost matches, then go on after it
+		Collections.sort(matches, new Comparator<int[]>() {
+			public int compare(int[] a, int[] b) {
+				if (a[0] != b[0]) return a[0] - b[0];
+				if (a[1] != b[1]) return a[1] - b[1];
+				return b[2] - a[2];
+			}
+		});
+		int list = -1, next = 0;
+		for (int[] m : matches) {
+			if (m[0] != list) {
+				list = m[0];
+				next = 0;
+			}
+			if (m[1] < next || m[2] - m[1] >= maxTokens[list]) continue;
+			markers[list][m[1]] = RegExMatcher.START;
+			for (int i = m[1] + 1; i <= m[2]; i++) markers[list][i] = RegExMatcher.CONTINUE;
+			next = m[2] + 1;
+		}
+		return markers;
+	}
+
+	/**
+	 * An Aho-Corasick automaton over the tokens of list entries.
+	 */
+	private static class Automaton implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		/** the tokens of all entries, indexed by token ID */
+		private String[] vocabulary;
+		/** token -> ID, rebuilt after loading */
+		private transient HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		/** lists containing a token, sorted, from tokenListStart[id] to tokenListStart[id+1] */
+		private int[] tokenListStart;
+		private int[] tokenLists;
+
+		/** transitions: (state << 32 | token ID) -> state, in an open addressing table */
+		private long[] keys;
+		private int[] targets;
+		/** failure links */
+		private int[] fail;
+		/** the nearest state on the failure path (this one included) that ends an entry, or -1 */
+		private int[] output;
+		/** number of tokens on the path to each state */
+		private int[] depth;
+		/** lists having an entry ending at a state, from endStart[state] to endStart[state+1] */
+		private int[] endStart;
+		private int[] ends;
+
+		/* used while adding entries only */
+		private transient HashMap<Long, Integer> edges = new HashMap<Long, Integer>();
+		/** (token ID, state) of the edges from every state */
+		private transient ArrayList<ArrayList<int[]>> children = new ArrayList<ArrayList<int[]>>();
+		private transient ArrayList<Integer> depths = new ArrayList<Integer>();
+		private transient HashMap<Integer, ArrayList<Integer>> entryLists = new HashMap<Integer, ArrayList<Integer>>();
+		private transient ArrayList<ArrayList<Integer>> listsOfTokens = new ArrayList<ArrayList<Integer>>();
+
+		Automaton() {
+			children.add(new ArrayList<int[]>());
+			depths.add(0);
+		}
+
+		private int id(String token, boolean create) {
+			Integer id = ids.get(token);
+			if (id == null && create) {
+				id = ids.size();
+				ids.put(token, id);
+				listsOfTokens.add(new ArrayList<Integer>());
+			}
+			return id == null ? -1 : id;
+		}
+
+		void add(String[] entry, int list) {
+			int state = 0;
+			for (String token : entry) {
+				if (token.length() == 0) continue;
+				int id = id(token, true);
+				ArrayList<Integer> l = listsOfTokens.get(id);
+				if (l.isEmpty() || l.get(l.size() - 1) != list) l.add(list);
+				long key = ((long) state << 32) | id;
+				Integer next = edges.get(key);
+				if (next == null) {
+					next = children.size();
+					edges.put(key, next);
+					children.get(state).add(new int[]{id, next});
+					children.add(new ArrayList<int[]>());
+					depths.add(depths.get(state) + 1);
+				}
+				state = next;
+			}
+			if (state == 0) return;
+			ArrayList<Integer> l = entryLists.get(state);
+			if (l == null) {
+				l = new ArrayList<Integer>();
+				entryLists.put(state, l);
+			}
+			if (l.isEmpty() || l.get(l.size() - 1) != list) l.add(list);
+		}
+
+		void compile() {
+			int nStates = children.size();
+
+			vocabulary = new String[ids.size()];
+			for (String token : ids.keySet()) vocabulary[ids.get(token)] = token;
+			tokenListStart = new int[vocabulary.length + 1];
+			ArrayList<Integer> all = new ArrayList<Integer>();
+			for (int id = 0; id < vocabulary.length; id++) {
+				tokenListStart[id] = all.size();
+				all.addAll(listsOfTokens.get(id));
+			}
+			tokenListStart[vocabulary.length] = all.size();
+			tokenLists = toArray(all);
+
+			int size = Integer.highestOneBit(Math.max(edges.size(), 1) * 2) * 2;
+			keys = new long[size];
+			targets = new int[size];
+			Arrays.fill(targets, -1);
+			for (Long key : edges.keySet()) put(key, edges.get(key));
+
+			depth = new int[nStates];
+			endStart = new int[nStates + 1];
+			all.clear();
+			for (int s = 0; s < nStates; s++) {
+				depth[s] = depths.get(s);
+				endStart[s] = all.size();
+				if (entryLists.containsKey(s)) all.addAll(entryLists.get(s));
+			}
+			endStart[nStates] = all.size();
+			ends = toArray(all);
+
+			// failure and output links, breadth first
+			fail = new int[nStates];
+			output = new int[nStates];
+			output[0] = -1;
+			int[] queue = new int[nStates];
+			int head = 0, tail = 0;
+			queue[tail++] = 0;
+			while (head < tail) {
+				int s = queue[head++];
+				for (int[] edge : children.get(s)) {
+					int id = edge[0], child = edge[1];
+					if (s == 0) {
+						fail[child] = 0;
+					} else {
+						int f = fail[s];
+						int t;
+						while ((t = get(f, id)) < 0 && f != 0) f = fail[f];
+						fail[child] = t < 0 ? 0 : t;
+					}
+					output[child] = endStart[child + 1] > endStart[child] ? child : output[fail[child]];
+					queue[tail++] = child;
+				}
+			}
+
+			edges = null;
+			children = null;
+			depths = null;
+			entryLists = null;
+			listsOfTokens = null;
+		}
+
+		private static int[] toArray(ArrayList<Integer> l) {
+			int[] a = new int[l.size()];
+			for (int i = 0; i < a.length; i++) a[i] = l.get(i);
+			return a;
+		}
+
+		private static int hash(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+
+		private void put(long key, int target) {
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (targets[i] >= 0) i = (i + 1) & mask;
+			keys[i] = key;
+			targets[i] = target;
+		}
+
+		/** @return the state after token <code>id</code> from state <code>s</code>, or -1 */
+		private int get(int s, int id) {
+			if (id < 0) return -1;
+			long key = ((long) s << 32) | id;
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (targets[i] >= 0) {
+				if (keys[i] == key) return targets[i];
+				i = (i + 1) & mask;
+			}
+			return -1;
+		}
+
+		/** @return whether <code>token</code> is a token of an entry of <code>list</code> */
+		private boolean inList(String token, int list) {
+			Integer id = ids.get(token);
+			return id != null &&
+				Arrays.binarySearch(tokenLists, tokenListStart[id], tokenListStart[id + 1], list) >= 0;
+		}
+
+		/**
+		 * Find all entries which span whole tokens and whose tokens are all
+		 * tokens of their list.
+		 * @param parts the tokens split as the dictionaries do
+		 * @param tokens the original tokens (in lower case for case-insensitive lists)
+		 * @param token the original token of every part
+		 * @param first whether every part is the first of its token
+		 * @param last whether every part is the last of its token
+		 * @param lowerCase whether to look up parts in lower case
+		 * @param matches where to add (list, start token, end token)
+		 */
+		void findAll(ArrayList<String> parts, String[] tokens, int[] token,
+				boolean[] first, boolean[] last, boolean lowerCase, ArrayList<int[]> matches) {
+			if (vocabulary.length == 0) return;
+			int state = 0;
+			for (int p = 0; p < parts.size(); p++) {
+				String part = parts.get(p);
+				int id = id(lowerCase ? part.toLowerCase() : part, false);
+				int next;
+				while ((next = get(state, id)) < 0 && state != 0) state = fail[state];
+				state = next < 0 ? 0 : next;
+				if (!last[p]) continue;
+				for (int s = output[state]; s > 0; s = output[fail[s]]) {
+					int start = p - depth[s] + 1;
+					if (!first[start]) continue;
+					for (int e = endStart[s]; e < endStart[s + 1]; e++) {
+						int list = ends[e];
+						boolean all = true;
+						for (int t = token[start]; t <= token[p] && all; t++)
+							all = inList(tokens[t], list);
+						if (all) matches.add(new int[]{list, token[start], token[p]});
+					}
+				}
+			}
+		}
+
+		private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+			in.defaultReadObject();
+			ids = new HashMap<String, Integer>(vocabulary.length * 2);
+			for (int i = 0; i < vocabulary.length; i++) ids.put(vocabulary[i], i);
+		}
+	}
+}
@@ -109,6 +109,12 @@ public class NETagger {
 	/** Edit distance threshold for fuzzy-lookups in dictionaries. */
 	private static int fuzzyListLookupThreshold = 0;
 	
+	/** All lists compiled into one tagger, loaded on first use. */
+	private static GazetteerTagger gazetteer = null;
+	
+	/** File the compiled lists are saved to. */
+	private static final String GAZETTEER_FILE = "gazetteer.ser";
+	
 	static {
 		loadListTaggers("./res/nlp/netagger/lists/");
 	}
@@ -145,6 +151,21 @@ public class NETagger {
 		listNames = listNamesList.toArray(new String[listNamesList.size()]);
 	}
 	
+	/**
+	 * Returns the tagger for all lists, which is loaded from its compiled form
+	 * or compiled from the lists when it's first used.
+	 * 
+	 * @return the gazetteer tagger
+	 */
+	public static synchronized GazetteerTagger getGazetteerTagger() {
+		if (gazetteer == null) {
+			System.out.println("  ...loading compiled lists");
+			gazetteer = GazetteerTagger.load(lists,
+					new File(RegExMatcher.LIST_DIRECTORY, GAZETTEER_FILE));
+		}
+		return gazetteer;
+	}
+	
 	// =====================
 	// Pattern-based taggers
 	// =====================
@@ -190,6 +211,15 @@ public class NETagger {
 	private static String[] allPatternNames =
 		new String[patterns.length + 1 + quantityUnitPatterns.length];
 	
+	/** Taggers for the patterns, which share the joined sentence and skip hopeless windows. */
+	private static PatternTagger[] patternTaggers = new PatternTagger[0];
+	
+	/** Tagger for numbers. */
+	private static PatternTagger numberTagger = null;
+	
+	/** Taggers for the units of quantities. */
+	private static PatternTagger[] quantityUnitTaggers = new PatternTagger[0];
+	
 	static {
 		loadRegExTaggers("./res/nlp/netagger/patterns.lst");
 	}
@@ -304,6 +334,14 @@ public class NETagger {
 			e.printStackTrace();
 		}
 		
+		patternTaggers = new PatternTagger[patterns.length];
+		for (int i = 0; i < patterns.length; i++)
+			patternTaggers[i] = new PatternTagger(patterns[i], patternMaxTokens[i]);
+		numberTagger = new PatternTagger(RegExMatcher.NUMBER_PATTERN, 10);
+		quantityUnitTaggers = new PatternTagger[quantityUnitPatterns.length];
+		for (int i = 0; i < quantityUnitPatterns.length; i++)
+			quantityUnitTaggers[i] = new PatternTagger(quantityUnitPatterns[i], quantityUnitPatternMaxTokens[i]);
+		
 		allPatternNames = new String[patterns.length + 1 + quantityUnitPatterns.length];
 		for (int i = 0; i < patternNames.length; i++) allPatternNames[i] = patternNames[i];
 		allPatternNames[patternNames.length] = "NEnumber";
@@ -739,8 +777,34 @@ public class NETagger {
 	 * @return NEs per sentence and NE type
 	 */
 	// TODO only works with OpenNLP taggers, lists and patterns so far
-	@SuppressWarnings("unchecked")
 	public static String[][][] extractNes(String[][] sentences) {
+		return extractNes(sentences, startStanfordNes(sentences));
+	}
+	
+	/**
+	 * Starts tagging an array of tokenized sentences with the Stanford NE
+	 * tagger in the background, for {@link #extractNes(String[][], StanfordNeTagger.Batch)}.
+	 * 
+	 * @param sentences array of tokenized sentences
+	 * @return the Stanford NEs, available when they are tagged
+	 */
+	public static StanfordNeTagger.Batch startStanfordNes(String[][] sentences) {
+		String[] joined = new String[sentences.length];
+		for (int s = 0; s < sentences.length; s++)
+			joined[s] = StringUtils.concatWithSpaces(sentences[s]);
+		return StanfordNeTagger.extractNEsAsync(joined);
+	}
+	
+	/**
+	 * Extracts NEs from an array of tokenized sentences, with the Stanford
+	 * NEs being tagged already.
+	 * 
+	 * @param sentences array of tokenized sentences
+	 * @param stanford the Stanford NEs of the sentences, from {@link #startStanfordNes(String[][])}
+	 * @return NEs per sentence and NE type
+	 */
+	@SuppressWarnings("unchecked")
+	public static String[][][] extractNes(String[][] sentences, StanfordNeTagger.Batch stanford) {
 		String[][][] nes = new String[sentences.length][][];
 		
 		// initialize prevTokenMaps
@@ -793,14 +857,15 @@ public class NETagger {
 			regExTags[0] = new String[tokens.length];
 			for (int i = 0; i < tokens.length; i++) regExTags[0][i] = NameFinderME.OTHER;
 			
+			PatternTagger.Sentence sentence = new PatternTagger.Sentence(tokens);
 			for (int i = 1; i < patterns.length; i++)
-				regExTags[i] = RegExMatcher.markAllMatches(tokens, patterns[i], patternMaxTokens[i]);
+				regExTags[i] = patternTaggers[i].markAllMatches(sentence);
 			
-			String[] numberMarkers = RegExMatcher.extractNumbers(tokens);
+			String[] numberMarkers = numberTagger.markAllMatches(sentence);
 			regExTags[patterns.length] = numberMarkers;
 			
 			for (int i = 0; i < quantityUnitPatterns.length; i++)
-				regExTags[patterns.length + i + 1] = RegExMatcher.extractQuantities(tokens, numberMarkers, quantityUnitPatterns[i], quantityUnitPatternMaxTokens[i]);
+				regExTags[patterns.length + i + 1] = quantityUnitTaggers[i].extractQuantities(sentence, numberMarkers);
 			
 			for (int i = 0; i < allPatternNames.length; i++) {
 				ArrayList<String> neList = new ArrayList<String>();
@@ -825,10 +890,15 @@ public class NETagger {
 		        nes[s][finders.length + i] = neList.toArray(new String[neList.size()]);
 			}
 			
-			// apply lists
-			String[][] listTags = new String[listNames.length][];
-			for (int i = 0; i < lists.length; i++)
-				listTags[i] = RegExMatcher.markAllContained(tokens, RegExMatcher.getDictionary(lists[i]), fuzzyListLookupThreshold);
+			// apply lists, all at once unless lookups are fuzzy
+			String[][] listTags;
+			if (fuzzyListLookupThreshold == 0) {
+				listTags = getGazetteerTagger().markAllContained(tokens);
+			} else {
+				listTags = new String[listNames.length][];
+				for (int i = 0; i < lists.length; i++)
+					listTags[i] = RegExMatcher.markAllContained(tokens, RegExMatcher.getDictionary(lists[i]), fuzzyListLookupThreshold);
+			}
 			
 			for (int i = 0; i < lists.length; i++) {
 				ArrayList<String> neList = new ArrayList<String>();
@@ -854,7 +924,7 @@ public class NETagger {
 			}
 			
 			//	apply stanford tagger
-			HashMap <String, String[]> allStanfordNEs = StanfordNeTagger.extractNEs(StringUtils.concatWithSpaces(sentences[s]));
+			HashMap <String, String[]> allStanfordNEs = stanford.get(s);
 			for (int i = 0; i < stanfordNames.length; i++) {
 				String[] stanfordNEs = allStanfordNEs.get(stanfordNames[i]);
 				if (stanfordNEs == null) stanfordNEs = new String[0];
@@ -1,6 +1,7 @@
 package com.googlecode.mrsqg.nlp;
 
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -9,21 +10,28 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import com.googlecode.mrsqg.util.RegexConverter;
 import com.googlecode.mrsqg.util.StringUtils;
 
+import gnu.trove.TObjectIntProcedure;
+import opennlp.maxent.Context;
+import opennlp.maxent.GISModel;
+import opennlp.maxent.TObjectIndexHashMap;
+import opennlp.maxent.io.SuffixSensitiveGISModelReader;
+import opennlp.tools.chunker.ChunkerME;
 import opennlp.tools.coref.LinkerMode;
 import opennlp.tools.coref.mention.DefaultParse;
 import opennlp.tools.coref.mention.Mention;
-import opennlp.tools.lang.english.PosTagger;
-import opennlp.tools.lang.english.SentenceDetector;
 import opennlp.tools.lang.english.Tokenizer;
 import opennlp.tools.lang.english.TreebankChunker;
 import opennlp.tools.lang.english.TreebankLinker;
 import opennlp.tools.lang.english.TreebankParser;
 import opennlp.tools.parser.Parse;
 import opennlp.tools.parser.ParserME;
+import opennlp.tools.postag.DefaultPOSContextGenerator;
 import opennlp.tools.postag.POSDictionary;
+import opennlp.tools.postag.POSTaggerME;
+import opennlp.tools.sentdetect.SentenceDetectorME;
+import opennlp.tools.tokenize.TokenizerME;
 
 /**
  * <p>This class provides a common interface to the
@@ -40,6 +48,12 @@ import opennlp.tools.postag.POSDictionary;
  * </ul>
  * </p>
  *
+ * <p>The sentence detector, tokenizer, POS tagger and chunker may be used by
+ * any number of threads at the same time. Their models are loaded once, and
+ * every thread decodes with its own annotators, whose models share the
+ * parameters of the loaded ones. The parser and the linker are used by one
+ * thread at a time.</p>
+ *
  * @author Nico Schlaefer
  * @version 2006-05-20
  */
@@ -56,19 +70,90 @@ public class OpenNLP {
 		"(\\(|\\[|\\{) "			+ "|" +  // ( ... ) -> (... )
 		" (\\.|,|:|\\)|\\]|\\})"	+ ")");  // Prof . -> Prof.
 
-	/** Sentence detector from the OpenNLP project. */
-	private static SentenceDetector sentenceDetector;
-	/** Tokenizer from the OpenNLP project. */
-	private static Tokenizer tokenizer;
-	/** Part of speech tagger from the OpenNLP project. */
-	private static PosTagger tagger;
-	/** Chunker from the OpenNLP project. */
-	private static TreebankChunker chunker;
+	/** Model of the sentence detector from the OpenNLP project. */
+	private static GISModel sentenceDetectorModel;
+	/** Model of the tokenizer from the OpenNLP project. */
+	private static GISModel tokenizerModel;
+	/** Model of the part of speech tagger from the OpenNLP project. */
+	private static GISModel taggerModel;
+	/** Tag dictionary of the part of speech tagger. */
+	private static POSDictionary tagDictionary;
+	/** Model of the chunker from the OpenNLP project. */
+	private static GISModel chunkerModel;
+	/** Incremented whenever a model is created, so threads renew their annotators. */
+	private static volatile int generation = 0;
 	/** Full parser from the OpenNLP project. */
 	private static ParserME parser;
 	/** Linker from the OpenNLP project. */
 	private static TreebankLinker linker;
 
+	/**
+	 * The annotators of one thread. A GISModel keeps state while evaluating,
+	 * so each annotator has a copy of the loaded model.
+	 */
+	private static class Annotators {
+		int generation = -1;
+		SentenceDetectorME sentenceDetector;
+		TokenizerME tokenizer;
+		POSTaggerME tagger;
+		ChunkerME chunker;
+	}
+
+	private static ThreadLocal<Annotators> annotators = new ThreadLocal<Annotators>() {
+		protected Annotators initialValue() {
+			return new Annotators();
+		}
+	};
+
+	/**
+	 * Gets the annotators of the current thread, creating them from the
+	 * loaded models if there are none yet or the models have changed.
+	 */
+	private static Annotators getAnnotators() {
+		Annotators a = annotators.get();
+		if (a.generation != generation) {
+			synchronized (OpenNLP.class) {
+				a.sentenceDetector = (sentenceDetectorModel != null)
+					? new SentenceDetectorME(copy(sentenceDetectorModel)) : null;
+				try {
+					a.tokenizer = (tokenizerModel != null)
+						? new Tokenizer(copy(tokenizerModel)) : null;
+				} catch (IOException e) {
+					a.tokenizer = null;
+				}
+				a.tagger = (taggerModel != null)
+					? new POSTaggerME(copy(taggerModel), new DefaultPOSContextGenerator(null), tagDictionary)
+					: null;
+				a.chunker = (chunkerModel != null)
+					? new TreebankChunker(copy(chunkerModel)) : null;
+				a.generation = generation;
+			}
+		}
+		return a;
+	}
+
+	/**
+	 * Copies a model, sharing its parameters, outcomes and predicate index.
+	 */
+	private static GISModel copy(GISModel model) {
+		Object[] data = model.getDataStructures();
+		Context[] params = (Context[]) data[0];
+		TObjectIndexHashMap pmap = (TObjectIndexHashMap) data[1];
+		final String[] predLabels = new String[params.length];
+		pmap.forEachEntry(new TObjectIntProcedure() {
+			public boolean execute(Object label, int index) {
+				predLabels[index] = (String) label;
+				return true;
+			}
+		});
+		return new GISModel(params, predLabels, (String[]) data[2],
+				((Integer) data[3]).intValue(), ((Double) data[4]).doubleValue());
+	}
+
+	private static GISModel readModel(String model) throws IOException {
+		return new SuffixSensitiveGISModelReader(new File(model)).getModel();
+	}
+
 	/**
 	 * Creates the sentence detector from a model file.
 	 *
@@ -77,7 +162,11 @@ public class OpenNLP {
 	 */
 	public static boolean createSentenceDetector(String model) {
 		try {
-			sentenceDetector = new SentenceDetector(model);
+			GISModel m = readModel(model);
+			synchronized (OpenNLP.class) {
+				sentenceDetectorModel = m;
+				generation++;
+			}
 		} catch (IOException e) {
 			return false;
 		}
@@ -93,7 +182,11 @@ public class OpenNLP {
 	 */
 	public static boolean createTokenizer(String model) {
 		try {
-			tokenizer = new Tokenizer(model);
+			GISModel m = readModel(model);
+			synchronized (OpenNLP.class) {
+				tokenizerModel = m;
+				generation++;
+			}
 		} catch (IOException e) {
 			return false;
 		}
@@ -112,7 +205,13 @@ public class OpenNLP {
 	public static boolean createPosTagger(String model, String tagdict) {
 		try {
 			// create POS tagger, use case sensitive tag dictionary
-			tagger = new PosTagger(model, new POSDictionary(tagdict, true));
+			GISModel m = readModel(model);
+			POSDictionary d = new POSDictionary(tagdict, true);
+			synchronized (OpenNLP.class) {
+				taggerModel = m;
+				tagDictionary = d;
+				generation++;
+			}
 		} catch (IOException e) {
 			return false;
 		}
@@ -128,7 +227,11 @@ public class OpenNLP {
 	 */
 	public static boolean createChunker(String model) {
 		try {
-			chunker = new TreebankChunker(model);
+			GISModel m = readModel(model);
+			synchronized (OpenNLP.class) {
+				chunkerModel = m;
+				generation++;
+			}
 		} catch (IOException e) {
 			return false;
 		}
@@ -178,6 +281,7 @@ public class OpenNLP {
 	 * 		   sentence detector is not initialized
 	 */
 	public static String[] sentDetect(String text) {
+		SentenceDetectorME sentenceDetector = getAnnotators().sentenceDetector;
 		return (sentenceDetector != null)
 			? sentenceDetector.sentDetect(text)
 			: null;
@@ -191,6 +295,7 @@ public class OpenNLP {
 	 * 		   initialized
 	 */
 	public static String[] tokenize(String text) {
+		TokenizerME tokenizer = getAnnotators().tokenizer;
 		return (tokenizer != null) ? tokenizer.tokenize(text) : null;
 		/*
 		 * X. Yao. 2010-08-14. Double quotes are sometimes not correctly tokenized.
@@ -266,21 +371,157 @@ public class OpenNLP {
 	 */
 	public static String untokenize(String text, String original) {
 		// try with boundary matchers
-		String regex = RegexConverter.strToRegexWithBounds(text);
-		regex = regex.replace(" ", "\\s*+");
-		Matcher m = Pattern.compile(regex).matcher(original);
-		if (m.find()) return m.group(0);
+		String untokenized = find(text, original, true);
+		if (untokenized != null) return untokenized;
 
 		// try without boundary matchers
-		regex = RegexConverter.strToRegex(text);
-		regex = regex.replace(" ", "\\s*+");
-		m = Pattern.compile(regex).matcher(original);
-		if (m.find()) return m.group(0);
+		untokenized = find(text, original, false);
+		if (untokenized != null) return untokenized;
 
 		// untokenization failed
 		return text;
 	}
 
+	/** Matches a word boundary. */
+	private static final Pattern WORD_BOUNDARY = Pattern.compile("\\b");
+
+	/**
+	 * Finds the first occurrence of a text in the original string, where a
+	 * blank in the text matches any whitespace or none. This is what the
+	 * regular expression <code>RegexConverter.strToRegex(text)</code> with
+	 * blanks replaced by <code>\\s*+</code> finds, without compiling it.
+	 *
+	 * @param text text to find
+	 * @param original string to search
+	 * @param bounds whether an occurrence must start (end) at a word boundary
+	 * 		  if the text starts (ends) with a word character, as with
+	 * 		  <code>RegexConverter.strToRegexWithBounds()</code>
+	 * @return the occurrence or <code>null</code>, if there is none
+	 */
+	private static String find(String text, String original, boolean bounds) {
+		String[] parts = text.split(" ", -1);
+		boolean startBound = bounds && text.length() > 0 && isWordChar(text.charAt(0));
+		boolean endBound = bounds && text.length() > 0 && isWordChar(text.charAt(text.length() - 1));
+		Matcher boundary = null;
+		if (startBound || endBound) {
+			boundary = WORD_BOUNDARY.matcher(original);
+			boundary.useTransparentBounds(true);
+		}
+
+		// an occurrence starts with an occurrence of the first part
+		for (int start = original.indexOf(parts[0]); start >= 0;
+				start = original.indexOf(parts[0], start + 1)) {
+			int end = matchAt(parts, original, start);
+			if (end >= 0 &&
+					(!startBound || isBoundary(boundary, original, start)) &&
+					(!endBound || isBoundary(boundary, original, end)))
+				return original.substring(start, end);
+			if (start == original.length()) break;
+		}
+		return null;
+	}
+
+	/**
+	 * Matches the parts of a text, separated by any whitespace, at a
+	 * position of the original string.
+	 *
+	 * @return the end of the match or -1, if there is none
+	 */
+	private static int matchAt(String[] parts, String original, int start) {
+		int pos = start;
+		for (int i = 0; i < parts.length; i++) {
+			if (i > 0)
+				while (pos < original.length() && isWhitespace(original.charAt(pos))) pos++;
+			if (!original.startsWith(parts[i], pos)) return -1;
+			pos += parts[i].length();
+		}
+		return pos;
+	}
+
+	private static boolean isBoundary(Matcher boundary, String original, int pos) {
+		boundary.region(pos, original.length());
+		return boundary.lookingAt();
+	}
+
+	/** whether a character is matched by <code>\\w</code> */
+	private static boolean isWordChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+			(c >= '0' && c <= '9') || c == '_';
+	}
+
+	/** whether a character is matched by <code>\\s</code> */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	/**
+	 * The character offsets of the tokens of a sentence in the original
+	 * sentence, so a span of tokens can be untokenized by taking it from the
+	 * original.
+	 */
+	public static class Alignment {
+		private String original;
+		/** the start and end of each token in the original, -1 if it is not found */
+		private int[] starts;
+		private int[] ends;
+		/** whether only whitespace is between a token and the next one */
+		private boolean[] adjacent;
+
+		private Alignment(String original, int[] starts, int[] ends, boolean[] adjacent) {
+			this.original = original;
+			this.starts = starts;
+			this.ends = ends;
+			this.adjacent = adjacent;
+		}
+
+		/**
+		 * Untokenizes a span of tokens.
+		 *
+		 * @param from the first token
+		 * @param to the token after the last one
+		 * @return the span as it is in the original sentence or
+		 * 		   <code>null</code>, if it is not aligned
+		 */
+		public String untokenize(int from, int to) {
+			if (starts[from] < 0) return null;
+			for (int i = from; i < to - 1; i++)
+				if (!adjacent[i]) return null;
+			return original.substring(starts[from], ends[to - 1]);
+		}
+	}
+
+	/**
+	 * Aligns the tokens of a sentence with the original sentence, each token
+	 * at its first occurrence after the previous one.
+	 *
+	 * @param tokens tokens of the sentence, such as from <code>tokenize()</code>
+	 * @param original the original sentence
+	 * @return the alignment
+	 */
+	public static Alignment align(String[] tokens, String original) {
+		int[] starts = new int[tokens.length];
+		int[] ends = new int[tokens.length];
+		boolean[] adjacent = new boolean[tokens.length];
+		int pos = 0;
+		for (int i = 0; i < tokens.length; i++) {
+			// the tokenizer may have changed a token, then it is not found
+			int start = original.indexOf(tokens[i], pos);
+			starts[i] = start;
+			ends[i] = start < 0 ? -1 : start + tokens[i].length();
+			if (start >= 0) pos = ends[i];
+		}
+		for (int i = 0; i < tokens.length - 1; i++) {
+			if (starts[i] < 0 || starts[i + 1] < 0) continue;
+			adjacent[i] = true;
+			for (int c = ends[i]; c < starts[i + 1]; c++)
+				if (!isWhitespace(original.charAt(c))) {
+					adjacent[i] = false;
+					break;
+				}
+		}
+		return new Alignment(original, starts, ends, adjacent);
+	}
+
 	/**
 	 * Assigns POS tags to a sentence of space-delimited tokens.
 	 *
@@ -289,6 +530,7 @@ public class OpenNLP {
 	 * 		   initialized
 	 */
 	public static String tagPos(String sentence) {
+		POSTaggerME tagger = getAnnotators().tagger;
 		return (tagger != null) ? tagger.tag(sentence) : null;
 	}
 
@@ -300,6 +542,7 @@ public class OpenNLP {
 	 * 		   initialized
 	 */
 	public static String[] tagPos(String[] sentence) {
+		POSTaggerME tagger = getAnnotators().tagger;
 		return (tagger != null) ? tagger.tag(sentence) : null;
 	}
 
@@ -312,6 +555,7 @@ public class OpenNLP {
 	 * 		   initialized
 	 */
 	public static String[] tagChunks(String[] tokens, String[] pos) {
+		ChunkerME chunker = getAnnotators().chunker;
 		return (chunker != null) ? chunker.chunk(tokens, pos) : null;
 	}
 
@@ -322,7 +566,7 @@ public class OpenNLP {
 	 * @return parse of the sentence or <code>null</code>, if the parser is not
 	 * 		   initialized or the sentence is empty
 	 */
-	public static Parse parse(String sentence) {
+	public static synchronized Parse parse(String sentence) {
 		return (parser != null && sentence.length() > 0)
 			// only get first parse (that is most likely to be correct)
 			? TreebankParser.parseLine(sentence, parser, 1)[0]
@@ -334,7 +578,7 @@ public class OpenNLP {
 	 *
 	 * @param parses array of full parses of sentences
 	 */
-	public static void link(Parse[] parses) {
+	public static synchronized void link(Parse[] parses) {
 		int sentenceNumber = 0;
 		List<Mention> document = new ArrayList<Mention>();
 
@@ -0,0 +1,520 @@
+package com.googlecode.mrsqg.nlp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Marks the token windows of a sentence which match a regular expression,
+ * with the same results as {@link RegExMatcher#markAllMatches(String[], Pattern, int)}
+ * and {@link RegExMatcher#extractQuantities(String[], String[], Pattern, int)}.</p>
+ *
+ * <p>The tokens of a sentence are joined once into a {@link Sentence}, which
+ * all patterns share. A window is matched as a region of the joined sentence,
+ * so no string is built per window.</p>
+ *
+ * <p>Most windows never reach the regular expression. Every pattern is
+ * analyzed once for literals of which any match must contain one (e.g. "mph"
+ * or "miles per hour"). A window containing none of them can't match, and a
+ * sentence containing none of them is skipped altogether.</p>
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class PatternTagger {
+
+	/** Literal sets with more strings than this are not tracked. */
+	private static final int MAX_LITERALS = 16;
+
+	/**
+	 * A sentence as tokens joined by single spaces, with the character
+	 * offsets of each token.
+	 */
+	public static class Sentence {
+		private String[] tokens;
+		private String text;
+		/** the text in lower case, character by character, so offsets are kept */
+		private String lower = null;
+		private int[] starts;
+		private int[] ends;
+
+		public Sentence(String[] tokens) {
+			this.tokens = tokens;
+			this.starts = new int[tokens.length];
+			this.ends = new int[tokens.length];
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < tokens.length; i++) {
+				if (i > 0) sb.append(' ');
+				starts[i] = sb.length();
+				sb.append(tokens[i]);
+				ends[i] = sb.length();
+			}
+			this.text = sb.toString();
+		}
+
+		public String[] getTokens() {return tokens;}
+		public String getText() {return text;}
+
+		private String getLowerCase() {
+			if (lower == null) {
+				char[] chars = text.toCharArray();
+				for (int i = 0; i < chars.length; i++) chars[i] = Character.toLowerCase(chars[i]);
+				lower = new String(chars);
+			}
+			return lower;
+		}
+	}
+
+	private Pattern pattern;
+	private int maxTokens;
+	/** any match contains one of these, or null if nothing is known */
+	private String[] literals;
+	private boolean caseInsensitive;
+
+	/**
+	 * @param pattern a regular expression
+	 * @param maxTokens the maximum number of tokens a match may contain (0 means no limit)
+	 */
+	public PatternTagger(Pattern pattern, int maxTokens) {
+		this.pattern = pattern;
+		this.maxTokens = maxTokens;
+		this.caseInsensitive = (pattern.flags() & Pattern.CASE_INSENSITIVE) != 0;
+		this.literals = requiredLiterals(pattern);
+	}
+
+	public Pattern getPattern() {return pattern;}
+
+	/**
+	 * @return literals of which any match contains one, or null if unknown
+	 */
+	public String[] getLiterals() {return literals;}
+
+	/**
+	 * For every character offset x of the text, the smallest end offset of a
+	 * literal occurring at x or later, so a region [a, b) contains a
+	 * literal iff <code>result[a] &lt;= b</code>.
+	 * @return null if no literals are known, an array of Integer.MAX_VALUE if
+	 *         there are none in the text
+	 */
+	private int[] literalEnds(Sentence s) {
+		if (literals == null) return null;
+		String text = caseInsensitive ? s.getLowerCase() : s.text;
+		int[] ends = new int[text.length() + 1];
+		Arrays.fill(ends, Integer.MAX_VALUE);
+		boolean found = false;
+		for (String literal : literals) {
+			for (int p = text.indexOf(literal); p >= 0; p = text.indexOf(literal, p + 1)) {
+				int end = p + literal.length();
+				if (end < ends[p]) ends[p] = end;
+				found = true;
+			}
+		}
+		if (!found) return ends;
+		for (int x = text.length() - 1; x >= 0; x--)
+			if (ends[x + 1] < ends[x]) ends[x] = ends[x + 1];
+		return ends;
+	}
+
+	/**
+	 * Mark all parts of a token sequence that match the pattern.
+	 * @param s a sentence
+	 * @return an array of marker Strings, as returned by
+	 *         {@link RegExMatcher#markAllMatches(String[], Pattern, int)}
+	 */
+	public String[] markAllMatches(Sentence s) {
+		int n = s.tokens.length;
+		String[] markers = new String[n];
+		Arrays.fill(markers, RegExMatcher.OTHER);
+		int[] literalEnds = literalEnds(s);
+		if (literalEnds != null && (n == 0 || literalEnds[0] == Integer.MAX_VALUE)) return markers;
+		Matcher m = pattern.matcher(s.text);
+		int limit = maxTokens == 0 ? n : maxTokens;
+
+		int start = 0;
+		while (start < n) {
+			int last = Math.min(n, start + limit) - 1;
+			int matched = -1;
+			int from = s.starts[start];
+			if (literalEnds == null || literalEnds[from] <= s.ends[last]) {
+				for (int end = start; end <= last; end++) {
+					if (literalEnds != null && literalEnds[from] > s.ends[end]) continue;
+					m.region(from, s.ends[end]);
+					if (m.matches()) matched = end;
+				}
+			}
+			if (matched >= 0) {
+				markers[start] = RegExMatcher.START;
+				for (int i = start + 1; i <= matched; i++) markers[i] = RegExMatcher.CONTINUE;
+				start = matched + 1;
+			} else {
+				start++;
+			}
+		}
+		return markers;
+	}
+
+	/**
+	 * Mark all numbers followed by a unit matching the pattern, such as
+	 * "5 miles".
+	 * @param s a sentence
+	 * @param numberMarkers the numbers marked in the sentence
+	 * @return an array of marker Strings, as returned by
+	 *         {@link RegExMatcher#extractQuantities(String[], String[], Pattern, int)}
+	 */
+	public String[] extractQuantities(Sentence s, String[] numberMarkers) {
+		int n = s.tokens.length;
+		String[] markers = new String[n];
+		Arrays.fill(markers, RegExMatcher.OTHER);
+		int[] literalEnds = literalEnds(s);
+		if (literalEnds != null && (n == 0 || literalEnds[0] == Integer.MAX_VALUE)) return markers;
+		Matcher m = pattern.matcher(s.text);
+
+		int index = 0;
+		while (index < n) {
+			while (index < n && !RegExMatcher.START.equals(numberMarkers[index])) index++;
+			int numberStart = index;
+			while (index < n && !RegExMatcher.OTHER.equals(numberMarkers[index])) index++;
+			int unitStart = index;
+
+			int matched = -1;
+			int last = Math.min(n, unitStart + maxTokens) - 1;
+			if (unitStart < n && last >= unitStart) {
+				int from = s.starts[unitStart];
+				if (literalEnds == null || literalEnds[from] <= s.ends[last]) {
+					for (int end = unitStart; end <= last; end++) {
+						if (literalEnds != null && literalEnds[from] > s.ends[end]) continue;
+						m.region(from, s.ends[end]);
+						if (m.matches()) matched = end;
+					}
+				}
+			}
+			if (matched >= 0) {
+				markers[numberStart] = RegExMatcher.START;
+				for (int i = numberStart + 1; i <= matched; i++) markers[i] = RegExMatcher.CONTINUE;
+				index = matched + 1;
+			} else {
+				index = numberStart + 1;
+			}
+		}
+		return markers;
+	}
+
+	// ===================
+	// Literal extraction
+	// ===================
+
+	/**
+	 * What is known about the strings matched by a part of a regular
+	 * expression: the exact set of strings (if small), and literals of which
+	 * every matched string contains one.
+	 */
+	private static class Info {
+		/** all strings matched, or null if unknown or too many */
+		HashSet<String> exact;
+		/** every string matched contains one of these, or null if nothing is known */
+		HashSet<String> required;
+
+		Info(HashSet<String> exact, HashSet<String> required) {
+			this.exact = exact;
+			this.required = required;
+		}
+
+		static Info any() {
+			return new Info(null, null);
+		}
+
+		static Info empty() {
+			return of("");
+		}
+
+		static Info of(String s) {
+			HashSet<String> set = new HashSet<String>();
+			set.add(s);
+			return new Info(set, null);
+		}
+
+		/** @return literals of which every matched string contains one, or null */
+		HashSet<String> toRequired() {
+			if (exact == null) return required;
+			if (exact.contains("")) return required;
+			return better(exact, required);
+		}
+	}
+
+	/** @return the more selective of two literal sets, null meaning nothing known */
+	private static HashSet<String> better(HashSet<String> a, HashSet<String> b) {
+		if (a == null) return b;
+		if (b == null) return a;
+		int minA = Integer.MAX_VALUE, minB = Integer.MAX_VALUE;
+		for (String s : a) minA = Math.min(minA, s.length());
+		for (String s : b) minB = Math.min(minB, s.length());
+		if (minA != minB) return minA > minB ? a : b;
+		return a.size() <= b.size() ? a : b;
+	}
+
+	/**
+	 * A parser for the regular expressions used by {@link RegExMatcher}, which
+	 * only finds out about literals. Anything it doesn't understand is
+	 * taken to match anything.
+	 */
+	private static class LiteralParser {
+		private String p;
+		private int i = 0;
+		/** set on a construct which could change how the rest is read */
+		boolean unsafe = false;
+
+		LiteralParser(String p) {
+			this.p = p;
+		}
+
+		private boolean more() {return i < p.length();}
+		private char peek() {return p.charAt(i);}
+
+		Info parseAlternation() {
+			ArrayList<Info> alternatives = new ArrayList<Info>();
+			alternatives.add(parseConcatenation());
+			while (more() && peek() == '|') {
+				i++;
+				alternatives.add(parseConcatenation());
+			}
+			if (alternatives.size() == 1) return alternatives.get(0);
+
+			HashSet<String> exact = new HashSet<String>();
+			HashSet<String> required = new HashSet<String>();
+			for (Info a : alternatives) {
+				if (exact != null && a.exact != null) exact.addAll(a.exact);
+				else exact = null;
+				HashSet<String> r = a.toRequired();
+				if (required != null && r != null) required.addAll(r);
+				else required = null;
+			}
+			if (exact != null && exact.size() > MAX_LITERALS) exact = null;
+			if (required != null && required.size() > MAX_LITERALS) required = null;
+			return new Info(exact, required);
+		}
+
+		private Info parseConcatenation() {
+			Info result = Info.empty();
+			while (more() && peek() != '|' && peek() != ')') {
+				Info next = parseQuantified();
+				HashSet<String> exact = null;
+				if (result.exact != null && next.exact != null &&
+						result.exact.size() * next.exact.size() <= MAX_LITERALS) {
+					exact = new HashSet<String>();
+					for (String a : result.exact)
+						for (String b : next.exact) exact.add(a + b);
+				}
+				result = new Info(exact, better(result.toRequired(), next.toRequired()));
+			}
+			return result;
+		}
+
+		private Info parseQuantified() {
+			Info atom = parseAtom();
+			while (more()) {
+				int min, max;
+				char c = peek();
+				if (c == '?') {min = 0; max = 1; i++;}
+				else if (c == '*') {min = 0; max = -1; i++;}
+				else if (c == '+') {min = 1; max = -1; i++;}
+				else if (c == '{') {
+					int close = p.indexOf('}', i);
+					if (close < 0) {unsafe = true; return Info.any();}
+					String[] bounds = p.substring(i + 1, close).split(",", -1);
+					try {
+						min = Integer.parseInt(bounds[0].trim());
+						max = bounds.length == 1 ? min :
+							(bounds[1].trim().length() == 0 ? -1 : Integer.parseInt(bounds[1].trim()));
+					} catch (NumberFormatException e) {
+						unsafe = true;
+						return Info.any();
+					}
+					i = close + 1;
+				} else break;
+				// greedy, reluctant or possessive makes no difference here
+				if (more() && (peek() == '?' || peek() == '+')) i++;
+
+				if (min == 0) {
+					HashSet<String> exact = null;
+					if (max == 1 && atom.exact != null) {
+						exact = new HashSet<String>(atom.exact);
+						exact.add("");
+					}
+					atom = new Info(exact, null);
+				} else if (min != 1 || max != 1) {
+					atom = new Info(null, atom.toRequired());
+				}
+			}
+			return atom;
+		}
+
+		private Info parseAtom() {
+			char c = p.charAt(i++);
+			switch (c) {
+			case '(':
+				if (more() && peek() == '?') {
+					if (p.startsWith("?:", i)) {
+						i += 2;
+					} else if (p.startsWith("?=", i) || p.startsWith("?!", i)) {
+						i += 2;
+						parseAlternation();
+						expect(')');
+						return Info.empty();
+					} else if (p.startsWith("?<=", i) || p.startsWith("?<!", i)) {
+						i += 3;
+						parseAlternation();
+						expect(')');
+						return Info.empty();
+					} else if (p.startsWith("?>", i)) {
+						i += 2;
+					} else {
+						// flags or named groups
+						unsafe = true;
+						i = p.length();
+						return Info.any();
+					}
+				}
+				Info group = parseAlternation();
+				expect(')');
+				return group;
+			case '[':
+				return parseClass();
+			case '.':
+				return Info.any();
+			case '^':
+			case '$':
+				return Info.empty();
+			case '\\':
+				return parseEscape();
+			default:
+				return Info.of(String.valueOf(c));
+			}
+		}
+
+		private void expect(char c) {
+			if (more() && peek() == c) i++;
+			else unsafe = true;
+		}
+
+		private Info parseEscape() {
+			if (!more()) {unsafe = true; return Info.any();}
+			char c = p.charAt(i++);
+			if ("bBAzZG".indexOf(c) >= 0) return Info.empty();
+			if (c == 't') return Info.of("\t");
+			if (c == 'n') return Info.of("\n");
+			if (c == 'r') return Info.of("\r");
+			if (c == 'f') return Info.of("\f");
+			if (c == 'Q') {
+				int end = p.indexOf("\\E", i);
+				if (end < 0) end = p.length();
+				String quoted = p.substring(i, end);
+				i = Math.min(p.length(), end + 2);
+				return Info.of(quoted);
+			}
+			if (Character.isDigit(c)) {
+				// back reference
+				while (more() && Character.isDigit(peek())) i++;
+				return Info.any();
+			}
+			if (c == 'p' || c == 'P') {
+				if (more() && peek() == '{') {
+					int close = p.indexOf('}', i);
+					i = close < 0 ? p.length() : close + 1;
+				} else if (more()) i++;
+				return Info.any();
+			}
+			if (Character.isLetter(c)) {
+				// character classes such as \s, or escapes not handled here
+				if ("dDsSwWhHvV".indexOf(c) < 0) unsafe = true;
+				return Info.any();
+			}
+			return Info.of(String.valueOf(c));
+		}
+
+		/** a character class: a few characters are kept, anything else matches anything */
+		private Info parseClass() {
+			int start = i;
+			boolean negated = more() && peek() == '^';
+			HashSet<String> chars = new HashSet<String>();
+			boolean simple = !negated;
+			if (negated) i++;
+			while (more() && peek() != ']') {
+				char c = p.charAt(i++);
+				if (c == '[' || (c == '&' && more() && peek() == '&')) {
+					// nested classes or intersections
+					unsafe = true;
+					i = p.length();
+					return Info.any();
+				}
+				if (c == '\\') {
+					if (!more()) break;
+					char e = p.charAt(i++);
+					if (Character.isLetterOrDigit(e)) {
+						simple = false;
+						if (e == 'p' || e == 'P') {
+							int close = p.indexOf('}', i);
+							if (more() && peek() == '{' && close > 0) i = close + 1;
+						}
+						continue;
+					}
+					c = e;
+				}
+				if (more() && peek() == '-' && i + 1 < p.length() && p.charAt(i + 1) != ']') {
+					char to = p.charAt(i + 1);
+					i += 2;
+					if (to == '\\' || to - c > MAX_LITERALS) {
+						simple = false;
+						if (to == '\\' && more()) i++;
+						continue;
+					}
+					for (char x = c; x <= to; x++) chars.add(String.valueOf(x));
+				} else {
+					chars.add(String.valueOf(c));
+				}
+			}
+			if (!more()) {
+				unsafe = true;
+				i = start;
+				return Info.any();
+			}
+			i++; // ']'
+			if (!simple || chars.size() > MAX_LITERALS) return Info.any();
+			return new Info(chars, null);
+		}
+	}
+
+	/**
+	 * Find literals of which every match of <code>pattern</code> contains one.
+	 * @param pattern a regular expression
+	 * @return the literals (in lower case for a case-insensitive pattern), or
+	 *         null if nothing is known
+	 */
+	public static String[] requiredLiterals(Pattern pattern) {
+		int flags = pattern.flags();
+		if ((flags & (Pattern.COMMENTS | Pattern.LITERAL | Pattern.CANON_EQ)) != 0) return null;
+		boolean caseInsensitive = (flags & Pattern.CASE_INSENSITIVE) != 0;
+
+		LiteralParser parser = new LiteralParser(pattern.pattern());
+		Info info = parser.parseAlternation();
+		if (parser.unsafe || parser.more()) return null;
+		HashSet<String> required = info.toRequired();
+		if (required == null || required.isEmpty() || required.contains("")) return null;
+
+		String[] literals = required.toArray(new String[required.size()]);
+		if (caseInsensitive) {
+			for (int i = 0; i < literals.length; i++) {
+				char[] chars = literals[i].toCharArray();
+				for (int j = 0; j < chars.length; j++) {
+					// only ASCII is case-insensitive without UNICODE_CASE
+					if (chars[j] >= 128) return null;
+					chars[j] = Character.toLowerCase(chars[j]);
+				}
+				literals[i] = new String(chars);
+			}
+		}
+		Arrays.sort(literals);
+		return literals;
+	}
+}
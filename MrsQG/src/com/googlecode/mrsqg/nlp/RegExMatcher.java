@@ -147,6 +147,9 @@ public class RegExMatcher {
 		return matches.toArray(new String[matches.size()]);
 	}
 	
+	/**	directory of the gazetteers */
+	public static final String LIST_DIRECTORY = "./res/nlp/netagger/lists/";
+	
 	/**	load a gazetteer
 	 * @param	name	the name of the list to be loaded
 	 * @return the gazetteer with the specified name, packe in a HashSet for faste lookup 
@@ -156,7 +159,7 @@ public class RegExMatcher {
 		
 		HashDictionary dictionary = null;
 		try {
-			dictionary = new HashDictionary("./res/nlp/netagger/lists/" + name);
+			dictionary = new HashDictionary(LIST_DIRECTORY + name);
 		} catch (IOException e) {
 			System.out.println("File not found: " + name);
 			dictionary = new HashDictionary();
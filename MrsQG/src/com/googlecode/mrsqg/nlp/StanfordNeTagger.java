@@ -1,7 +1,21 @@
 package com.googlecode.mrsqg.nlp;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
 
 import edu.stanford.nlp.ie.AbstractSequenceClassifier;
 import edu.stanford.nlp.ie.crf.CRFClassifier;
@@ -9,6 +23,13 @@ import edu.stanford.nlp.ie.crf.CRFClassifier;
 /**
  * Wrapper for the Stanford named entity recognizer.
  * 
+ * <p>A classifier is not safe for concurrent use, so there is a pool of up to
+ * {@link #getPoolSize()} classifiers, each used by one thread at a time. The
+ * model file is read once; additional classifiers are deserialized from it in
+ * memory when they are first needed. Sentences are tagged in parallel by
+ * {@link #extractNEs(String[])} and, without waiting for the results, by
+ * {@link #extractNEsAsync(String[])}.</p>
+ * 
  * @author Guido Sautter, Nico Schlaefer
  * @version 2008-02-10
  */
@@ -18,6 +39,82 @@ public class StanfordNeTagger {
 		"./res/nlp/netagger/stanford/ner-eng-ie.crf-3-all2006-distsim.ser.gz";
 	private static String serializedClassifier;
 	
+	/** the serialized model, to create more classifiers from, until the pool is full */
+	private static byte[] model;
+	/** the maximum number of classifiers */
+	private static int poolSize = 1;
+	/** the number of classifiers created */
+	private static int created = 0;
+	/** classifiers not in use */
+	private static LinkedBlockingQueue<AbstractSequenceClassifier> idle =
+		new LinkedBlockingQueue<AbstractSequenceClassifier>();
+	/** tags the sentences of batches, one thread per classifier */
+	private static ExecutorService executor;
+	
+	/**
+	 * The NEs of a batch of sentences, which are being tagged in the
+	 * background.
+	 */
+	public static class Batch {
+		private ArrayList<Future<HashMap<String, String[]>>> parts;
+		
+		private Batch(ArrayList<Future<HashMap<String, String[]>>> parts) {
+			this.parts = parts;
+		}
+		
+		/**
+		 * @return the number of sentences
+		 */
+		public int size() {
+			return parts.size();
+		}
+		
+		/**
+		 * Waits for the NEs of a sentence.
+		 * 
+		 * @param s index of the sentence
+		 * @return NEs per NE type, as returned by {@link StanfordNeTagger#extractNEs(String)}
+		 */
+		public HashMap<String, String[]> get(int s) {
+			try {
+				return parts.get(s).get();
+			} catch (Exception e) {
+				System.err.println("Stanford NE Recognizer failed to tag " +
+						"sentence " + s + ":");
+				System.err.println(e.toString());
+				return new HashMap<String, String[]>();
+			}
+		}
+		
+		/**
+		 * Waits for the NEs of all sentences.
+		 * 
+		 * @return NEs per sentence and NE type, as returned by
+		 *         {@link StanfordNeTagger#extractNEs(String[])}
+		 */
+		public HashMap<String, String[][]> get() {
+			HashMap<String, String[][]> results = new HashMap<String, String[][]>();
+			
+			for (int s = 0; s < parts.size(); s++) {
+				HashMap<String, String[]> sentenceNEs = get(s);
+				ArrayList<String> sentenceNeTypes =
+					new ArrayList<String>(sentenceNEs.keySet());
+				for (int t = 0; t < sentenceNeTypes.size(); t++) {
+					String type = sentenceNeTypes.get(t);
+					String[][] nes = results.get(type);
+					if (nes == null) {
+						nes = new String[parts.size()][];
+						for (int i = 0; i < parts.size(); i++)
+							nes[i] = new String[0];
+						results.put(type, nes);
+					}
+					nes[s] = sentenceNEs.get(type);
+				}
+			}
+			return results;
+		}
+	}
+	
 	/**
 	 * Checks whether the model for the StanfordNeTagger has been loaded.
 	 * 
@@ -27,6 +124,24 @@ public class StanfordNeTagger {
 		return (classifier != null);
 	}
 	
+	/**
+	 * @return the maximum number of classifiers tagging in parallel
+	 */
+	public static int getPoolSize() {
+		return poolSize;
+	}
+	
+	/**
+	 * Sets the maximum number of classifiers tagging in parallel. Every
+	 * classifier takes as much memory as the model. Takes effect with the
+	 * next {@link #init()}.
+	 * 
+	 * @param size number of classifiers, at least 1
+	 */
+	public static void setPoolSize(int size) {
+		poolSize = Math.max(1, size);
+	}
+	
 	/**
 	 * Initializes the StanfordNeTagger (loads the model).
 	 */
@@ -48,17 +163,88 @@ public class StanfordNeTagger {
 	 * 
 	 * @param customSerializedClassifier path of the custom classifier to load
 	 */
-	public static boolean init(String customSerializedClassifier) {
+	public static synchronized boolean init(String customSerializedClassifier) {
 		try {
-			classifier =
-				CRFClassifier.getClassifier(customSerializedClassifier);
+			byte[] bytes = null;
+			if (poolSize > 1) {
+				bytes = read(customSerializedClassifier);
+				classifier = load(bytes, customSerializedClassifier);
+			} else {
+				classifier =
+					CRFClassifier.getClassifier(customSerializedClassifier);
+			}
 			serializedClassifier = customSerializedClassifier;
+			model = bytes;
+			idle.clear();
+			idle.add(classifier);
+			created = 1;
+			if (executor != null) executor.shutdown();
+			executor = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "StanfordNeTagger");
+					t.setDaemon(true);
+					return t;
+				}
+			});
 			return true;
 		} catch (Exception e) {
 			return false;
 		}
 	}
 	
+	private static byte[] read(String file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[65536];
+		int n;
+		try {
+			while ((n = in.read(buf)) != -1) out.write(buf, 0, n);
+		} finally {
+			in.close();
+		}
+		return out.toByteArray();
+	}
+	
+	private static AbstractSequenceClassifier load(byte[] bytes, String file) throws Exception {
+		InputStream in = new ByteArrayInputStream(bytes);
+		if (file.endsWith(".gz")) in = new GZIPInputStream(in);
+		return CRFClassifier.getClassifier(new BufferedInputStream(in));
+	}
+	
+	/**
+	 * Takes an idle classifier, creating one if all are in use and the pool
+	 * is not full, or waiting for one otherwise.
+	 */
+	private static AbstractSequenceClassifier borrow() throws Exception {
+		AbstractSequenceClassifier c = idle.poll();
+		if (c != null) return c;
+		byte[] bytes = null;
+		synchronized (StanfordNeTagger.class) {
+			if (created < poolSize && model != null) {
+				created++;
+				bytes = model;
+				// the pool is full, the model isn't needed any more
+				if (created == poolSize) model = null;
+			}
+		}
+		if (bytes != null) {
+			try {
+				return load(bytes, serializedClassifier);
+			} catch (Exception e) {
+				synchronized (StanfordNeTagger.class) {
+					created--;
+					model = bytes;
+				}
+				throw e;
+			}
+		}
+		return idle.take();
+	}
+	
+	private static void giveBack(AbstractSequenceClassifier c) {
+		idle.add(c);
+	}
+	
 	/**
 	 * Extracts NEs from an array of sentences.
 	 * 
@@ -67,25 +253,37 @@ public class StanfordNeTagger {
 	 *         might change with the model
 	 */
 	public static HashMap<String, String[][]> extractNEs(String[] sentences) {
-		HashMap<String, String[][]> results = new HashMap<String, String[][]>();
-		
+		return extractNEsAsync(sentences).get();
+	}
+	
+	/**
+	 * Starts extracting NEs from an array of sentences and returns at once.
+	 * The sentences are tagged in parallel by the classifiers of the pool.
+	 * 
+	 * @param sentences array of sentences
+	 * @return the NEs, available when they are tagged
+	 */
+	public static Batch extractNEsAsync(String[] sentences) {
+		ArrayList<Future<HashMap<String, String[]>>> parts =
+			new ArrayList<Future<HashMap<String, String[]>>>(sentences.length);
+		ExecutorService e = executor;
 		for (int s = 0; s < sentences.length; s++) {
-			HashMap<String, String[]> sentenceNEs = extractNEs(sentences[s]);
-			ArrayList<String> sentenceNeTypes =
-				new ArrayList<String>(sentenceNEs.keySet());
-			for (int t = 0; t < sentenceNeTypes.size(); t++) {
-				String type = sentenceNeTypes.get(t);
-				String[][] nes = results.get(type);
-				if (nes == null) {
-					nes = new String[sentences.length][];
-					for (int i = 0; i < sentences.length; i++)
-						nes[i] = new String[0];
-					results.put(type, nes);
+			final String sentence = sentences[s];
+			Callable<HashMap<String, String[]>> task = new Callable<HashMap<String, String[]>>() {
+				public HashMap<String, String[]> call() {
+					return extractNEs(sentence);
 				}
-				nes[s] = sentenceNEs.get(type);
+			};
+			if (e == null) {
+				// not initialized: there is nothing to wait for
+				FutureTask<HashMap<String, String[]>> f = new FutureTask<HashMap<String, String[]>>(task);
+				f.run();
+				parts.add(f);
+			} else {
+				parts.add(e.submit(task));
 			}
 		}
-		return results;
+		return new Batch(parts);
 	}
 	
 	/**
@@ -104,7 +302,12 @@ public class StanfordNeTagger {
 		
 		String neString = "";
 		try {
-			neString = classifier.testString(sentence);
+			AbstractSequenceClassifier c = borrow();
+			try {
+				neString = c.testString(sentence);
+			} finally {
+				giveBack(c);
+			}
 		} catch (Exception e) {
 			System.err.println("Stanford NE Recognizer failed to tag " +
 					"the following sentence:");
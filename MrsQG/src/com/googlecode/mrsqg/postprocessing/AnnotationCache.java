@@ -0,0 +1,80 @@
+package com.googlecode.mrsqg.postprocessing;
+
+import java.util.HashMap;
+
+import org.apache.log4j.Logger;
+
+import com.googlecode.mrsqg.Preprocessor;
+import com.googlecode.mrsqg.PreprocessorCache;
+
+/**
+ * Preprocessing results shared by all fallback replacers of one input, so
+ * that every distinct sentence is tagged, chunked and NE-tagged only once,
+ * however many replacers look at it or generate from it.
+ * <p>
+ * Sentences not seen before in this input come from the process-wide
+ * {@link PreprocessorCache}, so they may still be preprocessed already.
+ * The cached <code>Preprocessor</code>s are shared, so they must be read only.
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class AnnotationCache {
+
+	private static Logger log = Logger.getLogger(AnnotationCache.class);
+
+	/** preprocessed sentences, single sentences and texts kept apart */
+	private HashMap<String, Preprocessor> singles = new HashMap<String, Preprocessor>();
+	private HashMap<String, Preprocessor> texts = new HashMap<String, Preprocessor>();
+	/** FSC by terms (with token POS) of single sentences */
+	private HashMap<String, String> fscs = new HashMap<String, String>();
+
+	private int hits = 0;
+	private int misses = 0;
+
+	public int getHits() {return hits;}
+	public int getMisses() {return misses;}
+
+	/**
+	 * Get <code>sents</code> preprocessed, as {@link Preprocessor#preprocess(String, boolean)} does.
+	 * @param sents a raw sentence or text
+	 * @param singleSentence whether the input is a single sentence or not
+	 * @return a preprocessor which must not be changed
+	 */
+	public synchronized Preprocessor get(String sents, boolean singleSentence) {
+		HashMap<String, Preprocessor> map = singleSentence ? singles : texts;
+		Preprocessor pre = map.get(sents);
+		if (pre != null) {
+			hits++;
+			return pre;
+		}
+		misses++;
+		pre = PreprocessorCache.get(sents, singleSentence);
+		map.put(sents, pre);
+		return pre;
+	}
+
+	/**
+	 * Get the FSC of a single sentence, as
+	 * {@link Preprocessor#getFSCbyTerms(String, boolean, boolean)} does with
+	 * token POS. The preprocessor it comes from is {@link #get(String, boolean)}
+	 * with <code>singleSentence</code> true.
+	 * @param sentence a raw sentence
+	 * @return a string representing FSC in XML
+	 */
+	public synchronized String getFSC(String sentence) {
+		String fsc = fscs.get(sentence);
+		if (fsc != null) {
+			hits++;
+			return fsc;
+		}
+		get(sentence, true);
+		fsc = PreprocessorCache.getFSC(sentence, true);
+		fscs.put(sentence, fsc);
+		return fsc;
+	}
+
+	public void logStats() {
+		log.info("AnnotationCache: "+misses+" sentences preprocessed, "+hits+" reused.");
+	}
+}
@@ -39,7 +39,7 @@ public class ApposReplacer extends Fallback {
 	public void doIt() {
 		if (this.oriPairs == null) return;
 
-		Preprocessor pre = new Preprocessor();
+		Preprocessor pre;
 		String sentence;
 		String tranSent;
 		int aLargeNum = 1000000;
@@ -55,7 +55,7 @@ public class ApposReplacer extends Fallback {
 				sentence = oriPair.getOriSent();
 			}
 
-			pre.preprocess(sentence, true);
+			pre = annotations.get(sentence, true);
 
 			MRS mrs = oriPair.getOriMrs();
 			for (EP ep:mrs.getEps()) {
@@ -6,6 +6,7 @@ import com.googlecode.mrsqg.Preprocessor;
 import com.googlecode.mrsqg.analysis.Pair;
 import com.googlecode.mrsqg.mrs.EP;
 import com.googlecode.mrsqg.mrs.MRS;
+import com.googlecode.mrsqg.mrs.SymbolTable;
 import com.googlecode.mrsqg.nlp.Cheap;
 import com.googlecode.mrsqg.nlp.LKB;
 
@@ -26,13 +27,11 @@ public class CoordReplacer extends Fallback {
 	public void doIt () {
 		if (this.oriPairs == null) return;
 
-		Preprocessor pre = new Preprocessor();
+		Preprocessor pre;
 		String sentence;
 		String tranSent;
 		MRS mrs;
 
-		String coordEPname = "_C_REL";
-
 		log.info("============== Fallback Generation -- CoordReplacer==============");
 
 		for (Pair oriPair:oriPairs) {
@@ -43,10 +42,10 @@ public class CoordReplacer extends Fallback {
 				mrs = oriPair.getOriMrs();
 			}
 			mrs = oriPair.getOriMrs();
-			pre.preprocess(sentence, true);
+			pre = annotations.get(sentence, true);
 
 			for (EP ep:mrs.getEps()) {
-				if (ep.getTypeName().contains(coordEPname) &&
+				if (ep.hasTypeProperty(SymbolTable.COORDINATION) &&
 						ep.getValueByFeature("L-INDEX") != null &&
 						ep.getValueByFeature("R-INDEX") != null &&
 						ep.getValueByFeature("L-HNDL") == null &&
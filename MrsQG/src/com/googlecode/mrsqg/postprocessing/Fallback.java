@@ -34,6 +34,10 @@ public class Fallback {
 	protected ArrayList<Pair> genSuccPairs;
 	protected ArrayList<Pair> genFailPairs;
 	protected ArrayList<Pair> oriPairs;
+	/** preprocessed sentences, shared with other replacers of the same input */
+	protected AnnotationCache annotations;
+	/** if not null, fallback sentences are parsed and generated from by the runner */
+	protected FallbackRunner runner = null;
 
 	public Fallback (Cheap cheap, LKB lkb, ArrayList<Pair> oriPairs) {
 		this.parser = cheap;
@@ -41,13 +45,25 @@ public class Fallback {
 		this.oriPairs = oriPairs;
 		this.genSuccPairs = new ArrayList<Pair>();
 		this.genFailPairs = new ArrayList<Pair>();
+		this.annotations = new AnnotationCache();
 	}
 
 	public ArrayList<Pair> getGenSuccPairs () {return genSuccPairs;}
 	public ArrayList<Pair> getGenFailPairs () {return genFailPairs;}
+	public AnnotationCache getAnnotationCache () {return annotations;}
+	/**
+	 * Share the preprocessing results with other replacers.
+	 * @param cache an annotation cache of the same input
+	 */
+	public void setAnnotationCache (AnnotationCache cache) {this.annotations = cache;}
+	/**
+	 * Let <code>runner</code> parse and generate from the fallback sentences.
+	 * @param runner a runner, or null to do it in {@link #doIt()}
+	 */
+	public void setRunner (FallbackRunner runner) {this.runner = runner;}
 
 	public void doIt () {
-		Preprocessor pre = new Preprocessor();
+		Preprocessor pre;
 
 		if (oriPairs == null) return;
 
@@ -61,7 +77,7 @@ public class Fallback {
 				sentence = oriPair.getOriSent();
 			}
 
-			pre.preprocess(sentence, false);
+			pre = annotations.get(sentence, false);
 
 			Term[] terms = pre.getTerms()[0];
 			//sentence = pre.getSentences()[0];
@@ -147,9 +163,20 @@ public class Fallback {
 
 	protected void generate (String tranSent, String sentType, String source) {
 		if (tranSent == null) return;
-		Preprocessor pre = new Preprocessor();
+		if (runner != null) {
+			runner.submit(this, tranSent, sentType, source);
+			return;
+		}
+		parseAndGenerate(tranSent, sentType, source);
+	}
 
-		String fsc = pre.getFSCbyTerms(tranSent, true, true);
+	/**
+	 * Parse <code>tranSent</code> and generate from its MRS. Pairs of the
+	 * results are added to {@link #getGenSuccPairs()} or {@link #getGenFailPairs()}.
+	 */
+	protected void parseAndGenerate (String tranSent, String sentType, String source) {
+		String fsc = annotations.getFSC(tranSent);
+		Preprocessor pre = annotations.get(tranSent, true);
 		log.info("Fallback sentence:");
 		log.info(tranSent);
 
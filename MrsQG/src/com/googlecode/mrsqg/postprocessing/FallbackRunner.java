@@ -0,0 +1,164 @@
+package com.googlecode.mrsqg.postprocessing;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.log4j.Logger;
+
+import com.googlecode.mrsqg.analysis.Pair;
+
+/**
+ * Runs a number of fallback replacers concurrently over the same pairs.
+ * <p>
+ * The replacers don't parse or generate themselves: the fallback sentences
+ * they produce are put onto a queue per replacer, and the thread calling
+ * {@link #doIt()} parses and generates from them one after another, since
+ * there's only one parser and one generator. The queues are taken in the
+ * order the replacers were added, each while the later replacers still run.
+ * A sentence which has already been queued (by the same or an earlier
+ * replacer) is dropped, so it's parsed and generated from only once and its
+ * results always go to the first replacer which produces it.
+ * <p>
+ * The replacers run in the given thread pool, or in the thread calling
+ * {@link #doIt()} if there's none or the pool hasn't started them yet.
+ * <p>
+ * Every replacer works on its own copies of the pairs (and their MRS), since
+ * some change the EP flags of the MRS. All replacers should share one
+ * {@link AnnotationCache}, which also serializes the preprocessing.
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class FallbackRunner {
+
+	private static Logger log = Logger.getLogger(FallbackRunner.class);
+
+	/** a fallback sentence waiting to be parsed */
+	private static class Task {
+		String tranSent;
+		String sentType;
+		String source;
+		Task(String tranSent, String sentType, String source) {
+			this.tranSent = tranSent;
+			this.sentType = sentType;
+			this.source = source;
+		}
+	}
+
+	/** put onto the queue of a replacer when it's done */
+	private static final Task END = new Task(null, null, null);
+
+	private ExecutorService pool;
+	private ArrayList<Fallback> replacers = new ArrayList<Fallback>();
+	/** one queue per replacer */
+	private ArrayList<LinkedBlockingQueue<Task>> queues = new ArrayList<LinkedBlockingQueue<Task>>();
+	/** sentence types and sentences ever queued */
+	private HashSet<String> seen = new HashSet<String>();
+
+	private int submitted = 0;
+	private int dropped = 0;
+
+	/**
+	 * @param pool a thread pool to run the replacers in, or null to run them
+	 * one after another in the thread calling {@link #doIt()}
+	 */
+	public FallbackRunner(ExecutorService pool) {
+		this.pool = pool;
+	}
+
+	public int getSubmitted() {return submitted;}
+	public int getDropped() {return dropped;}
+
+	/**
+	 * Add a replacer to be run. Its results are in its own
+	 * {@link Fallback#getGenSuccPairs()} and {@link Fallback#getGenFailPairs()}
+	 * after {@link #doIt()}.
+	 * @param f a replacer
+	 */
+	public void add(Fallback f) {
+		replacers.add(f);
+		queues.add(new LinkedBlockingQueue<Task>());
+	}
+
+	public ArrayList<Fallback> getReplacers() {return replacers;}
+
+	/**
+	 * Queue a fallback sentence of <code>owner</code>.
+	 * Called by the replacers, in any thread.
+	 */
+	public void submit(Fallback owner, String tranSent, String sentType, String source) {
+		queues.get(indexOf(owner)).add(new Task(tranSent, sentType, source));
+	}
+
+	private int indexOf(Fallback f) {
+		for (int i=0; i<replacers.size(); i++)
+			if (replacers.get(i) == f) return i;
+		throw new IllegalArgumentException("Not a replacer of this runner: "+f);
+	}
+
+	/**
+	 * Run all replacers and parse and generate from every fallback sentence
+	 * they produce. Returns when all are done.
+	 */
+	public void doIt() {
+		if (replacers.size() == 0) return;
+
+		ArrayList<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>(replacers.size());
+		for (int i=0; i<replacers.size(); i++) {
+			final Fallback f = replacers.get(i);
+			final LinkedBlockingQueue<Task> queue = queues.get(i);
+			if (f.oriPairs != null) {
+				ArrayList<Pair> copies = new ArrayList<Pair>(f.oriPairs.size());
+				for (Pair p:f.oriPairs) copies.add(new Pair(p));
+				f.oriPairs = copies;
+			}
+			f.setRunner(this);
+			FutureTask<Object> t = new FutureTask<Object>(new Callable<Object>() {
+				public Object call() {
+					try {
+						f.doIt();
+					} finally {
+						queue.add(END);
+					}
+					return null;
+				}
+			});
+			if (pool != null) pool.execute(t);
+			tasks.add(t);
+		}
+
+		for (int i=0; i<replacers.size(); i++) {
+			Fallback f = replacers.get(i);
+			FutureTask<Object> t = tasks.get(i);
+			// does nothing if the pool has started it
+			t.run();
+			try {
+				while (true) {
+					Task task = queues.get(i).take();
+					if (task == END) break;
+					submitted++;
+					if (!seen.add(task.sentType+"\t"+task.tranSent)) {
+						dropped++;
+						log.info("Fallback sentence already queued: "+task.tranSent);
+						continue;
+					}
+					f.parseAndGenerate(task.tranSent, task.sentType, task.source);
+				}
+				t.get();
+			} catch (InterruptedException e) {
+				log.error("Error:", e);
+				Thread.currentThread().interrupt();
+				break;
+			} catch (Exception e) {
+				log.error("Error:", e);
+			}
+		}
+
+		for (Fallback f:replacers) f.setRunner(null);
+		log.info("FallbackRunner: "+submitted+" fallback sentences, "+dropped+" duplicates dropped.");
+	}
+}
@@ -23,22 +23,27 @@ public abstract class MrsReplacer {
 	protected ArrayList<MRS> origList;
 
 	protected ArrayList<Pair> pairs;
+	/** preprocessed sentences, shared with other replacers of the same input */
+	protected AnnotationCache annotations;
 
 	public MrsReplacer (Cheap cheap, LKB lkb, ArrayList<MRS> list) {
 		this.parser = cheap;
 		this.generator = lkb;
 		this.origList = list;
 		this.pairs = new ArrayList<Pair>();
+		this.annotations = new AnnotationCache();
 	}
 
+	public void setAnnotationCache (AnnotationCache cache) {this.annotations = cache;}
+
 
 	public abstract void doIt ();
 
 	protected void genFromParse () {
 		Preprocessor pre;
 		for (Pair p:this.pairs) {
-			pre = new Preprocessor();
-			String fsc = pre.getFSCbyTerms(p.getTranSent(), true, true);
+			String fsc = annotations.getFSC(p.getTranSent());
+			pre = annotations.get(p.getTranSent(), true);
 			log.info("Transformed sentence:");
 			log.info(p.getTranSent());
 //			log.info("\nFSC XML from preprocessing:\n");
@@ -24,7 +24,7 @@ public class NPChunkReplacer extends Fallback {
 
 		if (this.oriPairs == null) return;
 
-		Preprocessor pre = new Preprocessor();
+		Preprocessor pre;
 		final String B_NP = "B-NP";
 		final String I_NP = "I-NP";
 		final String NP = "NP";
@@ -43,7 +43,7 @@ public class NPChunkReplacer extends Fallback {
 				sentence = oriPair.getOriSent();
 			}
 
-			pre.preprocess(sentence, true);
+			pre = annotations.get(sentence, true);
 			chunks = pre.getNpChunks()[0];
 			tokens = pre.getTokens()[0];
 			if (chunks==null || chunks.length==0) continue;
@@ -26,7 +26,7 @@ public class NumReplacer extends Fallback {
 
 		if (this.oriPairs == null) return;
 
-		Preprocessor pre = new Preprocessor();
+		Preprocessor pre;
 		String sentence;
 		String tranSent;
 
@@ -41,7 +41,7 @@ public class NumReplacer extends Fallback {
 				sentence = oriPair.getOriSent();
 			}
 
-			pre.preprocess(sentence, true);
+			pre = annotations.get(sentence, true);
 			MRS mrs = oriPair.getOriMrs();
 
 			EP oldEP = null;
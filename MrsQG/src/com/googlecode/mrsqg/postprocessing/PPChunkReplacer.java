@@ -26,7 +26,7 @@ import com.googlecode.mrsqg.util.StringUtils;
 
 		if (this.oriPairs == null) return;
 
-		Preprocessor pre = new Preprocessor();
+		Preprocessor pre;
 		final String B_PP = "B-PP", END = "O";
 		final String NP = "NP";
 		String sentence, quesWord, targetWord;
@@ -44,7 +44,7 @@ import com.googlecode.mrsqg.util.StringUtils;
 				sentence = oriPair.getOriSent();
 			}
 
-			pre.preprocess(sentence, true);
+			pre = annotations.get(sentence, true);
 			chunks = pre.getPpChunks()[0];
 			tokens = pre.getTokens()[0];
 			pos = pre.getPos()[0];
@@ -37,7 +37,7 @@ public class WhatReplacer extends Fallback {
 
 			if (this.oriPairs == null) return;
 
-			Preprocessor pre = new Preprocessor();
+			Preprocessor pre;
 			String sentence;
 			String tranSent;
 
@@ -52,7 +52,7 @@ public class WhatReplacer extends Fallback {
 					sentence = oriPair.getOriSent();
 				}
 
-				pre.preprocess(sentence, true);
+				pre = annotations.get(sentence, true);
 				MRS mrs = oriPair.getOriMrs();
 
 				for (EP ep:mrs.getEps()) {
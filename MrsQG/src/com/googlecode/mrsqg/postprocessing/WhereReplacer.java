@@ -24,7 +24,7 @@ public class WhereReplacer extends Fallback {
 
 		if (this.oriPairs == null) return;
 
-		Preprocessor pre = new Preprocessor();
+		Preprocessor pre;
 		String sentence;
 		String tranSent;
 
@@ -39,7 +39,7 @@ public class WhereReplacer extends Fallback {
 				sentence = oriPair.getOriSent();
 			}
 
-			pre.preprocess(sentence, true);
+			pre = annotations.get(sentence, true);
 			MRS mrs = oriPair.getOriMrs();
 
 			for (EP ep:mrs.getEps()) {
@@ -29,7 +29,7 @@ import com.googlecode.mrsqg.nlp.LKB;
 
 		if (this.oriPairs == null) return;
 
-		Preprocessor pre = new Preprocessor();
+		Preprocessor pre;
 		String sentence;
 		String tranSent;
 
@@ -43,7 +43,7 @@ import com.googlecode.mrsqg.nlp.LKB;
 				sentence = oriPair.getOriSent();
 			}
 
-			pre.preprocess(sentence, true);
+			pre = annotations.get(sentence, true);
 			MRS mrs = oriPair.getOriMrs();
 
 			// we can't care which is reason, which is result...
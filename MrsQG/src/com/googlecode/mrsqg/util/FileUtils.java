@@ -1,10 +1,12 @@
 package com.googlecode.mrsqg.util;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -118,6 +120,39 @@ public class FileUtils {
 		return buffer.toString();
 	}
 	
+	/**
+	 * Reads a string from a stream as it is, using the given encoding, and
+	 * closes the stream. Unlike {@link #readString(File, String)}, line
+	 * breaks are not normalized.
+	 * 
+	 * @param in input stream
+	 * @param encoding stream encoding
+	 * @return string
+	 */
+	public static String readString(InputStream in, String encoding)
+			throws IOException {
+		return new String(readBytes(in), encoding);
+	}
+	
+	/**
+	 * Reads all bytes from a stream and closes the stream.
+	 * 
+	 * @param in input stream
+	 * @return bytes
+	 */
+	public static byte[] readBytes(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		try {
+			for (int n; (n = in.read(buf)) != -1;)
+				out.write(buf, 0, n);
+		} finally {
+			in.close();
+		}
+		
+		return out.toByteArray();
+	}
+	
 	/**
 	 * Writes a string to a file, using the given encoding. An existing file is
 	 * overwritten.
@@ -5,6 +5,8 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 
@@ -33,6 +35,10 @@ public class HashDictionary implements Dictionary {
 	private int maxTokens = 1;
 	/** Whether strings should be stored in lower-case and compared in a case-insensitive way */
 	private boolean caseInsensitive = false;
+	/** Index of the words for fuzzy lookups, built on the first one. */
+	private BKTree fuzzyWords = null;
+	/** Index of the tokens for fuzzy lookups, built on the first one. */
+	private BKTree fuzzyTokens = null;
 	
 	/**
 	 * Creates an empty <code>HashDictionary</code>.
@@ -110,6 +116,11 @@ public class HashDictionary implements Dictionary {
 			if (tokens.length > maxTokens) maxTokens = tokens.length;
 			for (int p = 0; p < tokens.length; p++)
 				if (tokens[p].length() > 0) this.tokens.add(tokens[p]);
+			
+			synchronized (this) {
+				fuzzyWords = null;
+				fuzzyTokens = null;
+			}
 		}
 	}
 	
@@ -164,11 +175,12 @@ public class HashDictionary implements Dictionary {
 		if (maxDistance == 0) return this.words.contains(word);
 		else if (this.words.contains(word)) return true;
 		
-		Iterator<String> wordIter = this.words.iterator();
-		while (wordIter.hasNext())
-			if (getLevenshteinDistance(word, wordIter.next(), maxDistance, true, 1, 1) <= maxDistance) return true;
-		
-		return false;
+		BKTree index;
+		synchronized (this) {
+			if (fuzzyWords == null) fuzzyWords = new BKTree(this.words);
+			index = fuzzyWords;
+		}
+		return index.containsWithin(word, maxDistance);
 	}
 	
 	/**
@@ -190,11 +202,101 @@ public class HashDictionary implements Dictionary {
 		if (maxDistance == 0) return this.tokens.contains(token);
 		else if (this.tokens.contains(token)) return true;
 		
-		Iterator<String> tokenIter = this.tokens.iterator();
-		while (tokenIter.hasNext())
-			if (getLevenshteinDistance(token, tokenIter.next(), maxDistance, true, 1, 1) <= maxDistance) return true;
+		BKTree index;
+		synchronized (this) {
+			if (fuzzyTokens == null) fuzzyTokens = new BKTree(this.tokens);
+			index = fuzzyTokens;
+		}
+		return index.containsWithin(token, maxDistance);
+	}
+	
+	/**
+	 * <p>A BK-tree over a set of strings, which finds the strings within an
+	 * edit distance of a query without comparing the query to all of them.</p>
+	 * 
+	 * <p>Every node has children by their Levenshtein distance to the node. Any
+	 * string within distance <code>k</code> of the query is in a child whose
+	 * distance to the node differs by at most <code>k</code> from the query's
+	 * distance to it (triangle inequality), so other children are skipped.</p>
+	 */
+	private static class BKTree {
+		private String[] strings;
+		/** children[n][d]: the child of node n at distance d, or 0 (the root is never a child) */
+		private int[][] children;
+		private int size = 0;
+		
+		BKTree(Collection<String> set) {
+			strings = new String[set.size()];
+			children = new int[set.size()][];
+			for (String s : set) add(s);
+		}
 		
-		return false;
+		private void add(String s) {
+			strings[size] = s;
+			if (size > 0) {
+				int node = 0;
+				while (true) {
+					int d = distance(s, strings[node]);
+					int[] c = children[node];
+					if (c == null || c.length <= d) {
+						c = children[node] = (c == null) ? new int[d + 1] : Arrays.copyOf(c, d + 1);
+					}
+					if (c[d] == 0) {
+						c[d] = size;
+						break;
+					}
+					node = c[d];
+				}
+			}
+			size++;
+		}
+		
+		/**
+		 * Whether a string within <code>maxDistance</code> of <code>query</code>
+		 * is found, as by comparing it to every string with
+		 * {@link HashDictionary#getLevenshteinDistance(String, String, int, boolean, int, int)}.
+		 */
+		boolean containsWithin(String query, int maxDistance) {
+			if (size == 0) return false;
+			int[] stack = new int[64];
+			int top = 0;
+			stack[top++] = 0;
+			while (top > 0) {
+				int node = stack[--top];
+				String s = strings[node];
+				int d = distance(query, s);
+				// the bounded distance may be larger than the exact one, stick to it
+				if (d <= maxDistance &&
+					getLevenshteinDistance(query, s, maxDistance, true, 1, 1) <= maxDistance)
+					return true;
+				int[] c = children[node];
+				if (c == null) continue;
+				int to = Math.min(d + maxDistance, c.length - 1);
+				for (int i = Math.max(d - maxDistance, 1); i <= to; i++) {
+					if (c[i] == 0) continue;
+					if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+					stack[top++] = c[i];
+				}
+			}
+			return false;
+		}
+		
+		/** the exact Levenshtein distance */
+		private static int distance(String s, String t) {
+			int n = t.length();
+			int[] prev = new int[n + 1], cur = new int[n + 1];
+			for (int j = 0; j <= n; j++) prev[j] = j;
+			for (int i = 1; i <= s.length(); i++) {
+				cur[0] = i;
+				char c = s.charAt(i - 1);
+				for (int j = 1; j <= n; j++)
+					cur[j] = min3(prev[j] + 1, cur[j - 1] + 1, prev[j - 1] + (c == t.charAt(j - 1) ? 0 : 1));
+				int[] tmp = prev;
+				prev = cur;
+				cur = tmp;
+			}
+			return prev[n];
+		}
 	}
 	
 	/**	compute the Levenshtein distance of two Strings
@@ -325,6 +427,15 @@ public class HashDictionary implements Dictionary {
 		return words.iterator();
 	}
 	
+	/**
+	 * Whether words are stored in lower case and compared in a case-insensitive way.
+	 * 
+	 * @return <code>true</code> iff the dictionary is case-insensitive
+	 */
+	public boolean isCaseInsensitive() {
+		return caseInsensitive;
+	}
+	
 	/**	
 	 * Returns the maximum number of tokens of a word in the dictionary.
 	 * 
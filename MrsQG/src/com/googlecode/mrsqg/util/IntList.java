@@ -0,0 +1,42 @@
+package com.googlecode.mrsqg.util;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of ints, to avoid boxing them into an
+ * <code>ArrayList&lt;Integer&gt;</code>.
+ *
+ * @author Xuchen Yao
+ *
+ */
+public class IntList {
+	private int[] a;
+	private int size = 0;
+
+	public IntList() {
+		this(8);
+	}
+
+	/**
+	 * @param capacity the initial capacity
+	 */
+	public IntList(int capacity) {
+		a = new int[Math.max(capacity, 4)];
+	}
+
+	public void add(int v) {
+		if (size == a.length) a = Arrays.copyOf(a, size*2);
+		a[size++] = v;
+	}
+
+	public int size() {return size;}
+
+	public int get(int i) {return a[i];}
+
+	public void set(int i, int v) {a[i] = v;}
+
+	/**
+	 * @return a copy of the ints in this list
+	 */
+	public int[] toArray() {return Arrays.copyOf(a, size);}
+}
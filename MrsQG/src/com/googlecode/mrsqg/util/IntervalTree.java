@@ -0,0 +1,148 @@
+package com.googlecode.mrsqg.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A static interval tree over character ranges <code>[from, to]</code>.
+ * <p>
+ * Items are added with {@link #add(int, int, Object)}, then {@link #build()}
+ * sorts them by <code>from</code> into an array, which is also an implicit
+ * balanced binary tree: the root of <code>[lo, hi)</code> is its middle, and
+ * every node keeps the largest <code>to</code> in its subtree. Queries
+ * take O(log n + k) time. Items are always returned in the order
+ * they were added.
+ *
+ * @author Xuchen Yao
+ *
+ * @param <T> the type of the items
+ */
+public class IntervalTree<T> {
+
+	private ArrayList<T> added = new ArrayList<T>();
+	private IntList addedFrom = new IntList();
+	private IntList addedTo = new IntList();
+
+	/** sorted by from, then by the order they were added */
+	private int[] from;
+	private int[] to;
+	/** the index in {@link #added} */
+	private int[] order;
+	/** the largest to in the subtree rooted at each index */
+	private int[] maxTo;
+
+	/**
+	 * Add an item. Must be called before {@link #build()}.
+	 * @param from the starting position in characters
+	 * @param to the ending position in characters
+	 * @param item an item
+	 */
+	public void add(int from, int to, T item) {
+		if (this.from != null)
+			throw new IllegalStateException("IntervalTree is already built");
+		added.add(item);
+		addedFrom.add(from);
+		addedTo.add(to);
+	}
+
+	/**
+	 * Build the tree. No items can be added afterwards.
+	 * @return this tree
+	 */
+	public IntervalTree<T> build() {
+		int n = added.size();
+		// sort by (from << 32 | order), which is stable
+		long[] keys = new long[n];
+		for (int i=0; i<n; i++)
+			keys[i] = ((long)addedFrom.get(i) << 32) | i;
+		Arrays.sort(keys);
+		from = new int[n];
+		to = new int[n];
+		order = new int[n];
+		maxTo = new int[n];
+		for (int i=0; i<n; i++) {
+			order[i] = (int)keys[i];
+			from[i] = addedFrom.get(order[i]);
+			to[i] = addedTo.get(order[i]);
+		}
+		addedFrom = addedTo = null;
+		if (n > 0) buildMax(0, n);
+		return this;
+	}
+
+	private int buildMax(int lo, int hi) {
+		int mid = (lo+hi) >>> 1;
+		int max = to[mid];
+		if (lo < mid) max = Math.max(max, buildMax(lo, mid));
+		if (mid+1 < hi) max = Math.max(max, buildMax(mid+1, hi));
+		maxTo[mid] = max;
+		return max;
+	}
+
+	public int size() {return added.size();}
+
+	/**
+	 * @return all items whose range is exactly <code>[from, to]</code>
+	 */
+	public ArrayList<T> getExact(int from, int to) {
+		IntList hits = new IntList();
+		for (int i=lowerBound(from); i<this.from.length && this.from[i]==from; i++) {
+			if (this.to[i] == to) hits.add(order[i]);
+		}
+		return collect(hits);
+	}
+
+	/**
+	 * @return all items whose range is inside <code>[from, to]</code>
+	 */
+	public ArrayList<T> getContainedIn(int from, int to) {
+		IntList hits = new IntList();
+		for (int i=lowerBound(from); i<this.from.length && this.from[i]<=to; i++) {
+			if (this.to[i] <= to) hits.add(order[i]);
+		}
+		return collect(hits);
+	}
+
+	/**
+	 * @return all items whose range covers <code>[from, to]</code>
+	 */
+	public ArrayList<T> getCovering(int from, int to) {
+		IntList hits = new IntList();
+		covering(0, this.from.length, from, to, hits);
+		return collect(hits);
+	}
+
+	private void covering(int lo, int hi, int from, int to, IntList hits) {
+		if (lo >= hi) return;
+		int mid = (lo+hi) >>> 1;
+		if (maxTo[mid] < to) return;
+		covering(lo, mid, from, to, hits);
+		// everything on the right starts at or after from[mid]
+		if (this.from[mid] > from) return;
+		if (this.to[mid] >= to) hits.add(order[mid]);
+		covering(mid+1, hi, from, to, hits);
+	}
+
+	/**
+	 * @return the first index whose from is not less than <code>from</code>
+	 */
+	private int lowerBound(int from) {
+		if (this.from == null)
+			throw new IllegalStateException("IntervalTree is not built");
+		int lo = 0, hi = this.from.length;
+		while (lo < hi) {
+			int mid = (lo+hi) >>> 1;
+			if (this.from[mid] < from) lo = mid+1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+	private ArrayList<T> collect(IntList hits) {
+		int[] a = hits.toArray();
+		Arrays.sort(a);
+		ArrayList<T> list = new ArrayList<T>(a.length);
+		for (int i:a) list.add(added.get(i));
+		return list;
+	}
+}